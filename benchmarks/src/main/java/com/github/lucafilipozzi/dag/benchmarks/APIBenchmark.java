@@ -0,0 +1,52 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag.benchmarks;
+
+import com.github.lucafilipozzi.dag.API;
+import com.github.lucafilipozzi.dag.Template;
+import com.github.lucafilipozzi.dag.User;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class APIBenchmark {
+  @Param({Graphs.PROTOTYPE, "10", "100", "1000", "10000"})
+  String graph;
+
+  @Param({"2", "8"})
+  int fanOut;
+
+  User user;
+  Template template;
+
+  @Setup
+  public void setUp() {
+    user = User.of(Graphs.challenges(graph));
+    template = Template.of(graph, new StringReader(Graphs.graphML(graph, fanOut)));
+  }
+
+  @Benchmark
+  public void roundTrip(Blackhole blackhole) {
+    API api = API.of(template, user);
+    blackhole.consume(api.get());
+    blackhole.consume(api.post("success"));
+    blackhole.consume(api.get());
+    blackhole.consume(api.post("failure"));
+  }
+}
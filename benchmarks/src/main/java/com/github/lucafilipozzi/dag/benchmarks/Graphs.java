@@ -0,0 +1,91 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * GraphML sources for the benchmarks: the prototype graph shipped with the tests, and synthetic
+ * layered DAGs of configurable size and fan-out.
+ */
+final class Graphs {
+  static final String PROTOTYPE = "prototype";
+  private static final int CHALLENGE_COUNT = 16;
+
+  private Graphs() { /* hide constructor */ }
+
+  /**
+   * Returns the GraphML source named by a benchmark parameter: {@value #PROTOTYPE}, or the number of
+   * nodes of a synthetic DAG.
+   */
+  static String graphML(String graph, int fanOut) {
+    return PROTOTYPE.equals(graph) ? prototype() : synthetic(Integer.parseInt(graph), fanOut, 42L);
+  }
+
+  /**
+   * Returns the challenges used by the GraphML source named by a benchmark parameter.
+   */
+  static Set<String> challenges(String graph) {
+    if (PROTOTYPE.equals(graph)) {
+      return Set.of("DVP", "DSC", "TSC");
+    }
+    Set<String> challenges = new LinkedHashSet<>();
+    for (int challenge = 0; challenge < CHALLENGE_COUNT; challenge++) {
+      challenges.add(challenge(challenge));
+    }
+    return challenges;
+  }
+
+  static String prototype() {
+    try (InputStream inputStream = Objects.requireNonNull(Graphs.class.getResourceAsStream("/prototype-graph.xml"))) {
+      return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Generates a DAG of {@code size} nodes, START and END included, in which every node has up to
+   * {@code fanOut} edges to later nodes and at least one path to END.
+   */
+  static String synthetic(int size, int fanOut, long seed) {
+    Random random = new Random(seed);
+    List<String> nodeIds = new ArrayList<>();
+    nodeIds.add("START");
+    for (int node = 1; node < size - 1; node++) {
+      nodeIds.add(challenge(random.nextInt(CHALLENGE_COUNT)) + "-" + node);
+    }
+    nodeIds.add("END");
+    StringBuilder builder = new StringBuilder()
+      .append("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n")
+      .append("  <key id=\"d0\" for=\"edge\" attr.name=\"weight\" attr.type=\"long\" />\n")
+      .append("  <graph edgedefault=\"directed\">\n");
+    nodeIds.forEach(nodeId -> builder.append("    <node id=\"").append(nodeId).append("\" />\n"));
+    for (int source = 0; source < size - 1; source++) {
+      Set<Integer> targets = new LinkedHashSet<>();
+      targets.add(source + 1);
+      for (int edge = 1; edge < fanOut; edge++) {
+        targets.add(source + 1 + random.nextInt(Math.min(size - source - 1, 4 * fanOut)));
+      }
+      for (int target : targets) {
+        builder.append("    <edge source=\"").append(nodeIds.get(source))
+          .append("\" target=\"").append(nodeIds.get(target)).append("\">\n")
+          .append("      <data key=\"d0\">").append(1 + random.nextInt(20)).append("</data>\n")
+          .append("    </edge>\n");
+      }
+    }
+    return builder.append("  </graph>\n").append("</graphml>\n").toString();
+  }
+
+  private static String challenge(int challenge) {
+    return "C" + (char) ('A' + challenge / 26) + (char) ('A' + challenge % 26);
+  }
+}
@@ -0,0 +1,102 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag.benchmarks;
+
+import com.github.lucafilipozzi.dag.MyGraph;
+import com.github.lucafilipozzi.dag.Template;
+import com.github.lucafilipozzi.dag.User;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MyGraphBenchmark {
+  @Param({Graphs.PROTOTYPE, "10", "100", "1000", "10000"})
+  String graph;
+
+  @Param({"2", "8"})
+  int fanOut;
+
+  String graphML;
+  User user;
+  Template template;
+  MyGraph myGraph;
+  String json;
+
+  @Setup
+  public void setUp() {
+    graphML = Graphs.graphML(graph, fanOut);
+    user = User.of(Graphs.challenges(graph));
+    template = Template.of(graph, new StringReader(graphML));
+    myGraph = MyGraph.of(template, user);
+    StringWriter stringWriter = new StringWriter();
+    myGraph.dump(stringWriter);
+    json = stringWriter.toString();
+  }
+
+  @Benchmark
+  public MyGraph of() {
+    return MyGraph.of(new StringReader(graphML), user);
+  }
+
+  @Benchmark
+  public MyGraph ofTemplate() {
+    return MyGraph.of(template, user);
+  }
+
+  @Benchmark
+  public MyGraph load() {
+    return MyGraph.load(new StringReader(json));
+  }
+
+  @Benchmark
+  public String dump() {
+    StringWriter stringWriter = new StringWriter();
+    myGraph.dump(stringWriter);
+    return stringWriter.toString();
+  }
+
+  @State(Scope.Thread)
+  public static class Session {
+    MyGraph myGraph;
+
+    // a session memoizes its search and setStatus mutates it; start each invocation from a fresh one
+    @Setup(Level.Invocation)
+    public void setUp(MyGraphBenchmark benchmark) {
+      myGraph = MyGraph.of(benchmark.template, benchmark.user);
+    }
+  }
+
+  @Benchmark
+  public String getChallenge(Session session) {
+    return session.myGraph.getChallenge();
+  }
+
+  @Benchmark
+  public List<String> getChallenges(Session session) {
+    return session.myGraph.getChallenges();
+  }
+
+  @Benchmark
+  public MyGraph setStatus(Session session) {
+    session.myGraph.setStatus("failure");
+    return session.myGraph;
+  }
+}
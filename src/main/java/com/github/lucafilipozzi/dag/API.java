@@ -2,12 +2,18 @@
 package com.github.lucafilipozzi.dag;
 
 import java.io.Reader;
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Function;
 
 public class API {
-  String processManager;
+  SessionStore processManager;
+  String sessionId;
+  Function<String, Template> templates;
+  MetricsSink metricsSink;
 
   private API() { /* hide constructor */ }
 
@@ -21,31 +27,199 @@ public class API {
    * @return a new instance of {@code API} initialized with the given data
    */
   public static API of(Reader reader, User user) {
+    return of(Template.of(reader), user);
+  }
+
+  /**
+   * Creates a new instance of {@code API} for the given {@code User} on top of a shared, compiled
+   * {@code Template}. Unlike {@link #of(Reader, User)}, no GraphML is parsed. The session is held by a
+   * private, in-memory process manager.
+   *
+   * @param template the compiled challenge graph, typically obtained from a {@code TemplateRegistry}
+   * @param user the user providing challenges for the {@code MyGraph}
+   * @return a new instance of {@code API} initialized with the given data
+   */
+  public static API of(Template template, User user) {
+    return of(InMemorySessionStore.of(), UUID.randomUUID().toString(), template, user);
+  }
+
+  /**
+   * Creates a new session in the given {@code SessionStore} for the given {@code User} on top of a
+   * shared, compiled {@code Template}, and returns an instance of {@code API} bound to it.
+   *
+   * @param sessionStore the process manager holding the state of every session
+   * @param sessionId the identifier of the new session
+   * @param template the compiled challenge graph, typically obtained from a {@code TemplateRegistry}
+   * @param user the user providing challenges for the {@code MyGraph}
+   * @return a new instance of {@code API} bound to the new session
+   * @throws IllegalStateException if a session with that identifier already exists
+   */
+  public static API of(SessionStore sessionStore, String sessionId, Template template, User user) {
+    return of(sessionStore, sessionId, MyGraph.of(template, user));
+  }
+
+  /**
+   * Creates a new session in the given {@code SessionStore} from the given {@code MyGraph}, for example
+   * one obtained from an {@code InitialStateCache}, and returns an instance of {@code API} bound to it.
+   *
+   * @param sessionStore the process manager holding the state of every session
+   * @param sessionId the identifier of the new session
+   * @param myGraph the initial state of the session
+   * @return a new instance of {@code API} bound to the new session
+   * @throws IllegalStateException if a session with that identifier already exists
+   */
+  public static API of(SessionStore sessionStore, String sessionId, MyGraph myGraph) {
+    Template template = myGraph.getTemplate();
+    if (!sessionStore.create(sessionId, StateCodec.encode(myGraph))) {
+      throw new IllegalStateException("session " + sessionId + " already exists");
+    }
+    return of(sessionStore, sessionId, id -> {
+      if (!template.getId().equals(id)) {
+        throw new IllegalStateException("process manager holds a session of template " + id);
+      }
+      return template;
+    });
+  }
+
+  /**
+   * Returns an instance of {@code API} bound to an existing session of the given {@code SessionStore},
+   * for example to serve a request that names the session. Any number of instances may be bound to
+   * the same session, from any number of threads. The session is decoded with the version of the template
+   * it was created on, which the registry keeps after a reload for as long as sessions may refer to it,
+   * see {@link TemplateRegistry}.
+   *
+   * @param sessionStore the process manager holding the state of every session
+   * @param sessionId the identifier of the session
+   * @param templateRegistry the registry holding the templates of the sessions
+   * @return a new instance of {@code API} bound to the session
+   */
+  public static API of(SessionStore sessionStore, String sessionId, TemplateRegistry templateRegistry) {
+    return of(sessionStore, sessionId, templateRegistry::get);
+  }
+
+  static API of(SessionStore sessionStore, String sessionId, Function<String, Template> templates) {
     API api = new API();
-    api.saveToProcessManager(MyGraph.of(reader, user));
+    api.processManager = sessionStore;
+    api.sessionId = sessionId;
+    api.templates = templates;
+    api.metricsSink = MetricsSink.noop();
+    return api;
+  }
+
+  /**
+   * Returns an instance of {@code API} bound to the same session as this one that reports the latency of
+   * every call and of each of its phases, the outcome of every call, the size of every saved state and
+   * the work done by path searches to the given {@code MetricsSink}. Every call and phase is also marked
+   * by a JDK Flight Recorder event, {@code com.github.lucafilipozzi.dag.Operation}, whether or not a sink
+   * is set.
+   *
+   * @param metricsSink the sink receiving the measurements, or {@link MetricsSink#noop()} to take none
+   * @return a new instance of {@code API} bound to the same session
+   */
+  public API withMetricsSink(MetricsSink metricsSink) {
+    API api = of(processManager, sessionId, templates);
+    api.metricsSink = metricsSink;
     return api;
   }
 
   /**
-   * Loads and returns a {@code MyGraph} object from the data stored in the process manager.
-   * The method reads the serialized {@code MyGraph} data from the {@code processManager}
-   * string in JSON format and reconstructs a {@code MyGraph} instance.
+   * Loads the current, versioned state of the session from the process manager.
    *
-   * @return a {@code MyGraph} object reconstructed from the process manager data
+   * @return the versioned state of the session
+   * @throws NoSuchElementException if the session does not exist or has expired
    */
-  private MyGraph loadFromProcessManager() {
-    return MyGraph.load(new StringReader(processManager));
+  private SessionStore.Versioned loadFromProcessManager() {
+    return processManager.get(sessionId).orElseThrow(() -> new NoSuchElementException(sessionId));
   }
 
   /**
-   * Serializes to JSON the given {@code MyGraph} object and stores its data in the process manager.
+   * Encodes the given {@code MyGraph} object with the {@code StateCodec} and stores its data in the process manager,
+   * provided the session has not been updated since {@code version} was loaded.
+   * Only the template identifier and the packed node statuses are stored.
    *
+   * @param version the version of the state {@code myGraph} was decoded from
    * @param myGraph the {@code MyGraph} instance to serialize and save into the process manager
+   * @return {@code true} if the state was saved, {@code false} if the session was updated concurrently
+   */
+  private boolean saveToProcessManager(long version, MyGraph myGraph) {
+    OperationEvent event = OperationEvent.begin(MetricsSink.OPERATION.SAVE, sessionId);
+    long start = startClock();
+    byte[] state = StateCodec.encode(myGraph);
+    boolean saved = processManager.replace(sessionId, version, state, StateCodec.encodeChanges(myGraph));
+    stopClock(MetricsSink.OPERATION.SAVE, start, event);
+    if (metricsSink.isEnabled()) {
+      metricsSink.recordStateSize(state.length);
+      if (!saved) {
+        metricsSink.recordConflict();
+      }
+    }
+    return saved;
+  }
+
+  private MyGraph decode(SessionStore.Versioned versioned) {
+    return StateCodec.decode(versioned.getState(), templates);
+  }
+
+  /**
+   * Decodes the given state like {@link #decode(SessionStore.Versioned)}, or returns {@code null} if there
+   * is no state or it cannot be decoded: a malformed state, or one whose template is no longer known, is
+   * treated as an unknown session.
+   */
+  private MyGraph decodeOrNull(SessionStore.Versioned versioned) {
+    if (versioned == null) {
+      return null;
+    }
+    try {
+      return decode(versioned);
+    } catch (IllegalArgumentException | NoSuchElementException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Determines the next step of the challenge flow of the given {@code MyGraph}, as the SEARCH phase.
    */
-  private void saveToProcessManager(MyGraph myGraph) {
-    StringWriter stringWriter = new StringWriter();
-    myGraph.dump(stringWriter);
-    processManager = stringWriter.toString();
+  private Outcome search(MyGraph myGraph) {
+    OperationEvent event = OperationEvent.begin(MetricsSink.OPERATION.SEARCH, sessionId);
+    long start = startClock();
+    Outcome outcome = myGraph.next();
+    stopClock(MetricsSink.OPERATION.SEARCH, start, event);
+    return outcome;
+  }
+
+  private long startClock() {
+    return metricsSink.isEnabled() ? System.nanoTime() : 0L;
+  }
+
+  private void stopClock(MetricsSink.OPERATION operation, long start, OperationEvent event) {
+    if (metricsSink.isEnabled()) {
+      metricsSink.recordLatency(operation, System.nanoTime() - start);
+    }
+    OperationEvent.end(event);
+  }
+
+  /**
+   * Ends an API call, recording its latency and outcome.
+   */
+  private Outcome stopClock(MetricsSink.OPERATION operation, long start, OperationEvent event, Outcome outcome, int visits) {
+    if (metricsSink.isEnabled()) {
+      metricsSink.recordLatency(operation, System.nanoTime() - start);
+      metricsSink.recordOutcome(outcome.getKind());
+      metricsSink.recordSearchVisits(visits);
+    }
+    OperationEvent.end(event, outcome);
+    return outcome;
+  }
+
+  /**
+   * Exports the state held by the process manager in the JSON format of {@link MyGraph#dump(Writer)}.
+   * Intended for debugging and for integrations that require the full graph.
+   *
+   * @param writer the Writer to which the graph's JSON representation will be output
+   * @throws NoSuchElementException if the session does not exist or has expired
+   */
+  public void dump(Writer writer) {
+    decode(loadFromProcessManager()).dump(writer);
   }
 
   /**
@@ -56,14 +230,36 @@ public class API {
    *         or {@code null} if an exception occurs during retrieval
    */
   public String get() {
-    MyGraph myGraph = loadFromProcessManager();
     try {
-      return myGraph.getChallenge(); // return 2xx
+      return next().getChallenge(); // return 2xx if non-null, otherwise 4xx
     } catch (RuntimeException ignored) {
-      return null;                   // return 4xx
+      return null;                  // return 4xx
     }
   }
 
+  /**
+   * Determines the next step of the challenge flow of the {@code MyGraph} instance loaded from the
+   * process manager, without throwing.
+   *
+   * @return {@code continue} with the challenge to present, {@code success} or {@code failure} if the flow
+   *         has ended, or {@code invalid} if the session does not exist, has expired, or its state is
+   *         malformed or refers to an unknown template
+   */
+  public Outcome next() {
+    OperationEvent event = OperationEvent.begin(MetricsSink.OPERATION.NEXT, sessionId);
+    long start = startClock();
+    OperationEvent loadEvent = OperationEvent.begin(MetricsSink.OPERATION.LOAD, sessionId);
+    long loadStart = startClock();
+    SessionStore.Versioned versioned = processManager.get(sessionId).orElse(null);
+    MyGraph myGraph = decodeOrNull(versioned);
+    stopClock(MetricsSink.OPERATION.LOAD, loadStart, loadEvent);
+    if (myGraph == null) {
+      return stopClock(MetricsSink.OPERATION.NEXT, start, event, Outcome.invalid(), 0);
+    }
+    Outcome outcome = search(myGraph);
+    return stopClock(MetricsSink.OPERATION.NEXT, start, event, outcome, myGraph.getSearchVisits());
+  }
+
   /**
    * Updates the status of the {@code MyGraph} object.
    * The status must be either "success" or "failure". If an invalid status is provided,
@@ -73,28 +269,109 @@ public class API {
    * @param status the new status to be set for the {@code MyGraph} instance, allowed values
    *               are "success" or "failure"
    * @return a string indicating the result of the operation:
-   *         - "invalid" for an invalid status or an exception in setting the status,
+   *         - "invalid" for an invalid status, an unknown session, a malformed state or one of an unknown
+   *           template, or an exception in setting the status,
    *         - "continue" if setting the status succeeded and the challenge is processed,
    *         - "failure" if verification has failed (no shortest path exists).
    *         - "success" if verification has succeeded (no further untried challenges).
    */
   public String post(String status) {
-    if (!List.of("success", "failure").contains(status)) {
-      return "invalid";      // return 4xx
+    return report(status).toString();
+  }
+
+  /**
+   * Updates the status of the {@code MyGraph} object, like {@link #post(String)}, and returns the
+   * outcome without throwing. The outcome of {@code continue} carries the next challenge.
+   * <p>
+   * The update is saved with an optimistic version check: if another update of the same session
+   * saved first, the update is recomputed on top of that one's result, so that neither is lost.
+   *
+   * @param status the new status to be set for the {@code MyGraph} instance, allowed values
+   *               are "success" or "failure"
+   * @return the outcome of the update, {@code invalid} as for {@link #post(String)}
+   */
+  public Outcome report(String status) {
+    OperationEvent event = OperationEvent.begin(MetricsSink.OPERATION.REPORT, sessionId);
+    long start = startClock();
+    if (!"success".equals(status) && !"failure".equals(status)) {
+      return stopClock(MetricsSink.OPERATION.REPORT, start, event, Outcome.invalid(), 0); // return 4xx
     }
-    MyGraph myGraph = loadFromProcessManager();
-    try {
-      myGraph.setStatus(status);
-      myGraph.getChallenge();
-      return "continue";     // return 2xx
-    } catch (MyGraph.GetChallengeFailure ignored) {
-      return "failure";      // return 2xx
-    } catch (MyGraph.GetChallengeSuccess ignored) {
-      return "success";      // return 2xx
-    } catch (MyGraph.SetStatusException ignored) {
-      return "invalid";      // return 4xx
-    } finally {
-      saveToProcessManager(myGraph);
+    int visits = 0;
+    while (true) {
+      OperationEvent loadEvent = OperationEvent.begin(MetricsSink.OPERATION.LOAD, sessionId);
+      long loadStart = startClock();
+      SessionStore.Versioned versioned = processManager.get(sessionId).orElse(null);
+      MyGraph myGraph = decodeOrNull(versioned);
+      stopClock(MetricsSink.OPERATION.LOAD, loadStart, loadEvent);
+      if (myGraph == null) {
+        return stopClock(MetricsSink.OPERATION.REPORT, start, event, Outcome.invalid(), visits); // return 4xx
+      }
+      search(myGraph); // the current challenge
+      OperationEvent updateEvent = OperationEvent.begin(MetricsSink.OPERATION.UPDATE, sessionId);
+      long updateStart = startClock();
+      boolean updated = myGraph.updateStatus(status);
+      stopClock(MetricsSink.OPERATION.UPDATE, updateStart, updateEvent);
+      Outcome outcome = updated ? search(myGraph) : Outcome.invalid();
+      visits += myGraph.getSearchVisits();
+      if (!updated || saveToProcessManager(versioned.getVersion(), myGraph)) {
+        return stopClock(MetricsSink.OPERATION.REPORT, start, event, outcome, visits); // 2xx, or 4xx with state unchanged
+      }
+    }
+  }
+
+  /**
+   * Updates the status of the {@code MyGraph} object once for each of the given statuses, in order, with the
+   * outcomes of as many calls of {@link #report(String)}. The state is loaded and saved only once, with an
+   * optimistic version check: if another update of the same session saved first, every status is applied
+   * again on top of that one's result, so that the statuses are applied as a whole.
+   *
+   * @param statuses the new statuses, each either "success" or "failure"
+   * @return the outcome of each update, in the order of {@code statuses}, every one {@code invalid} if the
+   *         session is unknown or its state cannot be decoded
+   */
+  public List<Outcome> report(List<String> statuses) {
+    OperationEvent event = OperationEvent.begin(MetricsSink.OPERATION.BATCH, sessionId);
+    long start = startClock();
+    Outcome[] outcomes = new Outcome[statuses.size()];
+    int visits = 0;
+    while (true) {
+      OperationEvent loadEvent = OperationEvent.begin(MetricsSink.OPERATION.LOAD, sessionId);
+      long loadStart = startClock();
+      SessionStore.Versioned versioned = processManager.get(sessionId).orElse(null);
+      MyGraph myGraph = decodeOrNull(versioned);
+      stopClock(MetricsSink.OPERATION.LOAD, loadStart, loadEvent);
+      if (myGraph == null) {
+        Arrays.fill(outcomes, Outcome.invalid());
+        break;
+      }
+      boolean updated = false;
+      for (int index = 0; index < outcomes.length; index++) {
+        String status = statuses.get(index);
+        if (!"success".equals(status) && !"failure".equals(status)) {
+          outcomes[index] = Outcome.invalid();
+          continue;
+        }
+        search(myGraph); // the current challenge
+        OperationEvent updateEvent = OperationEvent.begin(MetricsSink.OPERATION.UPDATE, sessionId);
+        long updateStart = startClock();
+        boolean statusUpdated = myGraph.updateStatus(status);
+        stopClock(MetricsSink.OPERATION.UPDATE, updateStart, updateEvent);
+        outcomes[index] = statusUpdated ? search(myGraph) : Outcome.invalid();
+        updated |= statusUpdated;
+      }
+      visits += myGraph.getSearchVisits();
+      if (!updated || saveToProcessManager(versioned.getVersion(), myGraph)) {
+        break;
+      }
+    }
+    if (metricsSink.isEnabled()) {
+      metricsSink.recordLatency(MetricsSink.OPERATION.BATCH, System.nanoTime() - start);
+      for (Outcome outcome : outcomes) {
+        metricsSink.recordOutcome(outcome.getKind());
+      }
+      metricsSink.recordSearchVisits(visits);
     }
+    OperationEvent.end(event);
+    return List.of(outcomes);
   }
 }
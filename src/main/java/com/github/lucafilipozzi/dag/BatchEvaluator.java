@@ -0,0 +1,131 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Evaluates bursts of challenge results, for many sessions at once.
+ * <p>
+ * The reports of a batch are grouped by session. The reports of each session are applied in order, by a
+ * single {@link API#report(List)} call that loads and saves the session's state once, and the sessions
+ * are evaluated concurrently on the given {@code Executor}, for example a {@code ForkJoinPool} or, on
+ * Java 21 and later, {@code Executors.newVirtualThreadPerTaskExecutor()}.
+ */
+public final class BatchEvaluator {
+  private final SessionStore sessionStore;
+  private final Function<String, Template> templates;
+  private final Executor executor;
+  private final MetricsSink metricsSink;
+
+  /**
+   * A challenge result of a session.
+   */
+  public static final class Report {
+    private final String sessionId;
+    private final String status;
+
+    private Report(String sessionId, String status) {
+      this.sessionId = sessionId;
+      this.status = status;
+    }
+
+    /**
+     * @param sessionId the identifier of the session
+     * @param status the new status, either "success" or "failure"
+     */
+    public static Report of(String sessionId, String status) {
+      return new Report(sessionId, status);
+    }
+
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    public String getStatus() {
+      return status;
+    }
+  }
+
+  private BatchEvaluator(SessionStore sessionStore, Function<String, Template> templates, Executor executor, MetricsSink metricsSink) {
+    this.sessionStore = sessionStore;
+    this.templates = templates;
+    this.executor = executor;
+    this.metricsSink = metricsSink;
+  }
+
+  /**
+   * Creates a batch evaluator for the sessions of the given {@code SessionStore}.
+   *
+   * @param sessionStore the process manager holding the state of every session
+   * @param templateRegistry the registry holding the templates of the sessions
+   * @param executor the executor evaluating the sessions of a batch
+   * @return a new batch evaluator
+   */
+  public static BatchEvaluator of(SessionStore sessionStore, TemplateRegistry templateRegistry, Executor executor) {
+    return of(sessionStore, templateRegistry, executor, MetricsSink.noop());
+  }
+
+  /**
+   * Creates a batch evaluator for the sessions of the given {@code SessionStore} that reports to the given
+   * {@code MetricsSink}, see {@link API#withMetricsSink(MetricsSink)}.
+   *
+   * @param sessionStore the process manager holding the state of every session
+   * @param templateRegistry the registry holding the templates of the sessions
+   * @param executor the executor evaluating the sessions of a batch
+   * @param metricsSink the sink receiving the measurements
+   * @return a new batch evaluator
+   */
+  public static BatchEvaluator of(SessionStore sessionStore, TemplateRegistry templateRegistry, Executor executor, MetricsSink metricsSink) {
+    return new BatchEvaluator(sessionStore, templateRegistry::get, executor, metricsSink);
+  }
+
+  /**
+   * Applies the given reports, like as many calls of {@link API#report(String)}. Reports of the same session
+   * are applied in the order in which they are given; reports of different sessions are applied concurrently.
+   *
+   * @param reports the reports to apply
+   * @return the outcome of each report, in the order of {@code reports}: {@code invalid} for every report
+   *         of a session that could not be evaluated
+   */
+  public List<Outcome> report(List<Report> reports) {
+    Map<String, List<Integer>> indicesBySession = new LinkedHashMap<>();
+    for (int index = 0; index < reports.size(); index++) {
+      indicesBySession.computeIfAbsent(reports.get(index).getSessionId(), key -> new ArrayList<>()).add(index);
+    }
+    Outcome[] outcomes = new Outcome[reports.size()];
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[indicesBySession.size()];
+    int session = 0;
+    for (Map.Entry<String, List<Integer>> entry : indicesBySession.entrySet()) {
+      futures[session++] = CompletableFuture.runAsync(() -> evaluate(entry.getKey(), entry.getValue(), reports, outcomes), executor);
+    }
+    CompletableFuture.allOf(futures).join();
+    return List.of(outcomes);
+  }
+
+  /**
+   * Applies the reports of one session, whose outcomes are all {@code invalid} if the session fails, for
+   * example because its store does, so that the failure of one session fails none of the others.
+   */
+  private void evaluate(String sessionId, List<Integer> indices, List<Report> reports, Outcome[] outcomes) {
+    List<String> statuses = new ArrayList<>(indices.size());
+    for (int index : indices) {
+      statuses.add(reports.get(index).getStatus());
+    }
+    List<Outcome> sessionOutcomes;
+    try {
+      sessionOutcomes = API.of(sessionStore, sessionId, templates).withMetricsSink(metricsSink).report(statuses);
+    } catch (RuntimeException e) {
+      sessionOutcomes = Collections.nCopies(indices.size(), Outcome.invalid());
+    }
+    for (int index = 0; index < indices.size(); index++) {
+      outcomes[indices.get(index)] = sessionOutcomes.get(index);
+    }
+  }
+}
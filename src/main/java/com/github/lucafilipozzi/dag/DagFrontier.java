@@ -0,0 +1,65 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.Arrays;
+
+/**
+ * The untried frontier of a {@link Template}: every UNTRIED node that is the first UNTRIED node of
+ * some START to END path avoiding FAILURE nodes.
+ * <p>
+ * Rather than enumerating every path, which grows exponentially with the size of the graph, the
+ * frontier is found in two linear passes over the compiled topological order. The first marks the
+ * nodes from which END is reachable through non-FAILURE nodes, skipping those that lie on no START to
+ * END path whatever the statuses; the second walks forward from START through SUCCESS nodes only,
+ * among those marked, and stops at each UNTRIED node it meets.
+ */
+final class DagFrontier {
+  private DagFrontier() { /* hide constructor */ }
+
+  /**
+   * Finds the untried frontier.
+   *
+   * @param template the compiled challenge graph
+   * @param statuses the status of every node, indexed as in the template
+   * @return the frontier nodes, in topological order
+   */
+  static int[] getNodes(Template template, byte[] statuses) {
+    int[] edgeOffsets = template.getEdgeOffsets();
+    int[] edgeTargets = template.getEdgeTargets();
+    int[] topologicalOrder = template.getTopologicalOrder();
+    ReachabilityIndex reachabilityIndex = template.getReachabilityIndex();
+    boolean[] reachesEnd = new boolean[statuses.length];
+    for (int index = topologicalOrder.length - 1; index >= 0; index--) {
+      int node = topologicalOrder[index];
+      if (statuses[node] == Node.FAILURE || !reachabilityIndex.isRelevant(node)) {
+        continue;
+      }
+      if (node == template.getEnd()) {
+        reachesEnd[node] = true;
+        continue;
+      }
+      for (int edge = edgeOffsets[node]; edge < edgeOffsets[node + 1] && !reachesEnd[node]; edge++) {
+        reachesEnd[node] = reachesEnd[edgeTargets[edge]];
+      }
+    }
+
+    int[] frontier = new int[statuses.length];
+    int size = 0;
+    boolean[] reached = new boolean[statuses.length];
+    reached[template.getStart()] = reachesEnd[template.getStart()];
+    for (int node : topologicalOrder) {
+      if (!reached[node]) {
+        continue;
+      }
+      if (statuses[node] == Node.UNTRIED) {
+        frontier[size++] = node; // first untried node on every path through here
+        continue;
+      }
+      for (int edge = edgeOffsets[node]; edge < edgeOffsets[node + 1]; edge++) {
+        int target = edgeTargets[edge];
+        reached[target] |= reachesEnd[target];
+      }
+    }
+    return Arrays.copyOf(frontier, size);
+  }
+}
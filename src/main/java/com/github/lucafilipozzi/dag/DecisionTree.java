@@ -0,0 +1,133 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The whole challenge flow of a {@link Template} for one capability set, enumerated ahead of time.
+ * <p>
+ * Once the user's challenges are known, the challenges presented by {@link MyGraph} depend only on
+ * the success or failure reported for each of them. Compiling explores that outcome tree once,
+ * merging branches that reach identical node statuses, and stores it as a table of states. A session
+ * is then a single {@code int} state and every step is an array lookup, with no graph search.
+ */
+public final class DecisionTree {
+  public static final int INVALID_STATE = -1;
+  private final Outcome[] outcomes;
+  private final int[] onSuccess;
+  private final int[] onFailure;
+
+  private DecisionTree(Outcome[] outcomes, int[] onSuccess, int[] onFailure) {
+    this.outcomes = outcomes;
+    this.onSuccess = onSuccess;
+    this.onFailure = onFailure;
+  }
+
+  /**
+   * Compiles the challenge flow of the given template for the given user's challenges.
+   *
+   * @param template the compiled challenge graph
+   * @param user the User object containing the set of challenges available to this user
+   * @param maximumStates the maximum number of states of the compiled flow
+   * @return the compiled flow, or empty if it would have more than {@code maximumStates} states
+   * @throws IllegalArgumentException if {@code maximumStates} is not positive
+   */
+  public static Optional<DecisionTree> compile(Template template, User user, int maximumStates) {
+    if (maximumStates <= 0) {
+      throw new IllegalArgumentException("maximumStates must be positive");
+    }
+    List<byte[]> states = new ArrayList<>();
+    Map<ByteBuffer, Integer> stateIndices = new HashMap<>();
+    List<Outcome> outcomes = new ArrayList<>();
+    int[] onSuccess = new int[Math.min(maximumStates, 1024)];
+    int[] onFailure = new int[onSuccess.length];
+    states.add(MyGraph.of(template, user).getStatuses());
+    stateIndices.put(ByteBuffer.wrap(states.get(0)), 0);
+    for (int state = 0; state < states.size(); state++) {
+      byte[] statuses = states.get(state);
+      Outcome outcome = MyGraph.of(template, statuses.clone()).next();
+      outcomes.add(outcome);
+      if (state == onSuccess.length) {
+        onSuccess = Arrays.copyOf(onSuccess, Math.min(maximumStates, 2 * state));
+        onFailure = Arrays.copyOf(onFailure, onSuccess.length);
+      }
+      onSuccess[state] = INVALID_STATE;
+      onFailure[state] = INVALID_STATE;
+      if (outcome.getKind() != Outcome.KIND.CONTINUE) {
+        continue;
+      }
+      for (String status : List.of("success", "failure")) {
+        MyGraph myGraph = MyGraph.of(template, statuses.clone(), outcome);
+        myGraph.setStatus(status);
+        Integer next = stateIndices.get(ByteBuffer.wrap(myGraph.getStatuses()));
+        if (next == null) {
+          if (states.size() == maximumStates) {
+            return Optional.empty();
+          }
+          next = states.size();
+          states.add(myGraph.getStatuses());
+          stateIndices.put(ByteBuffer.wrap(myGraph.getStatuses()), next);
+        }
+        if ("success".equals(status)) {
+          onSuccess[state] = next;
+        } else {
+          onFailure[state] = next;
+        }
+      }
+    }
+    int size = states.size();
+    return Optional.of(new DecisionTree(outcomes.toArray(new Outcome[0]), Arrays.copyOf(onSuccess, size), Arrays.copyOf(onFailure, size)));
+  }
+
+  /**
+   * Returns the state of a new session.
+   *
+   * @return the initial state
+   */
+  public int getInitialState() {
+    return 0;
+  }
+
+  /**
+   * Returns the outcome of a state, like {@link MyGraph#next()}.
+   *
+   * @param state a state of this flow
+   * @return {@code continue} with the challenge to present, or {@code success} or {@code failure} if the flow has ended
+   */
+  public Outcome getOutcome(int state) {
+    return outcomes[state];
+  }
+
+  /**
+   * Returns the state reached by reporting a status for the challenge of a state, like
+   * {@link MyGraph#report(String)}.
+   *
+   * @param state a state of this flow
+   * @param status "success" or "failure"
+   * @return the next state, or {@link #INVALID_STATE} if the status is invalid or the flow has ended
+   */
+  public int report(int state, String status) {
+    if ("success".equals(status)) {
+      return onSuccess[state];
+    }
+    if ("failure".equals(status)) {
+      return onFailure[state];
+    }
+    return INVALID_STATE;
+  }
+
+  /**
+   * Returns the number of states of this flow.
+   *
+   * @return the number of states
+   */
+  public int size() {
+    return outcomes.length;
+  }
+}
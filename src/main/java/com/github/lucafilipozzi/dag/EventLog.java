@@ -0,0 +1,82 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An append-only log of session records, the persistence of an {@link EventSourcedSessionStore}.
+ * <p>
+ * The state of a session is its latest SNAPSHOT record followed by the STATUS records appended since,
+ * until a REMOVE record. Records are replayed in the order in which they were appended. Implementations
+ * must be safe for use by multiple threads.
+ */
+public interface EventLog {
+  /**
+   * The kinds of record.
+   */
+  enum TYPE {
+    /** The encoded state of a session, as by {@link StateCodec#encode(MyGraph)}. */
+    SNAPSHOT,
+    /** Updates of a session, as by {@link StateCodec#encodeChanges(MyGraph)}. */
+    STATUS,
+    /** The removal of a session; the payload is empty. */
+    REMOVE
+  }
+
+  /**
+   * Appends the given records, in order.
+   *
+   * @param records the records to append
+   * @throws java.io.UncheckedIOException if the log cannot be written
+   */
+  void append(List<Record> records);
+
+  /**
+   * Passes every record of the log to the given consumer, in the order in which they were appended.
+   *
+   * @param consumer the consumer of the records
+   * @throws java.io.UncheckedIOException if the log cannot be read
+   */
+  void replay(Consumer<Record> consumer);
+
+  /**
+   * Discards every record that no longer contributes to the state of a session: records preceding a
+   * session's latest snapshot, and every record of a removed session. The history of a session is kept
+   * only from its latest snapshot.
+   *
+   * @throws java.io.UncheckedIOException if the log cannot be rewritten
+   */
+  void compact();
+
+  /**
+   * A record of the log.
+   */
+  final class Record {
+    private final TYPE type;
+    private final String sessionId;
+    private final byte[] payload;
+
+    private Record(TYPE type, String sessionId, byte[] payload) {
+      this.type = type;
+      this.sessionId = sessionId;
+      this.payload = payload;
+    }
+
+    public static Record of(TYPE type, String sessionId, byte[] payload) {
+      return new Record(type, sessionId, payload);
+    }
+
+    public TYPE getType() {
+      return type;
+    }
+
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    public byte[] getPayload() {
+      return payload;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * A {@link SessionStore} that persists the updates of every session to an {@link EventLog} rather than
+ * its state.
+ * <p>
+ * A new session is logged as a SNAPSHOT record; each update saved through
+ * {@link #replace(String, long, byte[], byte[])}, as {@link API} does, as a STATUS record of a few bytes
+ * holding the challenge code and status of each update, whatever the size of the graph. Once a session
+ * has accumulated the configured number of STATUS records, its next update is logged as a SNAPSHOT
+ * instead, so that the records to replay stay bounded and {@link EventLog#compact()} can discard the
+ * ones before it. The current state of every session is also held in memory, so that reads never touch
+ * the log; on creation, the store recovers that state by replaying the log onto each session's snapshot.
+ * <p>
+ * Updates of a session are serialized by one of a fixed set of lock stripes, under which the record is
+ * appended and only then the new state published, so that a slow append holds up only the sessions of
+ * its stripe, and readers, which take no lock, never see a state that is not logged.
+ */
+public final class EventSourcedSessionStore implements SessionStore {
+  private static final int STRIPE_COUNT = 64;
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Object[] stripes = new Object[STRIPE_COUNT];
+  private final EventLog eventLog;
+  private final int snapshotInterval;
+  private final List<RemovalListener> removalListeners = new CopyOnWriteArrayList<>();
+
+  private static final class Entry {
+    private final SessionStore.Versioned versioned;
+    private final int changesSinceSnapshot;
+
+    private Entry(SessionStore.Versioned versioned, int changesSinceSnapshot) {
+      this.versioned = versioned;
+      this.changesSinceSnapshot = changesSinceSnapshot;
+    }
+  }
+
+  private EventSourcedSessionStore(EventLog eventLog, int snapshotInterval) {
+    if (snapshotInterval <= 0) {
+      throw new IllegalArgumentException("snapshotInterval must be positive");
+    }
+    this.eventLog = eventLog;
+    this.snapshotInterval = snapshotInterval;
+    for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+      stripes[stripe] = new Object();
+    }
+  }
+
+  /**
+   * Creates a store backed by the given log, recovering the sessions it holds.
+   *
+   * @param eventLog the log of session records
+   * @param templates resolves a template identifier to its compiled template, for example {@code TemplateRegistry::get}
+   * @param snapshotInterval the number of STATUS records of a session after which it is snapshotted again
+   * @return a new store holding the sessions of the log
+   * @throws IllegalArgumentException if a record of the log is malformed or does not match its template
+   */
+  public static EventSourcedSessionStore of(EventLog eventLog, Function<String, Template> templates, int snapshotInterval) {
+    EventSourcedSessionStore store = new EventSourcedSessionStore(eventLog, snapshotInterval);
+    Map<String, MyGraph> sessions = new HashMap<>();
+    Map<String, long[]> counts = new HashMap<>(); // version, changes since snapshot
+    eventLog.replay(record -> {
+      String sessionId = record.getSessionId();
+      switch (record.getType()) {
+        case SNAPSHOT -> {
+          sessions.put(sessionId, StateCodec.decode(record.getPayload(), templates));
+          long[] count = counts.computeIfAbsent(sessionId, key -> new long[] {-1, 0});
+          count[0]++;
+          count[1] = 0;
+        }
+        case STATUS -> {
+          MyGraph myGraph = sessions.get(sessionId);
+          if (myGraph != null) {
+            StateCodec.applyChanges(myGraph, record.getPayload());
+            long[] count = counts.get(sessionId);
+            count[0]++;
+            count[1]++;
+          }
+        }
+        case REMOVE -> {
+          sessions.remove(sessionId);
+          counts.remove(sessionId);
+        }
+      }
+    });
+    sessions.forEach((sessionId, myGraph) -> {
+      long[] count = counts.get(sessionId);
+      store.entries.put(sessionId, new Entry(SessionStore.Versioned.of(StateCodec.encode(myGraph), count[0]), (int) count[1]));
+    });
+    return store;
+  }
+
+  @Override
+  public Optional<SessionStore.Versioned> get(String sessionId) {
+    return Optional.ofNullable(entries.get(sessionId)).map(entry -> entry.versioned);
+  }
+
+  @Override
+  public boolean create(String sessionId, byte[] state) {
+    synchronized (stripe(sessionId)) {
+      if (entries.containsKey(sessionId)) {
+        return false;
+      }
+      eventLog.append(List.of(EventLog.Record.of(EventLog.TYPE.SNAPSHOT, sessionId, state)));
+      entries.put(sessionId, new Entry(SessionStore.Versioned.of(state, 0L), 0));
+      return true;
+    }
+  }
+
+  /**
+   * Replaces the state of a session, logging it as a snapshot since the updates that led to it are unknown.
+   */
+  @Override
+  public boolean replace(String sessionId, long expectedVersion, byte[] state) {
+    return replace(sessionId, expectedVersion, state, null);
+  }
+
+  @Override
+  public boolean replace(String sessionId, long expectedVersion, byte[] state, byte[] changes) {
+    synchronized (stripe(sessionId)) {
+      Entry entry = entries.get(sessionId);
+      if (entry == null || entry.versioned.getVersion() != expectedVersion) {
+        return false;
+      }
+      SessionStore.Versioned versioned = SessionStore.Versioned.of(state, expectedVersion + 1);
+      Entry replacement;
+      if (changes == null || entry.changesSinceSnapshot + 1 >= snapshotInterval) {
+        eventLog.append(List.of(EventLog.Record.of(EventLog.TYPE.SNAPSHOT, sessionId, state)));
+        replacement = new Entry(versioned, 0);
+      } else {
+        eventLog.append(List.of(EventLog.Record.of(EventLog.TYPE.STATUS, sessionId, changes)));
+        replacement = new Entry(versioned, entry.changesSinceSnapshot + 1);
+      }
+      entries.put(sessionId, replacement);
+      return true;
+    }
+  }
+
+  @Override
+  public void remove(String sessionId) {
+    Entry entry;
+    synchronized (stripe(sessionId)) {
+      if (!entries.containsKey(sessionId)) {
+        return;
+      }
+      eventLog.append(List.of(EventLog.Record.of(EventLog.TYPE.REMOVE, sessionId, new byte[0])));
+      entry = entries.remove(sessionId);
+    }
+    for (RemovalListener listener : removalListeners) {
+      listener.onRemoval(sessionId, entry.versioned.getState());
+    }
+  }
+
+  @Override
+  public void addRemovalListener(RemovalListener listener) {
+    removalListeners.add(listener);
+  }
+
+  /**
+   * Returns the number of sessions held.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private Object stripe(String sessionId) {
+    int hash = sessionId.hashCode();
+    return stripes[(hash ^ hash >>> 16) & (STRIPE_COUNT - 1)];
+  }
+}
@@ -0,0 +1,205 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming GraphML loader for challenge graphs.
+ * <p>
+ * Reads the document with a StAX cursor, keeping only what a {@link Template} needs: node
+ * identifiers, edges and the {@code weight} edge attribute. Every other element and attribute is
+ * skipped, and edges are appended directly to primitive arrays, so memory is bounded by the size of
+ * the compiled graph rather than by the size of the document.
+ */
+final class GraphMLLoader {
+  private static final String EDGE_WEIGHT_ATTRIBUTE_NAME = "weight";
+  private static final double DEFAULT_EDGE_WEIGHT = 1.0;
+  private static final XMLInputFactory XML_INPUT_FACTORY = newXMLInputFactory();
+
+  /**
+   * Receives the loaded graph: its nodes, and its edges in the order in which the document defines them.
+   */
+  @FunctionalInterface
+  interface Sink<T> {
+    T accept(String[] nodeIds, int edgeCount, int[] sources, int[] targets, double[] weights);
+  }
+
+  private final Map<String, Integer> nodeIndices = new HashMap<>();
+  private String[] nodeIds = new String[64];
+  private int nodeCount;
+  private int[] sources = new int[64];
+  private int[] targets = new int[64];
+  private double[] weights = new double[64];
+  private int edgeCount;
+
+  private GraphMLLoader() { /* hide constructor */ }
+
+  static <T> T load(Reader reader, Sink<T> sink) {
+    try {
+      return load(XML_INPUT_FACTORY.createXMLStreamReader(reader), sink);
+    } catch (XMLStreamException e) {
+      throw new IllegalArgumentException("malformed GraphML", e);
+    }
+  }
+
+  static <T> T load(InputStream inputStream, Sink<T> sink) {
+    try {
+      return load(XML_INPUT_FACTORY.createXMLStreamReader(inputStream), sink);
+    } catch (XMLStreamException e) {
+      throw new IllegalArgumentException("malformed GraphML", e);
+    }
+  }
+
+  private static <T> T load(XMLStreamReader xmlStreamReader, Sink<T> sink) throws XMLStreamException {
+    GraphMLLoader loader = new GraphMLLoader();
+    try {
+      loader.read(xmlStreamReader);
+    } finally {
+      xmlStreamReader.close();
+    }
+    int edgeCount = Template.removeRepeatedEdges(loader.nodeCount, loader.edgeCount, loader.sources, loader.targets, loader.weights);
+    return sink.accept(Arrays.copyOf(loader.nodeIds, loader.nodeCount), edgeCount, loader.sources, loader.targets, loader.weights);
+  }
+
+  private void read(XMLStreamReader xmlStreamReader) throws XMLStreamException {
+    String weightKey = null;
+    boolean inWeightKey = false;
+    double defaultWeight = DEFAULT_EDGE_WEIGHT;
+    int edge = -1;
+    while (xmlStreamReader.hasNext()) {
+      int event = xmlStreamReader.next();
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        switch (xmlStreamReader.getLocalName()) {
+          case "key" -> inWeightKey = false;
+          case "edge" -> edge = -1;
+          default -> { /* not tracked */ }
+        }
+        continue;
+      }
+      if (event != XMLStreamConstants.START_ELEMENT) {
+        continue;
+      }
+      switch (xmlStreamReader.getLocalName()) {
+        case "key" -> {
+          String domain = xmlStreamReader.getAttributeValue(null, "for");
+          if (EDGE_WEIGHT_ATTRIBUTE_NAME.equals(xmlStreamReader.getAttributeValue(null, "attr.name"))
+              && ("edge".equals(domain) || "all".equals(domain))) {
+            weightKey = xmlStreamReader.getAttributeValue(null, "id");
+            inWeightKey = true;
+          }
+        }
+        case "default" -> {
+          if (inWeightKey) {
+            defaultWeight = parseWeight(xmlStreamReader.getElementText());
+          }
+        }
+        case "node" -> indexOf(requireAttribute(xmlStreamReader, "id"));
+        case "edge" -> edge = addEdge(
+          indexOf(requireAttribute(xmlStreamReader, "source")),
+          indexOf(requireAttribute(xmlStreamReader, "target")),
+          defaultWeight);
+        case "data" -> {
+          if (edge >= 0 && weightKey != null && weightKey.equals(xmlStreamReader.getAttributeValue(null, "key"))) {
+            weights[edge] = parseWeight(xmlStreamReader.getElementText());
+          }
+        }
+        default -> { /* skipped */ }
+      }
+    }
+  }
+
+  private int indexOf(String nodeId) {
+    Integer index = nodeIndices.get(nodeId);
+    if (index == null) {
+      if (nodeCount == nodeIds.length) {
+        nodeIds = Arrays.copyOf(nodeIds, 2 * nodeCount);
+      }
+      index = nodeCount;
+      nodeIds[nodeCount++] = nodeId;
+      nodeIndices.put(nodeId, index);
+    }
+    return index;
+  }
+
+  /**
+   * Appends an edge. Repeated edges between the same nodes are removed once the document has been read,
+   * keeping the first, as a simple graph does.
+   *
+   * @return the index of the appended edge
+   */
+  private int addEdge(int source, int target, double weight) {
+    if (edgeCount == sources.length) {
+      sources = Arrays.copyOf(sources, 2 * edgeCount);
+      targets = Arrays.copyOf(targets, 2 * edgeCount);
+      weights = Arrays.copyOf(weights, 2 * edgeCount);
+    }
+    sources[edgeCount] = source;
+    targets[edgeCount] = target;
+    weights[edgeCount] = weight;
+    return edgeCount++;
+  }
+
+  private static String requireAttribute(XMLStreamReader xmlStreamReader, String name) {
+    String value = xmlStreamReader.getAttributeValue(null, name);
+    if (value == null) {
+      throw new IllegalArgumentException("<" + xmlStreamReader.getLocalName() + "> without " + name + " at " + xmlStreamReader.getLocation());
+    }
+    return value;
+  }
+
+  private static double parseWeight(String text) {
+    try {
+      return Double.parseDouble(text.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("malformed edge weight " + text, e);
+    }
+  }
+
+  private static XMLInputFactory newXMLInputFactory() {
+    XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+    xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return xmlInputFactory;
+  }
+
+  /**
+   * Adapts a buffer, typically a memory-mapped file, to an InputStream without copying it onto the heap.
+   */
+  static InputStream asInputStream(ByteBuffer buffer) {
+    ByteBuffer source = buffer.duplicate();
+    return new InputStream() {
+      @Override
+      public int read() {
+        return source.hasRemaining() ? source.get() & 0xFF : -1;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+          return 0;
+        }
+        if (!source.hasRemaining()) {
+          return -1;
+        }
+        int count = Math.min(length, source.remaining());
+        source.get(bytes, offset, count);
+        return count;
+      }
+
+      @Override
+      public int available() {
+        return source.remaining();
+      }
+    };
+  }
+}
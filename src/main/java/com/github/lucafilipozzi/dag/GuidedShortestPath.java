@@ -0,0 +1,392 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.Arrays;
+
+/**
+ * Shortest path searches guided by a priority queue, which visit only the nodes that may lie on a
+ * shortest path: the ASTAR and BIDIRECTIONAL searches of a {@link Template}.
+ * <p>
+ * A search runs in two phases. The first finds every node that lies on some shortest START to END path
+ * avoiding FAILURE nodes, and usually few others. ASTAR expands nodes in the order of their distance
+ * from START plus their distance to END in the unmasked graph, a lower bound of their distance to END
+ * that FAILURE nodes can only lengthen, until that order exceeds the length of the shortest path;
+ * BIDIRECTIONAL settles nodes from START over the edges and from END over the reversed edges, each
+ * time on the side whose next node is closer, until the next nodes of both sides together are farther
+ * apart than the shortest path met so far. Either way, a node that lies on a shortest path is
+ * expanded, or settled from at least one side, before the search stops. Both stop a little past the
+ * bound, so that a node whose distances differ from the bound only by rounding is kept.
+ * <p>
+ * The second phase relaxes the nodes found, and only those, in topological order, with the
+ * tie-breaking of {@link IncrementalShortestPath}: the predecessors of a node on a shortest path are on
+ * a shortest path too, so that it keeps the same predecessor when several offer the same distance, and
+ * the search returns the same path as the TOPOLOGICAL search, whatever the order in which the first
+ * phase met the nodes.
+ * <p>
+ * The labels, queues and marks are kept in per-thread scratch buffers, as by {@link IncrementalShortestPath};
+ * marks are stamped with the number of the search rather than cleared, so that a search costs time in
+ * the number of nodes it visits rather than in the size of the graph.
+ */
+final class GuidedShortestPath {
+  private static final double SLACK = 1e-9;
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private static final class Scratch {
+    int stamp;
+    double[] forwardDistances = new double[0];
+    double[] backwardDistances = new double[0];
+    int[] forwardStamps = new int[0];   // forwardDistances[node] is set when forwardStamps[node] == stamp
+    int[] backwardStamps = new int[0];  // backwardDistances[node] is set when backwardStamps[node] == stamp
+    int[] settledStamps = new int[0];   // node was added to candidates when settledStamps[node] == stamp
+    int[] predecessors = new int[0];
+    int[] candidates = new int[0];
+    int candidateCount;
+    final Heap forward = new Heap();
+    final Heap backward = new Heap();
+
+    void ensureCapacity(int size) {
+      if (forwardDistances.length < size) {
+        forwardDistances = new double[size];
+        backwardDistances = new double[size];
+        forwardStamps = new int[size];
+        backwardStamps = new int[size];
+        settledStamps = new int[size];
+        predecessors = new int[size];
+        candidates = new int[size];
+        stamp = 0;
+      }
+      if (++stamp == Integer.MAX_VALUE) {
+        Arrays.fill(forwardStamps, 0);
+        Arrays.fill(backwardStamps, 0);
+        Arrays.fill(settledStamps, 0);
+        stamp = 1;
+      }
+      candidateCount = 0;
+      forward.clear();
+      backward.clear();
+    }
+
+    /**
+     * Adds the node to the candidates, unless it already is one.
+     *
+     * @return {@code false} if the node already is a candidate
+     */
+    boolean settle(int node) {
+      if (settledStamps[node] == stamp) {
+        return false;
+      }
+      settledStamps[node] = stamp;
+      candidates[candidateCount++] = node;
+      return true;
+    }
+  }
+
+  /**
+   * A binary min-heap of nodes keyed by distance. A node whose key decreases is pushed again rather
+   * than moved, and its stale entries are skipped when popped.
+   */
+  private static final class Heap {
+    private double[] keys = new double[16];
+    private int[] nodes = new int[16];
+    private int size;
+
+    void clear() {
+      size = 0;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    double peekKey() {
+      return keys[0];
+    }
+
+    void push(double key, int node) {
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, 2 * size);
+        nodes = Arrays.copyOf(nodes, 2 * size);
+      }
+      int index = size++;
+      while (index > 0) {
+        int parent = (index - 1) >>> 1;
+        if (keys[parent] <= key) {
+          break;
+        }
+        keys[index] = keys[parent];
+        nodes[index] = nodes[parent];
+        index = parent;
+      }
+      keys[index] = key;
+      nodes[index] = node;
+    }
+
+    int pop() {
+      int top = nodes[0];
+      double key = keys[--size];
+      int node = nodes[size];
+      int index = 0;
+      while (true) {
+        int child = 2 * index + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && keys[child + 1] < keys[child]) {
+          child++;
+        }
+        if (key <= keys[child]) {
+          break;
+        }
+        keys[index] = keys[child];
+        nodes[index] = nodes[child];
+        index = child;
+      }
+      keys[index] = key;
+      nodes[index] = node;
+      return top;
+    }
+  }
+
+  private GuidedShortestPath() { /* hide constructor */ }
+
+  /**
+   * Finds the shortest path from START to END avoiding FAILURE nodes with the search of the template,
+   * which must be ASTAR or BIDIRECTIONAL, and counts the nodes it expands.
+   *
+   * @param template the compiled challenge graph
+   * @param statuses the status of every node, indexed as in the template
+   * @param visits if not {@code null}, {@code visits[0]} is incremented by the number of nodes expanded
+   * @return the nodes of the shortest path, START first and END last, or {@code null} if END is unreachable
+   * @throws IllegalArgumentException if the search of the template is TOPOLOGICAL
+   */
+  static int[] getPath(Template template, byte[] statuses, int[] visits) {
+    if (statuses[template.getStart()] == Node.FAILURE || statuses[template.getEnd()] == Node.FAILURE) {
+      return null;
+    }
+    Scratch scratch = SCRATCH.get();
+    scratch.ensureCapacity(statuses.length);
+    boolean found = switch (template.getSearch()) {
+      case ASTAR -> searchAStar(template, statuses, scratch);
+      case BIDIRECTIONAL -> searchBidirectional(template, statuses, scratch);
+      case TOPOLOGICAL -> throw new IllegalArgumentException("template " + template.getId() + " is searched topologically");
+    };
+    int[] path = found ? relax(template, statuses, scratch) : null;
+    if (visits != null) {
+      visits[0] += scratch.candidateCount;
+    }
+    return path;
+  }
+
+  /**
+   * Expands nodes from START in the order of their distance from START plus their distance to END in
+   * the unmasked graph, adding the expanded nodes to the candidates.
+   *
+   * @return {@code false} if END is unreachable
+   */
+  private static boolean searchAStar(Template template, byte[] statuses, Scratch scratch) {
+    int start = template.getStart();
+    int end = template.getEnd();
+    int[] edgeOffsets = template.getEdgeOffsets();
+    int[] edgeTargets = template.getEdgeTargets();
+    double[] edgeWeights = template.getEdgeWeights();
+    double[] distancesToEnd = template.getDistancesToEnd();
+    double[] distances = scratch.forwardDistances;
+    int[] stamps = scratch.forwardStamps;
+    int stamp = scratch.stamp;
+    Heap heap = scratch.forward;
+    if (distancesToEnd[start] == Double.POSITIVE_INFINITY) {
+      return false;
+    }
+    distances[start] = 0.0;
+    stamps[start] = stamp;
+    heap.push(distancesToEnd[start], start);
+    double bound = Double.POSITIVE_INFINITY;
+    while (!heap.isEmpty() && heap.peekKey() <= bound) {
+      int node = heap.pop();
+      if (!scratch.settle(node)) {
+        continue; // a stale entry
+      }
+      if (node == end) {
+        bound = withSlack(distances[end]);
+        continue;
+      }
+      double distance = distances[node];
+      for (int edge = edgeOffsets[node]; edge < edgeOffsets[node + 1]; edge++) {
+        int target = edgeTargets[edge];
+        if (statuses[target] == Node.FAILURE || distancesToEnd[target] == Double.POSITIVE_INFINITY) {
+          continue;
+        }
+        double candidate = distance + edgeWeights[edge];
+        if (stamps[target] != stamp || candidate < distances[target]) {
+          distances[target] = candidate;
+          stamps[target] = stamp;
+          heap.push(candidate + distancesToEnd[target], target);
+        }
+      }
+    }
+    return bound != Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Settles nodes from START over the edges and from END over the reversed edges, adding the nodes
+   * settled from either side to the candidates.
+   *
+   * @return {@code false} if END is unreachable
+   */
+  private static boolean searchBidirectional(Template template, byte[] statuses, Scratch scratch) {
+    int start = template.getStart();
+    int end = template.getEnd();
+    int[] edgeOffsets = template.getEdgeOffsets();
+    int[] edgeSources = template.getEdgeSources();
+    int[] edgeTargets = template.getEdgeTargets();
+    double[] edgeWeights = template.getEdgeWeights();
+    int[] reverseEdgeOffsets = template.getReverseEdgeOffsets();
+    int[] reverseEdges = template.getReverseEdges();
+    double[] forwardDistances = scratch.forwardDistances;
+    double[] backwardDistances = scratch.backwardDistances;
+    int[] forwardStamps = scratch.forwardStamps;
+    int[] backwardStamps = scratch.backwardStamps;
+    int stamp = scratch.stamp;
+    Heap forward = scratch.forward;
+    Heap backward = scratch.backward;
+    forwardDistances[start] = 0.0;
+    forwardStamps[start] = stamp;
+    forward.push(0.0, start);
+    backwardDistances[end] = 0.0;
+    backwardStamps[end] = stamp;
+    backward.push(0.0, end);
+    double shortest = start == end ? 0.0 : Double.POSITIVE_INFINITY; // the shortest path met so far
+    while (!forward.isEmpty() && !backward.isEmpty() && forward.peekKey() + backward.peekKey() <= withSlack(shortest)) {
+      if (forward.peekKey() <= backward.peekKey()) {
+        double key = forward.peekKey();
+        int node = forward.pop();
+        if (key > forwardDistances[node]) {
+          continue; // a stale entry
+        }
+        scratch.settle(node);
+        double distance = forwardDistances[node];
+        for (int edge = edgeOffsets[node]; edge < edgeOffsets[node + 1]; edge++) {
+          int target = edgeTargets[edge];
+          if (statuses[target] == Node.FAILURE) {
+            continue;
+          }
+          double candidate = distance + edgeWeights[edge];
+          if (forwardStamps[target] != stamp || candidate < forwardDistances[target]) {
+            forwardDistances[target] = candidate;
+            forwardStamps[target] = stamp;
+            forward.push(candidate, target);
+            if (backwardStamps[target] == stamp) {
+              shortest = Math.min(shortest, candidate + backwardDistances[target]);
+            }
+          }
+        }
+      } else {
+        double key = backward.peekKey();
+        int node = backward.pop();
+        if (key > backwardDistances[node]) {
+          continue; // a stale entry
+        }
+        scratch.settle(node);
+        double distance = backwardDistances[node];
+        for (int index = reverseEdgeOffsets[node]; index < reverseEdgeOffsets[node + 1]; index++) {
+          int edge = reverseEdges[index];
+          int source = edgeSources[edge];
+          if (statuses[source] == Node.FAILURE) {
+            continue;
+          }
+          double candidate = distance + edgeWeights[edge];
+          if (backwardStamps[source] != stamp || candidate < backwardDistances[source]) {
+            backwardDistances[source] = candidate;
+            backwardStamps[source] = stamp;
+            backward.push(candidate, source);
+            if (forwardStamps[source] == stamp) {
+              shortest = Math.min(shortest, candidate + forwardDistances[source]);
+            }
+          }
+        }
+      }
+    }
+    return shortest != Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Relaxes the candidates in topological order, with the tie-breaking of {@link IncrementalShortestPath}.
+   *
+   * @return the nodes of the shortest path, START first and END last, or {@code null} if END is unreachable
+   */
+  private static int[] relax(Template template, byte[] statuses, Scratch scratch) {
+    int start = template.getStart();
+    int end = template.getEnd();
+    int[] edgeOffsets = template.getEdgeOffsets();
+    int[] edgeTargets = template.getEdgeTargets();
+    double[] edgeWeights = template.getEdgeWeights();
+    int[] topologicalOrder = template.getTopologicalOrder();
+    int[] topologicalPositions = template.getTopologicalPositions();
+    int[] candidates = scratch.candidates;
+    int candidateCount = scratch.candidateCount;
+    int[] settledStamps = scratch.settledStamps;
+    int stamp = scratch.stamp;
+    int first = Integer.MAX_VALUE;
+    int last = -1;
+    for (int index = 0; index < candidateCount; index++) {
+      candidates[index] = topologicalPositions[candidates[index]];
+      first = Math.min(first, candidates[index]);
+      last = Math.max(last, candidates[index]);
+    }
+    if (8L * candidateCount >= last - first + 1) {
+      int index = 0; // dense enough to collect in order rather than sort
+      for (int position = first; position <= last; position++) {
+        if (settledStamps[topologicalOrder[position]] == stamp) {
+          candidates[index++] = position;
+        }
+      }
+    } else {
+      Arrays.sort(candidates, 0, candidateCount);
+    }
+    double[] distances = scratch.forwardDistances; // the first phase is done with them
+    int[] predecessors = scratch.predecessors;
+    for (int index = 0; index < candidateCount; index++) {
+      distances[topologicalOrder[candidates[index]]] = Double.POSITIVE_INFINITY;
+    }
+    distances[start] = 0.0;
+    predecessors[start] = -1;
+    for (int index = 0; index < candidateCount; index++) {
+      int node = topologicalOrder[candidates[index]];
+      if (node == end) {
+        break;
+      }
+      double distance = distances[node];
+      if (distance == Double.POSITIVE_INFINITY) {
+        continue;
+      }
+      for (int edge = edgeOffsets[node]; edge < edgeOffsets[node + 1]; edge++) {
+        int target = edgeTargets[edge];
+        if (settledStamps[target] != stamp || statuses[target] == Node.FAILURE) {
+          continue;
+        }
+        double candidate = distance + edgeWeights[edge];
+        if (candidate < distances[target] || candidate == distances[target] && distance < distances[predecessors[target]]) {
+          distances[target] = candidate;
+          predecessors[target] = node;
+        }
+      }
+    }
+    if (settledStamps[end] != stamp || distances[end] == Double.POSITIVE_INFINITY) {
+      return null;
+    }
+    int length = 1;
+    for (int node = end; node != start; node = predecessors[node]) {
+      length++;
+    }
+    int[] path = new int[length];
+    for (int node = end, index = length - 1; index >= 0; index--) {
+      path[index] = node;
+      node = predecessors[node];
+    }
+    return path;
+  }
+
+  private static double withSlack(double distance) {
+    return distance + SLACK * Math.max(1.0, Math.abs(distance));
+  }
+}
@@ -0,0 +1,170 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory {@link MetricsSink} that keeps a histogram of every measurement and a counter of every outcome.
+ * <p>
+ * Histograms are log-linear: values below 16 are counted exactly, and larger values in eight buckets per
+ * power of two, so that every reported percentile is within 12.5% of the true value. Recording is lock-free
+ * and allocation-free.
+ */
+public final class HistogramMetricsSink implements MetricsSink {
+  private final Map<OPERATION, Histogram> latencies = new EnumMap<>(OPERATION.class);
+  private final Map<Outcome.KIND, LongAdder> outcomes = new EnumMap<>(Outcome.KIND.class);
+  private final Histogram stateSizes = new Histogram();
+  private final Histogram searchVisits = new Histogram();
+  private final LongAdder conflicts = new LongAdder();
+
+  private HistogramMetricsSink() {
+    for (OPERATION operation : OPERATION.values()) {
+      latencies.put(operation, new Histogram());
+    }
+    for (Outcome.KIND kind : Outcome.KIND.values()) {
+      outcomes.put(kind, new LongAdder());
+    }
+  }
+
+  public static HistogramMetricsSink of() {
+    return new HistogramMetricsSink();
+  }
+
+  @Override
+  public void recordLatency(OPERATION operation, long nanos) {
+    latencies.get(operation).record(nanos);
+  }
+
+  @Override
+  public void recordOutcome(Outcome.KIND kind) {
+    outcomes.get(kind).increment();
+  }
+
+  @Override
+  public void recordStateSize(int bytes) {
+    stateSizes.record(bytes);
+  }
+
+  @Override
+  public void recordSearchVisits(int visits) {
+    searchVisits.record(visits);
+  }
+
+  @Override
+  public void recordConflict() {
+    conflicts.increment();
+  }
+
+  /**
+   * Returns the histogram of the durations of the given operation, in nanoseconds.
+   */
+  public Histogram getLatencies(OPERATION operation) {
+    return latencies.get(operation);
+  }
+
+  public long getOutcomeCount(Outcome.KIND kind) {
+    return outcomes.get(kind).sum();
+  }
+
+  /**
+   * Returns the histogram of the sizes of saved session states, in bytes.
+   */
+  public Histogram getStateSizes() {
+    return stateSizes;
+  }
+
+  /**
+   * Returns the histogram of the number of nodes expanded by the path searches of each API call.
+   */
+  public Histogram getSearchVisits() {
+    return searchVisits;
+  }
+
+  public long getConflictCount() {
+    return conflicts.sum();
+  }
+
+  /**
+   * A concurrent, log-linear histogram of non-negative values.
+   */
+  public static final class Histogram {
+    private static final int EXACT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = EXACT + (63 - 4) * SUB_BUCKETS;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    private Histogram() { /* hide constructor */ }
+
+    /**
+     * Records a value; negative values are recorded as zero.
+     */
+    void record(long value) {
+      long clamped = Math.max(value, 0);
+      counts.incrementAndGet(bucketOf(clamped));
+      count.increment();
+      sum.add(clamped);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public double getMean() {
+      long total = count.sum();
+      return total == 0 ? 0.0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded values, within 12.5% of it,
+     * or 0 if no value has been recorded.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the largest value of the bucket holding the percentile
+     */
+    public long getValueAtPercentile(double percentile) {
+      long[] snapshot = new long[BUCKETS];
+      long total = 0;
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        snapshot[bucket] = counts.get(bucket);
+        total += snapshot[bucket];
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0.0), 100.0) / 100.0 * total));
+      long seen = 0;
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        seen += snapshot[bucket];
+        if (seen >= rank) {
+          return highestValueOf(bucket);
+        }
+      }
+      return highestValueOf(BUCKETS - 1);
+    }
+
+    private static int bucketOf(long value) {
+      if (value < EXACT) {
+        return (int) value;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value); // at least 4
+      int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return EXACT + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int bucket) {
+      if (bucket < EXACT) {
+        return bucket;
+      }
+      int exponent = 4 + (bucket - EXACT) / SUB_BUCKETS;
+      int subBucket = (bucket - EXACT) % SUB_BUCKETS;
+      long lowest = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+      return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * An {@link EventLog} held in memory, for tests and for processes that need the audit trail of their
+ * sessions but not their durability.
+ */
+public class InMemoryEventLog implements EventLog {
+  private final List<Record> records = new ArrayList<>();
+
+  private InMemoryEventLog() { /* hide constructor */ }
+
+  public static InMemoryEventLog of() {
+    return new InMemoryEventLog();
+  }
+
+  @Override
+  public synchronized void append(List<Record> newRecords) {
+    records.addAll(newRecords);
+  }
+
+  @Override
+  public synchronized void replay(Consumer<Record> consumer) {
+    records.forEach(consumer);
+  }
+
+  @Override
+  public synchronized void compact() {
+    List<Record> live = live(records);
+    records.clear();
+    records.addAll(live);
+  }
+
+  /**
+   * Returns the number of records held.
+   */
+  public synchronized int size() {
+    return records.size();
+  }
+
+  /**
+   * Returns the records that contribute to the state of a session, in order of session and then of appending.
+   */
+  static List<Record> live(Iterable<Record> records) {
+    Map<String, List<Record>> recordsBySession = new LinkedHashMap<>();
+    for (Record record : records) {
+      switch (record.getType()) {
+        case SNAPSHOT -> {
+          List<Record> sessionRecords = new ArrayList<>();
+          sessionRecords.add(record);
+          recordsBySession.remove(record.getSessionId()); // keep sessions in order of their latest snapshot
+          recordsBySession.put(record.getSessionId(), sessionRecords);
+        }
+        case STATUS -> {
+          List<Record> sessionRecords = recordsBySession.get(record.getSessionId());
+          if (sessionRecords != null) {
+            sessionRecords.add(record);
+          }
+        }
+        case REMOVE -> recordsBySession.remove(record.getSessionId());
+      }
+    }
+    List<Record> live = new ArrayList<>();
+    recordsBySession.values().forEach(live::addAll);
+    return live;
+  }
+}
@@ -0,0 +1,198 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link SessionStore} held in a {@link ConcurrentHashMap}.
+ * <p>
+ * Reads never lock; updates of different sessions proceed in parallel and updates of the same session
+ * are serialized by a compare-and-set on its entry. Sessions idle for longer than the configured
+ * duration expire, and once the configured maximum size is reached the least recently accessed
+ * sessions are evicted, in batches, to make room for new ones.
+ */
+public class InMemorySessionStore implements SessionStore {
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final int maximumSize;
+  private final long expireAfterAccessNanos;
+  private final LongSupplier nanoTime;
+  private final List<RemovalListener> removalListeners = new CopyOnWriteArrayList<>();
+
+  private static final class Entry {
+    private final SessionStore.Versioned versioned;
+    private volatile long accessed;
+
+    private Entry(SessionStore.Versioned versioned, long accessed) {
+      this.versioned = versioned;
+      this.accessed = accessed;
+    }
+  }
+
+  private static final class Candidate {
+    private final String sessionId;
+    private final Entry entry;
+    private final long accessed; // snapshot, as entry.accessed may change while queued
+
+    private Candidate(String sessionId, Entry entry) {
+      this.sessionId = sessionId;
+      this.entry = entry;
+      this.accessed = entry.accessed;
+    }
+  }
+
+  private InMemorySessionStore(int maximumSize, Duration expireAfterAccess, LongSupplier nanoTime) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive");
+    }
+    this.maximumSize = maximumSize;
+    this.expireAfterAccessNanos = expireAfterAccess.toNanos();
+    this.nanoTime = nanoTime;
+  }
+
+  /**
+   * Creates an unbounded store whose sessions never expire.
+   *
+   * @return a new, empty store
+   */
+  public static InMemorySessionStore of() {
+    return of(Integer.MAX_VALUE, Duration.ofNanos(Long.MAX_VALUE));
+  }
+
+  /**
+   * Creates a bounded store whose sessions expire when idle.
+   *
+   * @param maximumSize the maximum number of sessions held
+   * @param expireAfterAccess how long a session may go without being read or updated before it expires
+   * @return a new, empty store
+   */
+  public static InMemorySessionStore of(int maximumSize, Duration expireAfterAccess) {
+    return of(maximumSize, expireAfterAccess, System::nanoTime);
+  }
+
+  static InMemorySessionStore of(int maximumSize, Duration expireAfterAccess, LongSupplier nanoTime) {
+    return new InMemorySessionStore(maximumSize, expireAfterAccess, nanoTime);
+  }
+
+  @Override
+  public Optional<SessionStore.Versioned> get(String sessionId) {
+    return Optional.ofNullable(getEntry(sessionId)).map(entry -> entry.versioned);
+  }
+
+  @Override
+  public boolean create(String sessionId, byte[] state) {
+    if (entries.size() >= maximumSize) {
+      evict();
+    }
+    Entry entry = new Entry(SessionStore.Versioned.of(state, 0L), nanoTime.getAsLong());
+    Entry existing = entries.putIfAbsent(sessionId, entry);
+    if (existing != null && isExpired(existing, entry.accessed)) {
+      if (!entries.replace(sessionId, existing, entry)) {
+        return false;
+      }
+      notifyRemoval(sessionId, existing);
+      return true;
+    }
+    return existing == null;
+  }
+
+  @Override
+  public boolean replace(String sessionId, long expectedVersion, byte[] state) {
+    Entry entry = getEntry(sessionId);
+    if (entry == null || entry.versioned.getVersion() != expectedVersion) {
+      return false;
+    }
+    return entries.replace(sessionId, entry, new Entry(SessionStore.Versioned.of(state, expectedVersion + 1), nanoTime.getAsLong()));
+  }
+
+  @Override
+  public void remove(String sessionId) {
+    Entry entry = entries.remove(sessionId);
+    if (entry != null) {
+      notifyRemoval(sessionId, entry);
+    }
+  }
+
+  @Override
+  public void addRemovalListener(RemovalListener listener) {
+    removalListeners.add(listener);
+  }
+
+  /**
+   * Returns the number of sessions held, including expired sessions not yet evicted.
+   *
+   * @return the number of sessions held
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private Entry getEntry(String sessionId) {
+    Entry entry = entries.get(sessionId);
+    if (entry == null) {
+      return null;
+    }
+    long now = nanoTime.getAsLong();
+    if (isExpired(entry, now)) {
+      if (entries.remove(sessionId, entry)) {
+        notifyRemoval(sessionId, entry);
+      }
+      return null;
+    }
+    entry.accessed = now;
+    return entry;
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return now - entry.accessed > expireAfterAccessNanos;
+  }
+
+  private void notifyRemoval(String sessionId, Entry entry) {
+    for (RemovalListener listener : removalListeners) {
+      listener.onRemoval(sessionId, entry.versioned.getState());
+    }
+  }
+
+  /**
+   * Removes every expired session and, if the store is still full, the least recently accessed
+   * sessions. Evicting a sixteenth of the capacity at a time amortizes the cost of the scan over many
+   * subsequent creations.
+   */
+  private synchronized void evict() {
+    if (entries.size() < maximumSize) {
+      return; // another thread made room
+    }
+    long now = nanoTime.getAsLong();
+    int batch = Math.max(1, entries.size() - maximumSize + 1 + maximumSize / 16);
+    PriorityQueue<Candidate> oldest = new PriorityQueue<>(Comparator.comparingLong((Candidate candidate) -> candidate.accessed).reversed());
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      if (isExpired(entry.getValue(), now)) {
+        if (entries.remove(entry.getKey(), entry.getValue())) {
+          notifyRemoval(entry.getKey(), entry.getValue());
+        }
+        batch--;
+      } else {
+        oldest.add(new Candidate(entry.getKey(), entry.getValue()));
+        if (oldest.size() > Math.max(batch, 0)) {
+          oldest.poll();
+        }
+      }
+    }
+    while (oldest.size() > Math.max(batch, 0)) {
+      oldest.poll(); // kept before expired sessions later in the scan made room
+    }
+    for (Candidate candidate : oldest) {
+      if (entries.remove(candidate.sessionId, candidate.entry)) {
+        notifyRemoval(candidate.sessionId, candidate.entry);
+      }
+    }
+  }
+}
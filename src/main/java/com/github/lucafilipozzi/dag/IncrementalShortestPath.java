@@ -0,0 +1,192 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+/**
+ * The shortest START to END path of one session, kept up to date as the statuses of its nodes change.
+ * <p>
+ * Because the challenge graph is acyclic, labelling every node with its distance from START in
+ * topological order yields the shortest path in a single pass, without a priority queue. Nodes whose
+ * status is FAILURE are skipped, exactly as the vertex mask of the former
+ * {@code MaskSubgraph}/{@code DijkstraShortestPath} pair did. Each label is pulled from the incoming
+ * edges of its node: the smallest distance wins; among predecessors offering the same distance, the one
+ * with the smallest distance from START, as it is the one that {@code DijkstraShortestPath} settles, and
+ * therefore keeps, first; among those, which {@code DijkstraShortestPath} orders by heap internals, the
+ * one first in topological order.
+ * <p>
+ * The path depends only on which nodes are FAILURE: SUCCESS and UNTRIED nodes are traversed alike. An
+ * update that fails no node of the cached path therefore leaves the path as it is, distances and
+ * tie-breaking included, since removing nodes can neither shorten a path nor promote a predecessor over
+ * one that already won against it. Only when a node of the cached path fails, or a FAILURE node is
+ * reinstated, is the path searched again. The distance-from-START label of a node depends only on the
+ * nodes preceding it in topological order, so the labels are recomputed only from the earliest
+ * topological position whose status changed since they were last computed, up to END; nodes on no START
+ * to END path of the unmasked graph, as told by the template's {@link ReachabilityIndex}, are skipped.
+ * <p>
+ * Sessions are mostly decoded for a single request, so the labels are borrowed from per-thread scratch
+ * buffers, reused by every session of the thread on a template of at most the same size, so that a
+ * search allocates only its result. A session whose labels were meanwhile claimed by another session of
+ * the thread, or that moved to another thread, is one that lives across requests: it labels its nodes
+ * again, in buffers of its own that it keeps from then on.
+ */
+final class IncrementalShortestPath {
+  private static final ThreadLocal<Labels> LABELS = ThreadLocal.withInitial(Labels::new);
+  private final Template template;
+  private Labels labels; // borrowed from the thread while claim is current, or owned
+  private long claim;
+  private boolean owned;
+  private int validBefore; // labels of the nodes at topological positions before this one are current
+  private int[] path; // the shortest path, or null if END is unreachable, while known
+  private boolean known;
+
+  private static final class Labels {
+    double[] distances = new double[0];
+    int[] predecessors = new int[0];
+    long claims; // the number of sessions that borrowed these labels
+
+    void ensureCapacity(int size) {
+      if (distances.length < size) {
+        distances = new double[size];
+        predecessors = new int[size];
+      }
+    }
+  }
+
+  private IncrementalShortestPath(Template template) {
+    this.template = template;
+  }
+
+  static IncrementalShortestPath of(Template template) {
+    return new IncrementalShortestPath(template);
+  }
+
+  /**
+   * Records that the status of a node changed; must be called for every change made to the statuses
+   * passed to {@link #getPath(byte[], int[])}.
+   */
+  void statusChanged(int node, byte previous, byte status) {
+    if ((previous == Node.FAILURE) == (status == Node.FAILURE)) {
+      return; // the path does not distinguish SUCCESS from UNTRIED
+    }
+    validBefore = Math.min(validBefore, template.getTopologicalPositions()[node]);
+    if (status != Node.FAILURE) {
+      known = false; // a reinstated node may shorten any path
+    }
+  }
+
+  /**
+   * Returns the shortest path from START to END avoiding FAILURE nodes, searching only if the cached one
+   * was invalidated.
+   *
+   * @param statuses the status of every node, indexed as in the template
+   * @param visits if not {@code null}, {@code visits[0]} is incremented by the number of nodes relabelled
+   * @return the nodes of the shortest path, START first and END last, or {@code null} if END is unreachable;
+   *         the array is shared and must not be modified
+   */
+  int[] getPath(byte[] statuses, int[] visits) {
+    if (known && path != null) {
+      for (int node : path) {
+        if (statuses[node] == Node.FAILURE) {
+          known = false;
+          break;
+        }
+      }
+    }
+    if (!known) {
+      relabel(statuses, visits);
+      path = extractPath(labels);
+      known = true;
+    }
+    return path;
+  }
+
+  /**
+   * Returns the labels of this session, claiming the thread's on its first search.
+   */
+  private Labels claimLabels() {
+    if (owned) {
+      return labels;
+    }
+    Labels borrowed = LABELS.get();
+    if (labels == null) {
+      borrowed.ensureCapacity(template.size());
+      claim = ++borrowed.claims;
+      labels = borrowed;
+    } else if (labels != borrowed || borrowed.claims != claim) {
+      labels = new Labels(); // claimed by another session, or left on another thread
+      labels.ensureCapacity(template.size());
+      owned = true;
+      validBefore = 0;
+    }
+    return labels;
+  }
+
+  private void relabel(byte[] statuses, int[] visits) {
+    Labels current = claimLabels();
+    double[] distances = current.distances;
+    int[] predecessors = current.predecessors;
+    int start = template.getStart();
+    int[] topologicalOrder = template.getTopologicalOrder();
+    int[] topologicalPositions = template.getTopologicalPositions();
+    int[] reverseEdgeOffsets = template.getReverseEdgeOffsets();
+    int[] reverseEdges = template.getReverseEdges();
+    int[] edgeSources = template.getEdgeSources();
+    double[] edgeWeights = template.getEdgeWeights();
+    ReachabilityIndex reachabilityIndex = template.getReachabilityIndex();
+    int last = topologicalPositions[template.getEnd()]; // no node after END lies on a path to it
+    int relabelled = 0;
+    for (int position = validBefore; position <= last; position++) {
+      int node = topologicalOrder[position];
+      double best = Double.POSITIVE_INFINITY;
+      int predecessor = -1;
+      if (statuses[node] != Node.FAILURE && reachabilityIndex.isRelevant(node)) {
+        if (node == start) {
+          best = 0.0;
+        } else {
+          for (int index = reverseEdgeOffsets[node]; index < reverseEdgeOffsets[node + 1]; index++) {
+            int edge = reverseEdges[index];
+            int source = edgeSources[edge];
+            double distance = distances[source];
+            if (distance == Double.POSITIVE_INFINITY) {
+              continue; // unreachable or FAILURE
+            }
+            double candidate = distance + edgeWeights[edge];
+            if (candidate < best || candidate == best && (distance < distances[predecessor]
+                || distance == distances[predecessor] && topologicalPositions[source] < topologicalPositions[predecessor])) {
+              best = candidate;
+              predecessor = source;
+            }
+          }
+        }
+      }
+      distances[node] = best;
+      predecessors[node] = predecessor;
+      if (best != Double.POSITIVE_INFINITY) {
+        relabelled++;
+      }
+    }
+    validBefore = Math.max(validBefore, last + 1);
+    if (visits != null) {
+      visits[0] += relabelled;
+    }
+  }
+
+  private int[] extractPath(Labels labels) {
+    double[] distances = labels.distances;
+    int[] predecessors = labels.predecessors;
+    int start = template.getStart();
+    int end = template.getEnd();
+    if (distances[end] == Double.POSITIVE_INFINITY) {
+      return null;
+    }
+    int length = 1;
+    for (int node = end; node != start; node = predecessors[node]) {
+      length++;
+    }
+    int[] path = new int[length];
+    for (int node = end, index = length - 1; index >= 0; index--) {
+      path[index] = node;
+      node = predecessors[node];
+    }
+    return path;
+  }
+}
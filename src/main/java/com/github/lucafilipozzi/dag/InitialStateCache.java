@@ -0,0 +1,124 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, least-recently-used cache of the initial state of new sessions.
+ * <p>
+ * The initial node statuses of a session, and therefore its first challenge, depend only on its
+ * {@link Template} and on which of the template's challenges the {@link User} has. Users are
+ * canonicalized to the set of template challenges they have, so that users differing only in
+ * challenges the template does not use share an entry. A hit costs one copy of the status array.
+ */
+public class InitialStateCache {
+  private final Map<Key, Entry> entries;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  private static final class Key {
+    private final Template template;
+    private final long[] challengeCodes;
+    private final int hashCode;
+
+    private Key(Template template, long[] challengeCodes) {
+      this.template = template;
+      this.challengeCodes = challengeCodes;
+      this.hashCode = 31 * System.identityHashCode(template) + Arrays.hashCode(challengeCodes);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      return template == ((Key) other).template && Arrays.equals(challengeCodes, ((Key) other).challengeCodes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static final class Entry {
+    private final byte[] statuses;
+    private final Outcome outcome;
+
+    private Entry(byte[] statuses, Outcome outcome) {
+      this.statuses = statuses;
+      this.outcome = outcome;
+    }
+  }
+
+  private InitialStateCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive");
+    }
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        return size() > maximumSize;
+      }
+    };
+  }
+
+  public static InitialStateCache of(int maximumSize) {
+    return new InitialStateCache(maximumSize);
+  }
+
+  /**
+   * Creates a new session, like {@link MyGraph#of(Template, User)}, from the cached initial state of
+   * the template and the user's canonicalized challenges, computing and caching it on a miss.
+   *
+   * @param template the compiled challenge graph
+   * @param user the User object containing the set of challenges available to this user
+   * @return a new MyGraph instance with nodes initialized according to user's challenge access
+   */
+  public MyGraph newSession(Template template, User user) {
+    Key key = new Key(template, canonicalize(template, user));
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+    }
+    if (entry != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+      MyGraph myGraph = MyGraph.of(template, user);
+      entry = new Entry(myGraph.getStatuses().clone(), myGraph.next());
+      synchronized (entries) {
+        entries.put(key, entry);
+      }
+    }
+    return MyGraph.of(template, entry.statuses.clone(), entry.outcome);
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  private static long[] canonicalize(Template template, User user) {
+    long[] challengeCodes = new long[(template.getChallengeCount() + 63) >>> 6];
+    for (String challenge : user.getChallenges()) {
+      int code = template.getChallengeCode(challenge);
+      if (code >= 0) {
+        challengeCodes[code >>> 6] |= 1L << code;
+      }
+    }
+    return challengeCodes;
+  }
+}
@@ -0,0 +1,464 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming JSON encoding of a {@link MyGraph} session, in the format of JGraphT's {@code JSONExporter}:
+ * <pre>
+ *   {"creator":"JGraphT JSON Exporter","version":"1",
+ *    "nodes":[{"id":"START","status":"SUCCESS"},...],
+ *    "edges":[{"source":"START","target":"DVP-1","weight":1.0},...]}
+ * </pre>
+ * without the whitespace. Strings are escaped exactly as {@code JSONExporter} escapes them, edges are
+ * written in the order in which the graph defines them, and weights as by {@link String#valueOf(double)},
+ * so the output is byte for byte that of {@code JSONExporter}. Decoding is a single pass over the
+ * characters of the document; members other than those above are skipped.
+ */
+final class JSONCodec {
+  private static final String HEADER = "{\"creator\":\"JGraphT JSON Exporter\",\"version\":\"1\",\"nodes\":[";
+  private static final String[] STATUS_MEMBERS = Arrays.stream(Node.STATUS.values())
+    .map(status -> ",\"status\":\"" + status.name() + "\"}")
+    .toArray(String[]::new);
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  private static final long MAXIMUM_EXACT_MANTISSA = 1L << 53;
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private final StringBuilder token = new StringBuilder();
+  private int position;
+  private int limit;
+  private long offset;
+  private final Map<String, Integer> nodeIndices = new HashMap<>();
+  private String[] nodeIds = new String[64];
+  private byte[] statuses = new byte[64];
+  private int nodeCount;
+  private int[] sources = new int[64];
+  private int[] targets = new int[64];
+  private double[] weights = new double[64];
+  private int edgeCount;
+
+  private JSONCodec(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Writes the given session to the given Writer.
+   *
+   * @param template the compiled challenge graph
+   * @param statuses the status of every node, indexed as in the template
+   * @param writer the Writer to which the JSON representation is output
+   * @throws UncheckedIOException if the Writer fails
+   */
+  static void write(Template template, byte[] statuses, Writer writer) {
+    try {
+      writer.write(HEADER);
+      for (int node = 0; node < statuses.length; node++) {
+        writer.write(node == 0 ? "{\"id\":" : ",{\"id\":");
+        writeString(writer, template.getNodeId(node));
+        writer.write(STATUS_MEMBERS[statuses[node]]);
+      }
+      writer.write("],\"edges\":[");
+      int[] edgeSources = template.getEdgeSources();
+      int[] edgeTargets = template.getEdgeTargets();
+      double[] edgeWeights = template.getEdgeWeights();
+      int[] edgeOrder = template.getEdgeOrder();
+      for (int index = 0; index < edgeOrder.length; index++) {
+        int edge = edgeOrder[index];
+        writer.write(index == 0 ? "{\"source\":" : ",{\"source\":");
+        writeString(writer, template.getNodeId(edgeSources[edge]));
+        writer.write(",\"target\":");
+        writeString(writer, template.getNodeId(edgeTargets[edge]));
+        writer.write(",\"weight\":");
+        writer.write(String.valueOf(edgeWeights[edge]));
+        writer.write('}');
+      }
+      writer.write("]}");
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Writes a quoted string, escaped as by Apache Commons Text's {@code StringEscapeUtils.escapeJson}:
+   * quote, backslash and slash are escaped with a backslash, control characters by their short or
+   * {@code \}{@code uXXXX} forms, and every character outside of printable ASCII by its {@code \}{@code uXXXX} form.
+   */
+  private static void writeString(Writer writer, String string) throws IOException {
+    writer.write('"');
+    int plain = 0;
+    for (int index = 0; index < string.length(); index++) {
+      char c = string.charAt(index);
+      if (c >= 0x20 && c < 0x7F && c != '"' && c != '\\' && c != '/') {
+        continue;
+      }
+      writer.write(string, plain, index - plain);
+      plain = index + 1;
+      switch (c) {
+        case '"', '\\', '/' -> {
+          writer.write('\\');
+          writer.write(c);
+        }
+        case '\b' -> writer.write("\\b");
+        case '\t' -> writer.write("\\t");
+        case '\n' -> writer.write("\\n");
+        case '\f' -> writer.write("\\f");
+        case '\r' -> writer.write("\\r");
+        default -> {
+          writer.write("\\u");
+          writer.write(HEX_DIGITS[c >>> 12 & 0xF]);
+          writer.write(HEX_DIGITS[c >>> 8 & 0xF]);
+          writer.write(HEX_DIGITS[c >>> 4 & 0xF]);
+          writer.write(HEX_DIGITS[c & 0xF]);
+        }
+      }
+    }
+    writer.write(string, plain, string.length() - plain);
+    writer.write('"');
+  }
+
+  /**
+   * Reads a session written by {@link #write(Template, byte[], Writer)}, compiling its graph into a new,
+   * private template. Nodes without a status are UNTRIED and edges without a weight weigh 1.0.
+   *
+   * @param id the identifier of the new template
+   * @param reader the Reader containing the JSON representation
+   * @return the session
+   * @throws UncheckedIOException if the Reader fails
+   * @throws java.util.NoSuchElementException if START or END nodes are not found in the graph
+   * @throws IllegalArgumentException if the document is malformed or the graph is not acyclic
+   */
+  static MyGraph read(String id, Reader reader) {
+    JSONCodec codec = new JSONCodec(reader);
+    try {
+      codec.readDocument();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    int edgeCount = Template.removeRepeatedEdges(codec.nodeCount, codec.edgeCount, codec.sources, codec.targets, codec.weights);
+    Template template = Template.of(id, Arrays.copyOf(codec.nodeIds, codec.nodeCount), edgeCount, codec.sources, codec.targets, codec.weights);
+    return MyGraph.of(template, Arrays.copyOf(codec.statuses, codec.nodeCount));
+  }
+
+  private void readDocument() throws IOException {
+    expect('{');
+    if (!consume('}')) {
+      do {
+        readString();
+        expect(':');
+        if (isToken("nodes")) {
+          readArray(this::readNode);
+        } else if (isToken("edges")) {
+          readArray(this::readEdge);
+        } else {
+          skipValue();
+        }
+      } while (consume(','));
+      expect('}');
+    }
+    if (peek() != -1) {
+      throw malformed("trailing characters");
+    }
+  }
+
+  private interface ElementReader {
+    void read() throws IOException;
+  }
+
+  private void readArray(ElementReader elementReader) throws IOException {
+    expect('[');
+    if (!consume(']')) {
+      do {
+        elementReader.read();
+      } while (consume(','));
+      expect(']');
+    }
+  }
+
+  private void readNode() throws IOException {
+    int node = -1;
+    byte status = Node.UNTRIED;
+    expect('{');
+    if (!consume('}')) {
+      do {
+        readString();
+        expect(':');
+        if (isToken("id")) {
+          readString();
+          node = indexOf(token.toString());
+        } else if (isToken("status")) {
+          readString();
+          status = parseStatus();
+        } else {
+          skipValue();
+        }
+      } while (consume(','));
+      expect('}');
+    }
+    if (node < 0) {
+      throw malformed("node without id");
+    }
+    statuses[node] = status;
+  }
+
+  private void readEdge() throws IOException {
+    int source = -1;
+    int target = -1;
+    double weight = 1.0;
+    expect('{');
+    if (!consume('}')) {
+      do {
+        readString();
+        expect(':');
+        if (isToken("source")) {
+          readString();
+          source = indexOf(token.toString());
+        } else if (isToken("target")) {
+          readString();
+          target = indexOf(token.toString());
+        } else if (isToken("weight")) {
+          weight = readNumber();
+        } else {
+          skipValue();
+        }
+      } while (consume(','));
+      expect('}');
+    }
+    if (source < 0 || target < 0) {
+      throw malformed("edge without source or target");
+    }
+    addEdge(source, target, weight);
+  }
+
+  private byte parseStatus() {
+    Node.STATUS[] values = Node.STATUS.values();
+    for (int status = 0; status < values.length; status++) {
+      if (isToken(values[status].name())) {
+        return (byte) status;
+      }
+    }
+    throw malformed("invalid status " + token);
+  }
+
+  private int indexOf(String nodeId) {
+    Integer index = nodeIndices.get(nodeId);
+    if (index == null) {
+      if (nodeCount == nodeIds.length) {
+        nodeIds = Arrays.copyOf(nodeIds, 2 * nodeCount);
+        statuses = Arrays.copyOf(statuses, 2 * nodeCount);
+      }
+      index = nodeCount;
+      nodeIds[nodeCount] = nodeId;
+      statuses[nodeCount++] = Node.UNTRIED;
+      nodeIndices.put(nodeId, index);
+    }
+    return index;
+  }
+
+  private void addEdge(int source, int target, double weight) { // repeats are removed once the document is read
+    if (edgeCount == sources.length) {
+      sources = Arrays.copyOf(sources, 2 * edgeCount);
+      targets = Arrays.copyOf(targets, 2 * edgeCount);
+      weights = Arrays.copyOf(weights, 2 * edgeCount);
+    }
+    sources[edgeCount] = source;
+    targets[edgeCount] = target;
+    weights[edgeCount++] = weight;
+  }
+
+  private boolean isToken(String string) {
+    return CharSequence.compare(token, string) == 0;
+  }
+
+  /**
+   * Reads a string into {@link #token}, unescaping it.
+   */
+  private void readString() throws IOException {
+    expect('"');
+    token.setLength(0);
+    while (true) {
+      int c = read();
+      if (c == '"') {
+        return;
+      }
+      if (c == -1) {
+        throw malformed("unterminated string");
+      }
+      if (c < 0x20) {
+        throw malformed("control character in string");
+      }
+      if (c != '\\') {
+        token.append((char) c);
+        continue;
+      }
+      c = read();
+      switch (c) {
+        case '"', '\\', '/' -> token.append((char) c);
+        case 'b' -> token.append('\b');
+        case 't' -> token.append('\t');
+        case 'n' -> token.append('\n');
+        case 'f' -> token.append('\f');
+        case 'r' -> token.append('\r');
+        case 'u' -> {
+          int value = 0;
+          for (int digit = 0; digit < 4; digit++) {
+            int hex = Character.digit(read(), 16);
+            if (hex < 0) {
+              throw malformed("invalid unicode escape");
+            }
+            value = value << 4 | hex;
+          }
+          token.append((char) value);
+        }
+        default -> throw malformed("invalid escape");
+      }
+    }
+  }
+
+  /**
+   * Reads a number. Integers and decimals whose digits, read as an integer, are below 2^53, so that the
+   * integer is exact as a double, and that have at most 22 fractional digits, so that the power of ten is
+   * too, are converted exactly or with a single, correctly rounded division; this covers every weight of
+   * at most 15 significant digits written by {@link #write(Template, byte[], Writer)}. Other numbers are
+   * converted by {@link Double#parseDouble(String)}.
+   */
+  private double readNumber() throws IOException {
+    skipWhitespace();
+    token.setLength(0);
+    boolean negative = false;
+    boolean exact = true;
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = -1; // -1 until the decimal point
+    for (int c = peekCharacter(); c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || c >= '0' && c <= '9'; c = peekCharacter()) {
+      position++;
+      token.append((char) c);
+      if (c >= '0' && c <= '9') {
+        mantissa = 10 * mantissa + (c - '0');
+        exact &= mantissa < MAXIMUM_EXACT_MANTISSA;
+        digits++;
+        if (fractionDigits >= 0) {
+          fractionDigits++;
+        }
+      } else if (c == '-' && token.length() == 1) {
+        negative = true;
+      } else if (c == '.' && fractionDigits < 0 && digits > 0) {
+        fractionDigits = 0;
+      } else {
+        exact = false;
+      }
+    }
+    if (exact && digits > 0 && fractionDigits != 0 && fractionDigits < POWERS_OF_TEN.length) {
+      double value = fractionDigits < 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+      return negative ? -value : value;
+    }
+    try {
+      return Double.parseDouble(token.toString());
+    } catch (NumberFormatException e) {
+      throw malformed("invalid number " + token);
+    }
+  }
+
+  private void skipValue() throws IOException {
+    int c = peek();
+    switch (c) {
+      case '"' -> readString();
+      case '{' -> {
+        expect('{');
+        if (!consume('}')) {
+          do {
+            readString();
+            expect(':');
+            skipValue();
+          } while (consume(','));
+          expect('}');
+        }
+      }
+      case '[' -> {
+        expect('[');
+        if (!consume(']')) {
+          do {
+            skipValue();
+          } while (consume(','));
+          expect(']');
+        }
+      }
+      case 't' -> skipLiteral("true");
+      case 'f' -> skipLiteral("false");
+      case 'n' -> skipLiteral("null");
+      default -> readNumber();
+    }
+  }
+
+  private void skipLiteral(String literal) throws IOException {
+    for (int index = 0; index < literal.length(); index++) {
+      if (read() != literal.charAt(index)) {
+        throw malformed("invalid literal");
+      }
+    }
+  }
+
+  private void expect(char expected) throws IOException {
+    if (peek() != expected) {
+      throw malformed("expected '" + expected + "'");
+    }
+    position++;
+  }
+
+  private boolean consume(char expected) throws IOException {
+    if (peek() != expected) {
+      return false;
+    }
+    position++;
+    return true;
+  }
+
+  /**
+   * Returns the next character other than whitespace without consuming it, or -1 at the end of the document.
+   */
+  private int peek() throws IOException {
+    skipWhitespace();
+    return peekCharacter();
+  }
+
+  /**
+   * Returns the next character without consuming it, or -1 at the end of the document.
+   */
+  private int peekCharacter() throws IOException {
+    return position < limit || fill() ? buffer[position] : -1;
+  }
+
+  private void skipWhitespace() throws IOException {
+    while (position < limit || fill()) {
+      char c = buffer[position];
+      if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+        return;
+      }
+      position++;
+    }
+  }
+
+  private int read() throws IOException {
+    return position < limit || fill() ? buffer[position++] : -1;
+  }
+
+  private boolean fill() throws IOException {
+    offset += limit;
+    position = 0;
+    limit = Math.max(reader.read(buffer), 0);
+    return limit > 0;
+  }
+
+  private IllegalArgumentException malformed(String message) {
+    return new IllegalArgumentException("malformed JSON at offset " + (offset + position) + ": " + message);
+  }
+}
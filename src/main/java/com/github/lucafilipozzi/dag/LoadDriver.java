@@ -0,0 +1,254 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A closed-loop load test of the challenge flow on a template, through {@link API}.
+ * <p>
+ * Each of the configured number of threads runs sessions back to back until the configured number of
+ * sessions has run: a session is created for a random user, who is granted each challenge of the
+ * template with the configured probability, then {@link API#get()} and {@link API#post(String)} are
+ * called in turn, each challenge succeeding with the configured probability, until the flow ends. The
+ * latencies of the calls are recorded in a {@link HistogramMetricsSink}.
+ * <p>
+ * Run from the command line, the driver generates a template with {@link WorkloadGenerator} and prints
+ * its report; every setting is given as {@code name=value}, for example
+ * <pre>
+ *   java -cp dag.jar com.github.lucafilipozzi.dag.LoadDriver nodes=1000 layerWidth=20 threads=8 sessions=10000
+ * </pre>
+ */
+public final class LoadDriver {
+  private final Template template;
+  private final int threadCount;
+  private final int sessionCount;
+  private final double grantProbability;
+  private final double successProbability;
+  private final long seed;
+
+  /**
+   * The measurements of a run.
+   */
+  public static final class Report {
+    private final HistogramMetricsSink metricsSink;
+    private final int sessionCount;
+    private final long requestCount;
+    private final long elapsedNanos;
+    private final long stateBytes;
+
+    private Report(HistogramMetricsSink metricsSink, int sessionCount, long requestCount, long elapsedNanos, long stateBytes) {
+      this.metricsSink = metricsSink;
+      this.sessionCount = sessionCount;
+      this.requestCount = requestCount;
+      this.elapsedNanos = elapsedNanos;
+      this.stateBytes = stateBytes;
+    }
+
+    public HistogramMetricsSink getMetricsSink() {
+      return metricsSink;
+    }
+
+    public int getSessionCount() {
+      return sessionCount;
+    }
+
+    /**
+     * Returns the number of {@code get()} and {@code post()} calls made.
+     */
+    public long getRequestCount() {
+      return requestCount;
+    }
+
+    public double getRequestsPerSecond() {
+      return requestCount * 1e9 / elapsedNanos;
+    }
+
+    public double getSessionsPerSecond() {
+      return sessionCount * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Returns the mean size of the state held by the process manager for a session, at its end.
+     */
+    public double getBytesPerSession() {
+      return sessionCount == 0 ? 0 : (double) stateBytes / sessionCount;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder report = new StringBuilder();
+      report.append(String.format(Locale.ROOT, "sessions %d, requests %d, %.0f requests/s, %.0f sessions/s, %.1f bytes/session%n",
+        sessionCount, requestCount, getRequestsPerSecond(), getSessionsPerSecond(), getBytesPerSession()));
+      for (MetricsSink.OPERATION operation : new MetricsSink.OPERATION[] {MetricsSink.OPERATION.NEXT, MetricsSink.OPERATION.REPORT}) {
+        HistogramMetricsSink.Histogram latencies = metricsSink.getLatencies(operation);
+        report.append(String.format(Locale.ROOT, "%-6s p50 %d ns, p99 %d ns, p999 %d ns%n", operation,
+          latencies.getValueAtPercentile(50), latencies.getValueAtPercentile(99), latencies.getValueAtPercentile(99.9)));
+      }
+      for (Outcome.KIND kind : Outcome.KIND.values()) {
+        report.append(String.format(Locale.ROOT, "%-8s %d%n", kind, metricsSink.getOutcomeCount(kind)));
+      }
+      return report.toString();
+    }
+  }
+
+  private LoadDriver(Template template, int threadCount, int sessionCount, double grantProbability, double successProbability, long seed) {
+    if (threadCount <= 0 || sessionCount < 0) {
+      throw new IllegalArgumentException("threadCount must be positive and sessionCount not negative");
+    }
+    if (!(grantProbability >= 0 && grantProbability <= 1 && successProbability >= 0 && successProbability <= 1)) {
+      throw new IllegalArgumentException("probabilities must be between 0 and 1");
+    }
+    this.template = template;
+    this.threadCount = threadCount;
+    this.sessionCount = sessionCount;
+    this.grantProbability = grantProbability;
+    this.successProbability = successProbability;
+    this.seed = seed;
+  }
+
+  /**
+   * Creates a driver.
+   *
+   * @param template the compiled challenge graph of every session
+   * @param threadCount the number of concurrent users
+   * @param sessionCount the number of sessions to run, in total
+   * @param grantProbability the probability that a user is granted each challenge of the template
+   * @param successProbability the probability that each challenge presented to a user succeeds
+   * @param seed the seed of the random users and results
+   * @return a new driver
+   */
+  public static LoadDriver of(Template template, int threadCount, int sessionCount, double grantProbability, double successProbability, long seed) {
+    return new LoadDriver(template, threadCount, sessionCount, grantProbability, successProbability, seed);
+  }
+
+  /**
+   * Runs the sessions and measures them. A thread that fails stops the run: the other threads stop
+   * after their current session, and the failure is thrown once they have.
+   *
+   * @return the measurements
+   * @throws IllegalStateException if a thread failed, with its exception as the cause and those of
+   *         other failed threads suppressed, or if interrupted
+   */
+  public Report run() {
+    return run(InMemorySessionStore.of());
+  }
+
+  Report run(SessionStore sessionStore) {
+    HistogramMetricsSink metricsSink = HistogramMetricsSink.of();
+    AtomicInteger started = new AtomicInteger();
+    AtomicLong requests = new AtomicLong();
+    AtomicLong stateBytes = new AtomicLong();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] threads = new Thread[threadCount];
+    for (int index = 0; index < threadCount; index++) {
+      Random random = new Random(seed + index);
+      threads[index] = new Thread(() -> {
+        for (int session = started.getAndIncrement(); session < sessionCount && failure.get() == null; session = started.getAndIncrement()) {
+          String sessionId = "session-" + session;
+          API api = API.of(sessionStore, sessionId, template, randomUser(random)).withMetricsSink(metricsSink);
+          long calls = 0;
+          while (true) {
+            calls++;
+            if (api.get() == null) {
+              break;
+            }
+            calls++;
+            if (!"continue".equals(api.post(random.nextDouble() < successProbability ? "success" : "failure"))) {
+              break;
+            }
+          }
+          requests.addAndGet(calls);
+          stateBytes.addAndGet(sessionStore.get(sessionId).orElseThrow().getState().length);
+          sessionStore.remove(sessionId);
+        }
+      }, "dag-load-" + index);
+      threads[index].setUncaughtExceptionHandler((thread, e) -> {
+        if (!failure.compareAndSet(null, e)) {
+          failure.get().addSuppressed(e);
+        }
+      });
+    }
+    long start = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while running", e);
+      }
+    }
+    if (failure.get() != null) {
+      throw new IllegalStateException("load thread failed", failure.get());
+    }
+    return new Report(metricsSink, sessionCount, requests.get(), Math.max(1, System.nanoTime() - start), stateBytes.get());
+  }
+
+  private User randomUser(Random random) {
+    Set<String> challenges = new HashSet<>();
+    for (int code = 0; code < template.getChallengeCount(); code++) {
+      if (random.nextDouble() < grantProbability) {
+        challenges.add(template.getChallengeName(code));
+      }
+    }
+    return User.of(challenges);
+  }
+
+  /**
+   * Generates a template and runs a load test on it, printing the report. Settings, with their defaults:
+   * {@code seed=1 nodes=100 layerWidth=10 fanOut=2 weights=UNIFORM maximumWeight=10 alphabet=ABCDEFGH
+   * duplicateDensity=0.5 search=TOPOLOGICAL threads=<processors> sessions=10000 grant=0.9 success=0.8}.
+   *
+   * @param args the settings, as {@code name=value}
+   * @throws IllegalArgumentException if a setting is unknown or malformed
+   */
+  public static void main(String[] args) {
+    Map<String, String> settings = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (equals < 0) {
+        throw new IllegalArgumentException("expected name=value, got " + arg);
+      }
+      settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+    Map<String, String> defaults = Map.ofEntries(
+      Map.entry("seed", "1"), Map.entry("nodes", "100"), Map.entry("layerWidth", "10"), Map.entry("fanOut", "2"),
+      Map.entry("weights", "UNIFORM"), Map.entry("maximumWeight", "10"), Map.entry("alphabet", "ABCDEFGH"),
+      Map.entry("duplicateDensity", "0.5"), Map.entry("search", "TOPOLOGICAL"), Map.entry("threads", String.valueOf(Runtime.getRuntime().availableProcessors())),
+      Map.entry("sessions", "10000"), Map.entry("grant", "0.9"), Map.entry("success", "0.8"));
+    for (String name : settings.keySet()) {
+      if (!defaults.containsKey(name)) {
+        throw new IllegalArgumentException("unknown setting " + name);
+      }
+    }
+    defaults.forEach(settings::putIfAbsent);
+    try {
+      long seed = Long.parseLong(settings.get("seed"));
+      Template template = WorkloadGenerator.of(seed)
+        .withNodes(Integer.parseInt(settings.get("nodes")), Integer.parseInt(settings.get("layerWidth")))
+        .withFanOut(Integer.parseInt(settings.get("fanOut")))
+        .withWeights(WorkloadGenerator.WEIGHTS.valueOf(settings.get("weights").toUpperCase(Locale.ROOT)), Long.parseLong(settings.get("maximumWeight")))
+        .withChallenges(settings.get("alphabet"), Double.parseDouble(settings.get("duplicateDensity")))
+        .generate("generated")
+        .withSearch(Template.SEARCH.valueOf(settings.get("search").toUpperCase(Locale.ROOT)));
+      LoadDriver loadDriver = of(template, Integer.parseInt(settings.get("threads")), Integer.parseInt(settings.get("sessions")),
+        Double.parseDouble(settings.get("grant")), Double.parseDouble(settings.get("success")), seed);
+      PrintStream out = System.out;
+      out.printf(Locale.ROOT, "template: %d nodes, %d challenges%n", template.size(), template.getChallengeCount());
+      out.print(loadDriver.run());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("malformed setting: " + e.getMessage(), e);
+    }
+  }
+}
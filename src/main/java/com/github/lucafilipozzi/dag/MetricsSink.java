@@ -0,0 +1,80 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+/**
+ * Receives the measurements of the {@link API} hot paths.
+ * <p>
+ * Every method has an empty default, so that a sink implements only what it needs. Methods are called
+ * on the thread serving the request and must therefore be cheap and thread-safe. When
+ * {@link #isEnabled()} returns {@code false}, as for {@link #noop()}, no clock is read and no other
+ * method is called.
+ */
+public interface MetricsSink {
+  /**
+   * The timed operations: whole API calls, and the phases they consist of.
+   */
+  enum OPERATION {
+    /** {@link API#next()}, from start to finish. */
+    NEXT,
+    /** {@link API#report(String)}, from start to finish, including retries. */
+    REPORT,
+    /** {@link API#report(java.util.List)}, from start to finish, including retries. */
+    BATCH,
+    /** Loading and decoding the state of the session. */
+    LOAD,
+    /** Searching for the shortest path and its first untried node. */
+    SEARCH,
+    /** Updating the status of the nodes of the current challenge. */
+    UPDATE,
+    /** Encoding and saving the state of the session. */
+    SAVE
+  }
+
+  /**
+   * Returns the sink that discards every measurement.
+   */
+  static MetricsSink noop() {
+    return NoopMetricsSink.INSTANCE;
+  }
+
+  /**
+   * Returns whether measurements should be taken at all.
+   */
+  default boolean isEnabled() {
+    return true;
+  }
+
+  /**
+   * Records the duration of an operation.
+   *
+   * @param operation the operation
+   * @param nanos the duration in nanoseconds
+   */
+  default void recordLatency(OPERATION operation, long nanos) { /* discarded */ }
+
+  /**
+   * Records the outcome of an {@link API#next()} or {@link API#report(String)} call.
+   *
+   * @param kind the kind of the outcome
+   */
+  default void recordOutcome(Outcome.KIND kind) { /* discarded */ }
+
+  /**
+   * Records the size of an encoded session state saved to the process manager.
+   *
+   * @param bytes the size in bytes
+   */
+  default void recordStateSize(int bytes) { /* discarded */ }
+
+  /**
+   * Records the number of nodes expanded by the path searches of an API call.
+   *
+   * @param visits the number of nodes
+   */
+  default void recordSearchVisits(int visits) { /* discarded */ }
+
+  /**
+   * Records that a save was rejected because the session was updated concurrently, causing a retry.
+   */
+  default void recordConflict() { /* discarded */ }
+}
@@ -3,51 +3,39 @@ package com.github.lucafilipozzi.dag;
 
 import java.io.Reader;
 import java.io.Writer;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
-import java.util.function.Predicate;
-import org.jgrapht.Graph;
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.AllDirectedPaths;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
-import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.graph.MaskSubgraph;
-import org.jgrapht.graph.SimpleDirectedWeightedGraph;
-import org.jgrapht.nio.Attribute;
-import org.jgrapht.nio.DefaultAttribute;
-import org.jgrapht.nio.graphml.GraphMLImporter;
-import org.jgrapht.nio.json.JSONExporter;
-import org.jgrapht.nio.json.JSONImporter;
+import java.util.UUID;
 
 public class MyGraph {
-  private static final String EDGE_WEIGHT_ATTRIBUTE_NAME =  "weight";
-  private static final String NODE_STATUS_ATTRIBUTE_NAME =  "status";
-  private final Graph<Node, DefaultWeightedEdge> graph = new SimpleDirectedWeightedGraph<>(DefaultWeightedEdge.class);
-  private final Predicate<Node> vertexMask = node -> node.getStatus().equals(Node.STATUS.FAILURE);
-  private final Predicate<DefaultWeightedEdge> edgeMask = edge -> false; // edgeMask not used
-  private final Graph<Node, DefaultWeightedEdge> maskSubgraph = new MaskSubgraph<>(graph, vertexMask, edgeMask);
-  private final DijkstraShortestPath<Node, DefaultWeightedEdge> shortestPath = new DijkstraShortestPath<>(maskSubgraph);
-  private final AllDirectedPaths<Node, DefaultWeightedEdge> allDirectedPaths = new AllDirectedPaths<>(maskSubgraph);
-  private Node start;
-  private Node end;
+  private static final int NO_PATH = -1;
+  private static final int NO_UNTRIED_NODE = -2;
+  private final Template template;
+  private final byte[] statuses;
+  private Outcome outcome; // memoized result of next(), until the statuses change
+  private IncrementalShortestPath shortestPath; // created by the first search of this session
+  private int[] guidedPath; // the path last found by an ASTAR or BIDIRECTIONAL search, until a node fails or recovers
+  private final int[] searchVisits = new int[1];
+  private int[] changes; // challenge code << 2 | status, of every update since creation or decoding
+  private int changeCount;
 
   static class GetChallengeSuccess extends RuntimeException { /* intentionally empty */ }
   static class GetChallengeFailure extends RuntimeException { /* intentionally empty */ }
   static class SetStatusException extends RuntimeException {  /* intentionally empty */ }
 
-  private MyGraph() { /* hide constructor */ }
+  private MyGraph(Template template, byte[] statuses) {
+    this.template = template;
+    this.statuses = statuses;
+  }
 
   /**
    * Creates a new MyGraph instance from a GraphML file and initializes node statuses based on user's available challenges.
    * <p>
-   * This factory method imports a directed weighted graph from GraphML format, identifies START and END nodes,
-   * and sets the initial status of each node based on whether the user has access to that challenge type.
-   * START and END nodes are always marked as SUCCESS. Other nodes are marked as UNTRIED if the user has
-   * access to their challenge type, or FAILURE otherwise.
+   * The GraphML file is compiled into a private {@link Template}; callers that create many sessions from the
+   * same graph should compile it once, for example through a {@link TemplateRegistry}, and use
+   * {@link #of(Template, User)} instead.
    *
    * @param reader the Reader containing GraphML data representing the challenge graph
    * @param user the User object containing the set of challenges available to this user
@@ -55,59 +43,170 @@ public class MyGraph {
    * @throws java.util.NoSuchElementException if START or END nodes are not found in the graph
    */
   public static MyGraph of(Reader reader, User user) {
-    MyGraph myGraph = new MyGraph();
-
-    GraphMLImporter<Node, DefaultWeightedEdge> importer = new GraphMLImporter<>();
-    importer.setEdgeWeightAttributeName(EDGE_WEIGHT_ATTRIBUTE_NAME);
-    importer.setVertexFactory(Node::of);
-    importer.importGraph(myGraph.graph, reader);
+    return of(Template.of(reader), user);
+  }
 
-    myGraph.start = myGraph.graph.vertexSet().stream().filter(node -> node.getId().equals("START")).findFirst().orElseThrow();
-    myGraph.end = myGraph.graph.vertexSet().stream().filter(node -> node.getId().equals("END")).findFirst().orElseThrow();
+  /**
+   * Creates a new MyGraph session on top of a shared, compiled template and initializes node statuses based on
+   * user's available challenges.
+   * <p>
+   * START and END nodes are always marked as SUCCESS. Other nodes are marked as UNTRIED if the user has
+   * access to their challenge type, or FAILURE otherwise. Only the per-node statuses are allocated; the
+   * topology and weights are those of the template.
+   *
+   * @param template the compiled challenge graph
+   * @param user the User object containing the set of challenges available to this user
+   * @return a new MyGraph instance with nodes initialized according to user's challenge access
+   */
+  public static MyGraph of(Template template, User user) {
+    Set<String> challenges = user.getChallenges();
+    byte[] granted = new byte[template.getChallengeCount()];
+    for (int code = 0; code < granted.length; code++) {
+      granted[code] = challenges.contains(template.getChallengeName(code)) ? Node.UNTRIED : Node.FAILURE;
+    }
+    byte[] statuses = new byte[template.size()];
+    for (int node = 0; node < statuses.length; node++) {
+      statuses[node] = granted[template.getChallengeCode(node)];
+    }
+    statuses[template.getStart()] = Node.SUCCESS;
+    statuses[template.getEnd()] = Node.SUCCESS;
+    return new MyGraph(template, statuses);
+  }
 
-    myGraph.start.setStatus(Node.STATUS.SUCCESS);
-    myGraph.end.setStatus(Node.STATUS.SUCCESS);
-    myGraph.graph.vertexSet().stream()
-      .filter(node -> !node.equals(myGraph.start) && !node.equals(myGraph.end))
-      .forEach(node -> node.setStatus(user.getChallenges().contains(node.getChallenge()) ? Node.STATUS.UNTRIED : Node.STATUS.FAILURE));
+  /**
+   * Creates a MyGraph session from a template and previously saved node statuses.
+   *
+   * @param template the compiled challenge graph
+   * @param statuses the status of every node, indexed as in the template; owned by the new session
+   * @return a new MyGraph instance with the given statuses
+   */
+  static MyGraph of(Template template, byte[] statuses) {
+    return new MyGraph(template, statuses);
+  }
 
+  /**
+   * Creates a MyGraph session from a template, node statuses and the already known result of {@link #next()}
+   * for those statuses.
+   */
+  static MyGraph of(Template template, byte[] statuses, Outcome outcome) {
+    MyGraph myGraph = new MyGraph(template, statuses);
+    myGraph.outcome = outcome;
     return myGraph;
   }
 
+  public Template getTemplate() {
+    return template;
+  }
+
+  byte[] getStatuses() {
+    return statuses;
+  }
+
+  /**
+   * Returns the number of nodes expanded by every path search of this session so far.
+   */
+  int getSearchVisits() {
+    return searchVisits[0];
+  }
+
   /**
    * Retrieves the challenge identifier of the next untried node in the shortest path
    * between the start and end nodes of the graph. If the shortest path does not exist,
    * or if there are no untried nodes along the path, exceptions are thrown to signify
-   * specific cases.
+   * specific cases. See {@link #next()} for a variant that does not throw.
    *
    * @return the challenge identifier of the first untried node in the shortest path
    * @throws GetChallengeFailure if no shortest path exists between the start and end nodes
    * @throws GetChallengeSuccess if all nodes along the shortest path are already tried or marked as success
    */
   public String getChallenge() {
-    GraphPath<Node, DefaultWeightedEdge> graphPath = Optional.ofNullable(shortestPath.getPath(start, end)).orElseThrow(GetChallengeFailure::new);
-    Node node = graphPath.getVertexList().stream().filter(x -> x.getStatus().equals(Node.STATUS.UNTRIED)).findFirst().orElseThrow(GetChallengeSuccess::new);
-    return node.getChallenge(); // continue
+    Outcome next = next();
+    if (next.getKind() == Outcome.KIND.FAILURE) {
+      throw new GetChallengeFailure();
+    }
+    if (next.getKind() == Outcome.KIND.SUCCESS) {
+      throw new GetChallengeSuccess();
+    }
+    return next.getChallenge(); // continue
+  }
+
+  /**
+   * Determines the next step of the challenge flow, like {@link #getChallenge()}, without throwing.
+   *
+   * @return {@code continue} with the challenge identifier of the first untried node in the shortest path,
+   *         {@code failure} if no shortest path exists between the start and end nodes, or
+   *         {@code success} if all nodes along the shortest path are already tried or marked as success
+   */
+  public Outcome next() {
+    if (outcome == null) {
+      int node = findChallengeNode();
+      if (node == NO_PATH) {
+        outcome = Outcome.failure();
+      } else if (node == NO_UNTRIED_NODE) {
+        outcome = Outcome.success();
+      } else {
+        outcome = Outcome.continueWith(template.getChallenge(node));
+      }
+    }
+    return outcome;
+  }
+
+  /**
+   * Returns the first untried node in the shortest path, found by the search of the template and kept
+   * up to date across updates of this session, or {@link #NO_PATH} or {@link #NO_UNTRIED_NODE}. The
+   * TOPOLOGICAL search relaxes only the part of the graph affected by an update; the others search
+   * afresh once a node has failed or recovered, as a success leaves the shortest path unchanged.
+   */
+  private int findChallengeNode() {
+    if (template.getReachabilityIndex().isDisconnected(statuses)) {
+      return NO_PATH; // a node on every path failed
+    }
+    int[] path;
+    if (template.getSearch() == Template.SEARCH.TOPOLOGICAL) {
+      if (shortestPath == null) {
+        shortestPath = IncrementalShortestPath.of(template);
+      }
+      path = shortestPath.getPath(statuses, searchVisits);
+    } else {
+      if (guidedPath == null) {
+        guidedPath = GuidedShortestPath.getPath(template, statuses, searchVisits);
+      }
+      path = guidedPath;
+    }
+    if (path == null) {
+      return NO_PATH;
+    }
+    for (int node : path) {
+      if (statuses[node] == Node.UNTRIED) {
+        return node;
+      }
+    }
+    return NO_UNTRIED_NODE;
   }
 
   /**
-   * Retrieves a list of unique challenge identifiers from the untried nodes in all directed paths
+   * Retrieves a list of unique challenge identifiers from the first untried node of every directed path
    * between the start and end nodes of the graph. The challenges are filtered based on their
-   * prefix matching the first character of the current challenge identifier.
+   * prefix matching the first character of the current challenge identifier. The paths are not
+   * enumerated; the first untried nodes are found in time linear in the size of the graph.
    *
    * @return a list of distinct challenge identifiers corresponding to untried nodes in the graph
    */
   public List<String> getChallenges() {
-    List<GraphPath<Node, DefaultWeightedEdge>> graphPaths = allDirectedPaths.getAllPaths(start, end, false, graph.edgeSet().size());
-    String prefix = getChallenge().substring(0, 1);
-    Set<String> challenges =  new HashSet<>();
-    graphPaths.forEach(graphPath ->
-      graphPath.getVertexList().stream()
-        .filter(node -> node.getStatus().equals(Node.STATUS.UNTRIED))
-        .findFirst()
-        .filter(node -> node.getChallenge().startsWith(prefix))
-        .ifPresent(node -> challenges.add(node.getChallenge()))
-    );
+    String challenge = getChallenge();
+    String prefix = challenge.isEmpty() ? challenge : challenge.substring(0, 1); // a node id "-x" has an empty challenge
+    boolean[] seen = new boolean[template.getChallengeCount()];
+    List<String> challenges = new ArrayList<>();
+    for (int node : DagFrontier.getNodes(template, statuses)) {
+      int code = template.getChallengeCode(node);
+      if (!seen[code]) {
+        seen[code] = true;
+        String candidate = template.getChallengeName(code);
+        if (candidate.startsWith(prefix)) {
+          challenges.add(candidate);
+        }
+      }
+    }
     return List.copyOf(challenges);
   }
 
@@ -120,41 +219,106 @@ public class MyGraph {
    * @throws SetStatusException if the update process encounters any failure
    */
   public void setStatus(String status) {
-    try {
-      String challenge = getChallenge();
-      graph.vertexSet().stream().filter(node -> node.getChallenge().equals(challenge)).forEach(node -> node.setStatus(Node.STATUS.valueOf(status.toUpperCase())));
-    } catch (RuntimeException ignored) {
+    if (!updateStatus(status)) {
       throw new SetStatusException();
     }
   }
 
+  /**
+   * Updates the status of the current challenge, like {@link #setStatus(String)}, and determines the next
+   * step of the challenge flow, like {@link #next()}, without throwing.
+   *
+   * @param status the new status to assign to the matching nodes; must be one of "SUCCESS" or "FAILURE" (case-insensitive)
+   * @return {@code invalid} if the status could not be updated, otherwise the outcome of {@link #next()}
+   */
+  public Outcome report(String status) {
+    return updateStatus(status) ? next() : Outcome.invalid();
+  }
+
+  /**
+   * Updates the status of the current challenge, like {@link #setStatus(String)}, without determining the
+   * next step of the challenge flow.
+   *
+   * @return {@code false} if the status could not be updated
+   */
+  boolean updateStatus(String status) {
+    byte value = parseStatus(status);
+    Outcome next = next();
+    if (value < 0 || next.getKind() != Outcome.KIND.CONTINUE) {
+      return false;
+    }
+    int code = template.getChallengeCode(next.getChallenge());
+    applyStatus(code, value);
+    if (changes == null) {
+      changes = new int[4];
+    } else if (changeCount == changes.length) {
+      changes = Arrays.copyOf(changes, 2 * changeCount);
+    }
+    changes[changeCount++] = code << 2 | value;
+    return true;
+  }
+
+  /**
+   * Sets the status of every node of the given challenge, as an update of that challenge does, for example
+   * to replay a recorded update.
+   */
+  void applyStatus(int challengeCode, byte status) {
+    int[] challengeNodes = template.getChallengeNodes();
+    int[] challengeNodeOffsets = template.getChallengeNodeOffsets();
+    for (int index = challengeNodeOffsets[challengeCode]; index < challengeNodeOffsets[challengeCode + 1]; index++) {
+      int node = challengeNodes[index];
+      if (shortestPath != null) {
+        shortestPath.statusChanged(node, statuses[node], status);
+      }
+      if ((statuses[node] == Node.FAILURE) != (status == Node.FAILURE)) {
+        guidedPath = null;
+      }
+      statuses[node] = status;
+    }
+    outcome = null;
+  }
+
+  /**
+   * Returns the number of updates made to this session since it was created or decoded.
+   */
+  int getChangeCount() {
+    return changeCount;
+  }
+
+  /**
+   * Returns an update made to this session since it was created or decoded, as {@code challengeCode << 2 | status}.
+   */
+  int getChange(int index) {
+    return changes[index];
+  }
+
+  private static byte parseStatus(String status) {
+    for (Node.STATUS value : Node.STATUS.values()) {
+      if (value.name().equalsIgnoreCase(status)) {
+        return (byte) value.ordinal();
+      }
+    }
+    return -1;
+  }
+
   /**
    * Exports the current state of the graph in JSON format to the provided Writer.
    * The exported JSON includes attributes associated with the graph's vertices and edges:
    * - Vertex attributes include the node's status.
    * - Edge attributes include the weight of the edge.
+   * The format is that of JGraphT's {@code JSONExporter}; the graph is streamed to the Writer
+   * without building per-vertex or per-edge attribute maps.
    *
    * @param writer the Writer to which the graph's JSON representation will be output
+   * @throws java.io.UncheckedIOException if the Writer fails
    */
   public void dump(Writer writer) {
-    JSONExporter<Node, DefaultWeightedEdge> exporter = new JSONExporter<>();
-    exporter.setVertexIdProvider(Node::getId);
-    exporter.setVertexAttributeProvider(node -> {
-      Map<String, Attribute> map = new HashMap<>();
-      map.put(NODE_STATUS_ATTRIBUTE_NAME, DefaultAttribute.createAttribute(node.getStatus().name()));
-      return map;
-    });
-    exporter.setEdgeAttributeProvider(edge -> {
-      Map<String, Attribute> map = new HashMap<>();
-      map.put(EDGE_WEIGHT_ATTRIBUTE_NAME, DefaultAttribute.createAttribute(graph.getEdgeWeight(edge)));
-      return map;
-    });
-    exporter.exportGraph(graph, writer);
+    JSONCodec.write(template, statuses, writer);
   }
 
   /**
    * Loads a graph from the provided JSON data represented by the given reader.
-   * This method imports a weighted directed graph and extracts `START` and `END`
+   * This method reads a weighted directed graph in a single pass and extracts `START` and `END`
    * nodes while setting certain attributes for nodes and edges. It expects specific
    * attributes such as node statuses and edge weights to be present and properly
    * formatted within the JSON structure.
@@ -162,32 +326,10 @@ public class MyGraph {
    * @param reader the Reader containing JSON data for the graph
    * @return a new MyGraph instance constructed from the JSON data
    * @throws java.util.NoSuchElementException if `START` or `END` nodes are not found in the graph
+   * @throws IllegalArgumentException if the JSON data is malformed
+   * @throws java.io.UncheckedIOException if the Reader fails
    */
   public static MyGraph load(Reader reader) {
-    MyGraph myGraph = new MyGraph();
-
-    JSONImporter<Node, DefaultWeightedEdge> importer = new JSONImporter<>();
-    importer.setVertexFactory(Node::of);
-    importer.addVertexAttributeConsumer((pair, attribute) -> {
-      Node node = pair.getFirst();
-      String key = pair.getSecond();
-      if (NODE_STATUS_ATTRIBUTE_NAME.equals(key)) {
-        node.setStatus(Node.STATUS.valueOf(attribute.getValue()));
-      }
-    });
-    importer.addEdgeAttributeConsumer((pair, attribute) -> {
-      DefaultWeightedEdge edge = pair.getFirst();
-      String key = pair.getSecond();
-      if (EDGE_WEIGHT_ATTRIBUTE_NAME.equals(key)) {
-        myGraph.graph.setEdgeWeight(edge, Double.parseDouble(attribute.getValue()));
-      }
-    });
-
-    importer.importGraph(myGraph.graph, reader);
-
-    myGraph.start = myGraph.graph.vertexSet().stream().filter(node -> node.getId().equals("START")).findFirst().orElseThrow();
-    myGraph.end = myGraph.graph.vertexSet().stream().filter(node -> node.getId().equals("END")).findFirst().orElseThrow();
-
-    return myGraph;
+    return JSONCodec.read(UUID.randomUUID().toString(), reader);
   }
 }
@@ -10,12 +10,20 @@ public class Node {
     FAILURE
   }
 
+  // compact encoding of STATUS used by the int-indexed graph engine: one byte per node
+  static final byte UNTRIED = (byte) STATUS.UNTRIED.ordinal();
+  static final byte SUCCESS = (byte) STATUS.SUCCESS.ordinal();
+  static final byte FAILURE = (byte) STATUS.FAILURE.ordinal();
+  private static final STATUS[] STATUSES = STATUS.values();
+
   private String id;
+  private String challenge;
   private STATUS status;
 
   public static Node of(String id) {
     Node node = new Node();
     node.id = id;
+    node.challenge = challengeOf(id);
     node.status = STATUS.UNTRIED;
     return node;
   }
@@ -45,7 +53,19 @@ public class Node {
     return status;
   }
 
+  static STATUS statusOf(byte status) {
+    return STATUSES[status];
+  }
+
   public String getChallenge() {
-    return id.split("-")[0];
+    return challenge;
+  }
+
+  /**
+   * Returns the challenge identifier of a node identifier: the part before its first '-', if any.
+   */
+  static String challengeOf(String id) {
+    int index = id.indexOf('-');
+    return index < 0 ? id : id.substring(0, index);
   }
 }
@@ -0,0 +1,16 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+/**
+ * The {@link MetricsSink} that discards every measurement, see {@link MetricsSink#noop()}.
+ */
+final class NoopMetricsSink implements MetricsSink {
+  static final MetricsSink INSTANCE = new NoopMetricsSink();
+
+  private NoopMetricsSink() { /* hide constructor */ }
+
+  @Override
+  public boolean isEnabled() {
+    return false;
+  }
+}
@@ -0,0 +1,69 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event marking an API call or one of its phases, see {@link MetricsSink.OPERATION}.
+ * Phase events are nested within the event of their API call. Unless a recording enables the event,
+ * {@link #begin} allocates nothing and returns {@code null}, which {@link #end} ignores; an enabled
+ * event is filled in only if the recording keeps it, see {@link Event#shouldCommit()}.
+ */
+@Name("com.github.lucafilipozzi.dag.Operation")
+@Label("DAG Operation")
+@Category("DAG")
+@Description("An API call of the challenge flow, or one of its phases")
+@StackTrace(false)
+final class OperationEvent extends Event {
+  private static final EventType TYPE = EventType.getEventType(OperationEvent.class);
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Session")
+  String sessionId;
+
+  @Label("Outcome")
+  String outcome;
+
+  /**
+   * Creates and begins an event, if a recording enables it.
+   *
+   * @return the event, or {@code null} if no recording enables it
+   */
+  static OperationEvent begin(MetricsSink.OPERATION operation, String sessionId) {
+    if (!TYPE.isEnabled()) {
+      return null;
+    }
+    OperationEvent event = new OperationEvent();
+    event.begin();
+    event.operation = operation.name();
+    event.sessionId = sessionId;
+    return event;
+  }
+
+  /**
+   * Ends and commits the given event, if any, for a phase.
+   */
+  static void end(OperationEvent event) {
+    if (event != null && event.shouldCommit()) {
+      event.commit();
+    }
+  }
+
+  /**
+   * Ends and commits the given event, if any, for an API call with the given outcome.
+   */
+  static void end(OperationEvent event, Outcome outcome) {
+    if (event != null && event.shouldCommit()) {
+      event.outcome = outcome.toString();
+      event.commit();
+    }
+  }
+}
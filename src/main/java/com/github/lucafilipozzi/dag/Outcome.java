@@ -0,0 +1,87 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.Objects;
+
+/**
+ * The outcome of a step of the challenge flow, returned instead of thrown.
+ * <p>
+ * Only {@link KIND#CONTINUE} outcomes carry a challenge; the other outcomes are shared constants, so
+ * reporting them allocates nothing.
+ */
+public final class Outcome {
+  public enum KIND {
+    CONTINUE, // the flow continues with the given challenge
+    SUCCESS,  // verification has succeeded (no further untried challenges)
+    FAILURE,  // verification has failed (no shortest path exists)
+    INVALID   // the request could not be applied
+  }
+
+  private static final Outcome SUCCESS = new Outcome(KIND.SUCCESS, null);
+  private static final Outcome FAILURE = new Outcome(KIND.FAILURE, null);
+  private static final Outcome INVALID = new Outcome(KIND.INVALID, null);
+
+  private final KIND kind;
+  private final String challenge;
+
+  private Outcome(KIND kind, String challenge) {
+    this.kind = kind;
+    this.challenge = challenge;
+  }
+
+  public static Outcome continueWith(String challenge) {
+    return new Outcome(KIND.CONTINUE, Objects.requireNonNull(challenge));
+  }
+
+  public static Outcome success() {
+    return SUCCESS;
+  }
+
+  public static Outcome failure() {
+    return FAILURE;
+  }
+
+  public static Outcome invalid() {
+    return INVALID;
+  }
+
+  public KIND getKind() {
+    return kind;
+  }
+
+  /**
+   * Returns the next challenge of a {@link KIND#CONTINUE} outcome.
+   *
+   * @return the challenge identifier, or {@code null} if the outcome is not {@link KIND#CONTINUE}
+   */
+  public String getChallenge() {
+    return challenge;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof Outcome)) {
+      return false;
+    }
+    return kind == ((Outcome) other).kind && Objects.equals(challenge, ((Outcome) other).challenge);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(kind, challenge);
+  }
+
+  /**
+   * Returns the result code of {@link API#post(String)} for this outcome: "continue", "success",
+   * "failure" or "invalid".
+   */
+  @Override
+  public String toString() {
+    return switch (kind) { // constants, so that logging or recording an outcome allocates nothing
+      case CONTINUE -> "continue";
+      case SUCCESS -> "success";
+      case FAILURE -> "failure";
+      case INVALID -> "invalid";
+    };
+  }
+}
@@ -0,0 +1,110 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+/**
+ * Reachability facts of a {@link Template} that hold whatever the statuses of its nodes, as bitsets.
+ * <p>
+ * A node is relevant if it lies on some START to END path of the unmasked graph; no other node can
+ * lie on the path of any session, so searches skip them. A node is a cut node if it lies on every such
+ * path: once any cut node is FAILURE, END is unreachable, which is detected in a few word operations,
+ * without a search.
+ * <p>
+ * Because the graph is acyclic, the cut nodes are found without computing dominators: a START to END
+ * path avoids a relevant node only by taking a relevant edge that jumps over its topological position,
+ * and every relevant edge does belong to some START to END path, so the cut nodes are the relevant
+ * nodes that no relevant edge jumps over. The index is built in time linear in the size of the graph.
+ */
+final class ReachabilityIndex {
+  private final long[] relevant;
+  private final long[] cut;
+  private final boolean connected;
+
+  private ReachabilityIndex(long[] relevant, long[] cut, boolean connected) {
+    this.relevant = relevant;
+    this.cut = cut;
+    this.connected = connected;
+  }
+
+  /**
+   * Builds the index of a template from its compiled arrays.
+   */
+  static ReachabilityIndex of(int start, int end, int[] edgeOffsets, int[] edgeTargets, int[] topologicalOrder, int[] topologicalPositions) {
+    int size = topologicalOrder.length;
+    boolean[] reached = new boolean[size];
+    reached[start] = true;
+    for (int node : topologicalOrder) {
+      if (reached[node]) {
+        for (int edge = edgeOffsets[node]; edge < edgeOffsets[node + 1]; edge++) {
+          reached[edgeTargets[edge]] = true;
+        }
+      }
+    }
+    boolean[] reachesEnd = new boolean[size];
+    reachesEnd[end] = true;
+    for (int position = size - 1; position >= 0; position--) {
+      int node = topologicalOrder[position];
+      for (int edge = edgeOffsets[node]; edge < edgeOffsets[node + 1] && !reachesEnd[node]; edge++) {
+        reachesEnd[node] = reachesEnd[edgeTargets[edge]];
+      }
+    }
+    long[] relevant = new long[(size + 63) >>> 6];
+    int[] jumps = new int[size + 1]; // difference array of the relevant edges jumping over each position
+    for (int node = 0; node < size; node++) {
+      if (reached[node] && reachesEnd[node]) {
+        relevant[node >>> 6] |= 1L << node;
+        for (int edge = edgeOffsets[node]; edge < edgeOffsets[node + 1]; edge++) {
+          int target = edgeTargets[edge];
+          if (reachesEnd[target]) {
+            jumps[topologicalPositions[node] + 1]++;
+            jumps[topologicalPositions[target]]--;
+          }
+        }
+      }
+    }
+    long[] cut = new long[relevant.length];
+    int jumping = 0;
+    for (int position = 0; position < size; position++) {
+      jumping += jumps[position];
+      int node = topologicalOrder[position];
+      if (jumping == 0 && (relevant[node >>> 6] & 1L << node) != 0) {
+        cut[node >>> 6] |= 1L << node;
+      }
+    }
+    return new ReachabilityIndex(relevant, cut, reached[end]);
+  }
+
+  /**
+   * Returns whether a node lies on some START to END path of the unmasked graph.
+   */
+  boolean isRelevant(int node) {
+    return (relevant[node >>> 6] & 1L << node) != 0;
+  }
+
+  /**
+   * Returns whether a node lies on every START to END path of the unmasked graph.
+   */
+  boolean isCut(int node) {
+    return (cut[node >>> 6] & 1L << node) != 0;
+  }
+
+  /**
+   * Returns whether END is known to be unreachable from START through non-FAILURE nodes. A {@code false}
+   * result is not conclusive: END may still be unreachable because of failures on several paths.
+   *
+   * @param statuses the status of every node, indexed as in the template
+   * @return {@code true} if no START to END path exists or a node on every such path is FAILURE
+   */
+  boolean isDisconnected(byte[] statuses) {
+    if (!connected) {
+      return true;
+    }
+    for (int word = 0; word < cut.length; word++) {
+      for (long bits = cut[word]; bits != 0; bits &= bits - 1) {
+        if (statuses[word << 6 | Long.numberOfTrailingZeros(bits)] == Node.FAILURE) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,285 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An {@link EventLog} held in segment files of a local directory.
+ * <p>
+ * Records are appended to the current segment with a {@link FileChannel}; once a segment exceeds the
+ * configured size, a new one is started. Segments are named by their sequence number and replayed in
+ * that order. Each record is framed as
+ * <pre>
+ *   length    int      length of the body
+ *   body      bytes    type (1 byte), UTF-8 session identifier (int length, then bytes), payload
+ *   checksum  int      CRC32C of the body
+ * </pre>
+ * so that a record torn by a crash is detected; it and anything after it in the last segment are
+ * discarded when the log is opened.
+ * <p>
+ * Compaction writes the live records to a temporary file, forces it to disk and atomically renames it
+ * to a compacted segment, which holds the whole state of the log and supersedes every segment before
+ * it; only then are those segments deleted. When the log is opened, a temporary file, left by a crash
+ * during compaction, is deleted, and so are the segments that precede the last compacted segment, left
+ * by a crash after it. A crash at any point thus leaves a log that replays to the same sessions, either
+ * as before the compaction or as after it.
+ */
+public final class SegmentFileEventLog implements EventLog, Closeable {
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String COMPACTED_SUFFIX = ".compacted.log";
+  private static final String TEMPORARY_SUFFIX = ".compacting";
+  private static final int FRAME_OVERHEAD = 4 + 1 + 4 + 4;
+  private final Path directory;
+  private final long maximumSegmentSize;
+  private final boolean force;
+  private final List<Path> segments = new ArrayList<>();
+  private FileChannel channel;
+
+  private SegmentFileEventLog(Path directory, long maximumSegmentSize, boolean force) {
+    if (maximumSegmentSize <= 0) {
+      throw new IllegalArgumentException("maximumSegmentSize must be positive");
+    }
+    this.directory = directory;
+    this.maximumSegmentSize = maximumSegmentSize;
+    this.force = force;
+  }
+
+  /**
+   * Opens the log held in the given directory, creating it if needed, with segments of 64 MiB that are
+   * not forced to disk on every append.
+   *
+   * @param directory the directory of the segment files
+   * @return the opened log
+   * @throws UncheckedIOException if the directory cannot be read or written
+   */
+  public static SegmentFileEventLog of(Path directory) {
+    return of(directory, 64L << 20, false);
+  }
+
+  /**
+   * Opens the log held in the given directory, creating it if needed.
+   *
+   * @param directory the directory of the segment files
+   * @param maximumSegmentSize the size in bytes beyond which a new segment is started
+   * @param force whether every append is forced to disk before it returns
+   * @return the opened log
+   * @throws UncheckedIOException if the directory cannot be read or written
+   */
+  public static SegmentFileEventLog of(Path directory, long maximumSegmentSize, boolean force) {
+    SegmentFileEventLog eventLog = new SegmentFileEventLog(directory, maximumSegmentSize, force);
+    try {
+      eventLog.open();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return eventLog;
+  }
+
+  private void open() throws IOException {
+    Files.createDirectories(directory);
+    List<Path> paths;
+    try (Stream<Path> stream = Files.list(directory)) {
+      paths = stream.sorted().toList();
+    }
+    for (Path path : paths) {
+      String name = path.getFileName().toString();
+      if (name.endsWith(TEMPORARY_SUFFIX)) {
+        Files.delete(path); // an interrupted compaction
+      } else if (name.endsWith(SEGMENT_SUFFIX)) {
+        if (name.endsWith(COMPACTED_SUFFIX)) {
+          for (Path superseded : segments) {
+            Files.delete(superseded); // left by a crash once the compaction was complete
+          }
+          segments.clear();
+        }
+        segments.add(path);
+      }
+    }
+    forceDirectory();
+    if (segments.isEmpty()) {
+      startSegment();
+      return;
+    }
+    Path last = segments.get(segments.size() - 1);
+    channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long end = readSegment(last, record -> { /* validating only */ });
+    channel.truncate(end); // discard a torn tail
+    channel.position(end);
+  }
+
+  @Override
+  public synchronized void append(List<Record> records) {
+    ByteBuffer buffer = encode(records);
+    try {
+      if (channel.position() > 0 && channel.position() + buffer.remaining() > maximumSegmentSize) {
+        startSegment();
+      }
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      if (force) {
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static ByteBuffer encode(List<Record> records) {
+    int length = 0;
+    byte[][] sessionIds = new byte[records.size()][];
+    for (int index = 0; index < records.size(); index++) {
+      sessionIds[index] = records.get(index).getSessionId().getBytes(StandardCharsets.UTF_8);
+      length += FRAME_OVERHEAD + sessionIds[index].length + records.get(index).getPayload().length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    CRC32C crc32c = new CRC32C();
+    for (int index = 0; index < records.size(); index++) {
+      Record record = records.get(index);
+      int bodyLength = 1 + 4 + sessionIds[index].length + record.getPayload().length;
+      buffer.putInt(bodyLength);
+      int bodyOffset = buffer.position();
+      buffer.put((byte) record.getType().ordinal()).putInt(sessionIds[index].length).put(sessionIds[index]).put(record.getPayload());
+      crc32c.reset();
+      crc32c.update(buffer.array(), bodyOffset, bodyLength);
+      buffer.putInt((int) crc32c.getValue());
+    }
+    return buffer.flip();
+  }
+
+  @Override
+  public synchronized void replay(Consumer<Record> consumer) {
+    try {
+      for (Path segment : segments) {
+        readSegment(segment, consumer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public synchronized void compact() {
+    List<Record> records = new ArrayList<>();
+    replay(records::add);
+    ByteBuffer buffer = encode(InMemoryEventLog.live(records));
+    String prefix = String.format("%020d", nextSequence());
+    Path temporary = directory.resolve(prefix + TEMPORARY_SUFFIX);
+    Path compacted = directory.resolve(prefix + COMPACTED_SUFFIX);
+    try {
+      try (FileChannel temporaryChannel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          temporaryChannel.write(buffer);
+        }
+        temporaryChannel.force(true);
+      }
+      channel.force(true);
+      channel.close();
+      Files.move(temporary, compacted, StandardCopyOption.ATOMIC_MOVE);
+      forceDirectory();
+      for (Path segment : segments) {
+        Files.delete(segment);
+      }
+      segments.clear();
+      segments.add(compacted);
+      channel = FileChannel.open(compacted, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      channel.position(channel.size());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the number of segment files of the log.
+   */
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    channel.close();
+  }
+
+  private void startSegment() throws IOException {
+    long sequence = nextSequence();
+    if (channel != null) {
+      channel.force(true);
+      channel.close();
+    }
+    Path segment = directory.resolve(String.format("%020d%s", sequence, SEGMENT_SUFFIX));
+    channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    segments.add(segment);
+  }
+
+  private long nextSequence() {
+    if (segments.isEmpty()) {
+      return 0;
+    }
+    String name = segments.get(segments.size() - 1).getFileName().toString();
+    return Long.parseLong(name.substring(0, name.indexOf('.'))) + 1;
+  }
+
+  /**
+   * Forces the creation, renaming and deletion of files of the directory to disk, where the platform
+   * allows a directory to be opened.
+   */
+  private void forceDirectory() {
+    try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      directoryChannel.force(true);
+    } catch (IOException ignored) {
+      // not supported on this platform
+    }
+  }
+
+  /**
+   * Passes every intact record of the given segment to the given consumer.
+   *
+   * @return the offset of the end of the last intact record
+   */
+  private static long readSegment(Path segment, Consumer<Record> consumer) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel segmentChannel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      buffer = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, segmentChannel.size());
+    }
+    CRC32C crc32c = new CRC32C();
+    while (buffer.remaining() >= 4) {
+      int start = buffer.position();
+      int bodyLength = buffer.getInt();
+      if (bodyLength < 5 || bodyLength > buffer.remaining() - 4) {
+        return start;
+      }
+      crc32c.reset();
+      crc32c.update(buffer.slice(buffer.position(), bodyLength));
+      if ((int) crc32c.getValue() != buffer.getInt(buffer.position() + bodyLength)) {
+        return start;
+      }
+      int type = buffer.get();
+      int sessionIdLength = buffer.getInt();
+      if (type < 0 || type >= TYPE.values().length || sessionIdLength < 0 || sessionIdLength > bodyLength - 5) {
+        return start;
+      }
+      byte[] sessionId = new byte[sessionIdLength];
+      buffer.get(sessionId);
+      byte[] payload = new byte[bodyLength - 5 - sessionIdLength];
+      buffer.get(payload);
+      buffer.getInt(); // checksum
+      consumer.accept(Record.of(TYPE.values()[type], new String(sessionId, StandardCharsets.UTF_8), payload));
+    }
+    return buffer.position();
+  }
+}
@@ -0,0 +1,248 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link SessionStore} that keeps the state of every session off the heap, for processes holding many
+ * idle sessions.
+ * <p>
+ * States are held in fixed-size slots of direct {@code ByteBuffer} chunks, allocated as the store grows.
+ * A slot holds the version of the state, the index of its template header (the template identifier
+ * and size, which the store keeps once per template) and the statuses, packed two bits per node as by
+ * {@link StateCodec}; a session of a template of {@code n} nodes thus costs {@code 12 + ceil(n / 4)}
+ * bytes off the heap, which the garbage collector never scans or copies. The slot of a removed session
+ * is recycled through a free list. On the heap, each session costs only its entry in the index from
+ * session identifier to slot.
+ * <p>
+ * Updates of a session are serialized by one of a fixed set of lock stripes; reads take the stripe's
+ * lock too, for the short time it takes to copy the slot, so that they never see a torn state. The
+ * store-wide lock is taken only to allocate or free a slot, and to add the header of a new template:
+ * the headers already known are looked up without locking.
+ */
+public final class SessionArena implements SessionStore {
+  private static final int HEADER_SIZE = 8 + 4; // version, template header index
+  private static final int STRIPE_COUNT = 64;
+  private final ConcurrentMap<String, Integer> slots = new ConcurrentHashMap<>();
+  private final Object[] stripes = new Object[STRIPE_COUNT];
+  private final int slotSize;
+  private final int slotsPerChunk;
+  private final List<ByteBuffer> chunks = new ArrayList<>(); // guarded by this
+  private int[] freeSlots = new int[0]; // guarded by this
+  private int freeSlotCount; // guarded by this
+  private final List<TemplateHeader> templateHeaders = new ArrayList<>(); // guarded by this
+  private final ConcurrentMap<ByteBuffer, Integer> templateHeaderIndices = new ConcurrentHashMap<>();
+  private volatile ByteBuffer[] chunkArray = new ByteBuffer[0];
+  private volatile TemplateHeader[] templateHeaderArray = new TemplateHeader[0];
+  private final List<RemovalListener> removalListeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * The encoded template identifier and size that precede the statuses of a state, see {@link StateCodec}.
+   */
+  private static final class TemplateHeader {
+    private final byte[] bytes;
+    private final int packedLength;
+
+    private TemplateHeader(byte[] bytes, int packedLength) {
+      this.bytes = bytes;
+      this.packedLength = packedLength;
+    }
+  }
+
+  private SessionArena(int maximumNodes, int slotsPerChunk) {
+    if (maximumNodes <= 0 || slotsPerChunk <= 0) {
+      throw new IllegalArgumentException("maximumNodes and slotsPerChunk must be positive");
+    }
+    this.slotSize = HEADER_SIZE + (maximumNodes + 3) / 4;
+    if ((long) slotSize * slotsPerChunk > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("chunks of " + slotsPerChunk + " slots of " + slotSize + " bytes are too large");
+    }
+    this.slotsPerChunk = slotsPerChunk;
+    for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+      stripes[stripe] = new Object();
+    }
+  }
+
+  /**
+   * Creates a store for sessions of templates of at most the given size, allocating slots 65536 at a time.
+   *
+   * @param maximumNodes the size of the largest template whose sessions are stored
+   * @return a new, empty store
+   */
+  public static SessionArena of(int maximumNodes) {
+    return of(maximumNodes, 1 << 16);
+  }
+
+  /**
+   * Creates a store for sessions of templates of at most the given size.
+   *
+   * @param maximumNodes the size of the largest template whose sessions are stored
+   * @param slotsPerChunk the number of slots of each direct buffer allocated as the store grows
+   * @return a new, empty store
+   * @throws IllegalArgumentException if {@code maximumNodes} or {@code slotsPerChunk} is not positive or a chunk would exceed 2 GiB
+   */
+  public static SessionArena of(int maximumNodes, int slotsPerChunk) {
+    return new SessionArena(maximumNodes, slotsPerChunk);
+  }
+
+  @Override
+  public Optional<SessionStore.Versioned> get(String sessionId) {
+    synchronized (stripe(sessionId)) {
+      Integer slot = slots.get(sessionId);
+      return slot == null ? Optional.empty() : Optional.of(read(slot));
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if the state is malformed or its template is larger than this store's slots
+   */
+  @Override
+  public boolean create(String sessionId, byte[] state) {
+    int statusesOffset = checkedStatusesOffset(state);
+    synchronized (stripe(sessionId)) {
+      if (slots.containsKey(sessionId)) {
+        return false;
+      }
+      int slot = allocate();
+      write(slot, 0L, state, statusesOffset);
+      slots.put(sessionId, slot);
+      return true;
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if the state is malformed or its template is larger than this store's slots
+   */
+  @Override
+  public boolean replace(String sessionId, long expectedVersion, byte[] state) {
+    int statusesOffset = checkedStatusesOffset(state);
+    synchronized (stripe(sessionId)) {
+      Integer slot = slots.get(sessionId);
+      if (slot == null || chunkArray[slot / slotsPerChunk].getLong(slot % slotsPerChunk * slotSize) != expectedVersion) {
+        return false;
+      }
+      write(slot, expectedVersion + 1, state, statusesOffset);
+      return true;
+    }
+  }
+
+  @Override
+  public void remove(String sessionId) {
+    byte[] state;
+    synchronized (stripe(sessionId)) {
+      Integer slot = slots.remove(sessionId);
+      if (slot == null) {
+        return;
+      }
+      state = read(slot).getState();
+      free(slot);
+    }
+    for (RemovalListener listener : removalListeners) {
+      listener.onRemoval(sessionId, state);
+    }
+  }
+
+  @Override
+  public void addRemovalListener(RemovalListener listener) {
+    removalListeners.add(listener);
+  }
+
+  /**
+   * Returns the number of sessions held.
+   */
+  public int size() {
+    return slots.size();
+  }
+
+  /**
+   * Returns the number of slots allocated off the heap, whether held by a session or free.
+   */
+  public synchronized int getSlotCount() {
+    return chunks.size() * slotsPerChunk;
+  }
+
+  /**
+   * Returns the number of bytes allocated off the heap.
+   */
+  public synchronized long getCapacity() {
+    return (long) getSlotCount() * slotSize;
+  }
+
+  private Object stripe(String sessionId) {
+    int hash = sessionId.hashCode();
+    return stripes[(hash ^ hash >>> 16) & (STRIPE_COUNT - 1)];
+  }
+
+  private int checkedStatusesOffset(byte[] state) {
+    int statusesOffset = StateCodec.getStatusesOffset(state);
+    if (HEADER_SIZE + state.length - statusesOffset > slotSize) {
+      throw new IllegalArgumentException("state of " + state.length + " bytes does not fit in slots of " + slotSize + " bytes");
+    }
+    return statusesOffset;
+  }
+
+  private SessionStore.Versioned read(int slot) {
+    ByteBuffer chunk = chunkArray[slot / slotsPerChunk];
+    int offset = slot % slotsPerChunk * slotSize;
+    long version = chunk.getLong(offset);
+    TemplateHeader header = templateHeaderArray[chunk.getInt(offset + 8)];
+    byte[] state = Arrays.copyOf(header.bytes, header.bytes.length + header.packedLength);
+    chunk.get(offset + HEADER_SIZE, state, header.bytes.length, header.packedLength);
+    return SessionStore.Versioned.of(state, version);
+  }
+
+  private void write(int slot, long version, byte[] state, int statusesOffset) {
+    ByteBuffer chunk = chunkArray[slot / slotsPerChunk];
+    int offset = slot % slotsPerChunk * slotSize;
+    chunk.putLong(offset, version);
+    chunk.putInt(offset + 8, templateHeaderIndex(state, statusesOffset));
+    chunk.put(offset + HEADER_SIZE, state, statusesOffset, state.length - statusesOffset);
+  }
+
+  private int templateHeaderIndex(byte[] state, int statusesOffset) {
+    Integer index = templateHeaderIndices.get(ByteBuffer.wrap(state, 0, statusesOffset));
+    return index != null ? index : addTemplateHeader(state, statusesOffset); // locks only for a new template
+  }
+
+  private synchronized int addTemplateHeader(byte[] state, int statusesOffset) {
+    byte[] header = Arrays.copyOf(state, statusesOffset);
+    Integer index = templateHeaderIndices.get(ByteBuffer.wrap(header));
+    if (index == null) {
+      index = templateHeaders.size();
+      templateHeaders.add(new TemplateHeader(header, state.length - statusesOffset));
+      templateHeaderArray = templateHeaders.toArray(new TemplateHeader[0]); // before the index is visible
+      templateHeaderIndices.put(ByteBuffer.wrap(header), index);
+    }
+    return index;
+  }
+
+  private synchronized int allocate() {
+    if (freeSlotCount == 0) {
+      chunks.add(ByteBuffer.allocateDirect(slotSize * slotsPerChunk));
+      chunkArray = chunks.toArray(new ByteBuffer[0]);
+      int first = (chunks.size() - 1) * slotsPerChunk;
+      if (freeSlots.length < slotsPerChunk) {
+        freeSlots = new int[slotsPerChunk];
+      }
+      for (int index = 0; index < slotsPerChunk; index++) {
+        freeSlots[index] = first + slotsPerChunk - 1 - index; // lowest slot on top
+      }
+      freeSlotCount = slotsPerChunk;
+    }
+    return freeSlots[--freeSlotCount];
+  }
+
+  private synchronized void free(int slot) {
+    if (freeSlotCount == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, Math.max(16, 2 * freeSlots.length));
+    }
+    freeSlots[freeSlotCount++] = slot;
+  }
+}
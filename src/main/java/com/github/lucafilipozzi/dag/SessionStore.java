@@ -0,0 +1,110 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.Optional;
+
+/**
+ * Stores the encoded state of many challenge flows, keyed by session identifier.
+ * <p>
+ * Every stored state carries a version that is incremented on each successful
+ * {@link #replace(String, long, byte[])}, so that concurrent updates of the same session are detected
+ * rather than lost. Implementations must be safe for use by multiple threads.
+ */
+public interface SessionStore {
+  /**
+   * Returns the current state of the given session.
+   *
+   * @param sessionId the identifier of the session
+   * @return the versioned state of the session, or empty if there is no such session or it has expired
+   */
+  Optional<Versioned> get(String sessionId);
+
+  /**
+   * Stores the initial state of a new session at version 0.
+   *
+   * @param sessionId the identifier of the session
+   * @param state the encoded state of the session
+   * @return {@code true} if the session was created, {@code false} if a session with that identifier already exists
+   */
+  boolean create(String sessionId, byte[] state);
+
+  /**
+   * Replaces the state of a session, provided its version is still the expected one.
+   *
+   * @param sessionId the identifier of the session
+   * @param expectedVersion the version of the state the update was computed from
+   * @param state the new encoded state of the session
+   * @return {@code true} if the state was replaced, {@code false} if the session was updated concurrently, removed or expired
+   */
+  boolean replace(String sessionId, long expectedVersion, byte[] state);
+
+  /**
+   * Replaces the state of a session, like {@link #replace(String, long, byte[])}, knowing the updates that
+   * led from the expected version to the new state. Stores that record updates rather than states, such as
+   * {@link EventSourcedSessionStore}, persist only the updates; by default, the state is replaced.
+   *
+   * @param sessionId the identifier of the session
+   * @param expectedVersion the version of the state the update was computed from
+   * @param state the new encoded state of the session
+   * @param changes the updates, as encoded by {@link StateCodec#encodeChanges(MyGraph)}
+   * @return {@code true} if the state was replaced, {@code false} if the session was updated concurrently, removed or expired
+   */
+  default boolean replace(String sessionId, long expectedVersion, byte[] state, byte[] changes) {
+    return replace(sessionId, expectedVersion, state);
+  }
+
+  /**
+   * Removes a session, if present.
+   *
+   * @param sessionId the identifier of the session
+   */
+  void remove(String sessionId);
+
+  /**
+   * Registers a listener notified of every session that leaves this store: removed, and also expired or
+   * evicted by the stores that expire or evict sessions. The listener is notified on the thread that
+   * removed the session, after it was removed, and must not call back into this store.
+   *
+   * @param listener the listener to notify
+   */
+  void addRemovalListener(RemovalListener listener);
+
+  /**
+   * Notified of the sessions that leave a store, see {@link #addRemovalListener(RemovalListener)}.
+   */
+  @FunctionalInterface
+  interface RemovalListener {
+    /**
+     * Called once a session has left the store.
+     *
+     * @param sessionId the identifier of the session
+     * @param state the encoded state the session held when it left the store
+     */
+    void onRemoval(String sessionId, byte[] state);
+  }
+
+  /**
+   * An encoded session state and its version.
+   */
+  final class Versioned {
+    private final byte[] state;
+    private final long version;
+
+    private Versioned(byte[] state, long version) {
+      this.state = state;
+      this.version = version;
+    }
+
+    public static Versioned of(byte[] state, long version) {
+      return new Versioned(state, version);
+    }
+
+    public byte[] getState() {
+      return state;
+    }
+
+    public long getVersion() {
+      return version;
+    }
+  }
+}
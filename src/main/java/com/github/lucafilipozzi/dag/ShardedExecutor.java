@@ -0,0 +1,295 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Runs the challenge flows of many sessions on a fixed number of single-threaded shards.
+ * <p>
+ * Every session is owned by the shard its identifier hashes to: its {@link MyGraph} is created, read and
+ * updated only by that shard's thread, so that sessions need no locks, their state is never encoded
+ * or decoded between requests, and each keeps its incrementally maintained shortest path. Requests are
+ * handed to the shard through a bounded queue; once a shard's queue is full, submitting to it blocks
+ * until the shard catches up. Submitting takes only the lock of the shard's queue, which its
+ * submitters and its thread contend for briefly, never a lock shared by all shards, so that
+ * throughput scales with the number of shards, up to the number of cores, as long as the sessions
+ * spread evenly across them.
+ * <p>
+ * The futures returned are completed on the shard's thread, so that stages attached to them with the
+ * non-async methods of {@link CompletableFuture} run on that thread, ahead of the shard's next request:
+ * such stages must be short and must not block, nor wait for another request of the executor. Stages
+ * that may block should be attached with the async methods, which run them elsewhere. A request that
+ * throws, even an {@code Error}, completes its future exceptionally; the shard carries on.
+ * <p>
+ * Sessions live in memory only, until they are removed or the executor is closed.
+ */
+public final class ShardedExecutor implements AutoCloseable {
+  private final Shard[] shards;
+  private final MetricsSink metricsSink;
+
+  private static final class Shard implements Runnable {
+    private static final Runnable STOP = () -> { /* sentinel */ };
+    private final BlockingQueue<Runnable> queue;
+    private final Map<String, MyGraph> sessions = new HashMap<>(); // confined to the shard's thread
+    private final Thread thread;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private boolean closedByRequest; // confined to the shard's thread
+
+    /**
+     * A request and the future of its result.
+     */
+    private final class Task<T> implements Runnable {
+      private final Function<Map<String, MyGraph>, T> operation;
+      private final CompletableFuture<T> future = new CompletableFuture<>();
+
+      private Task(Function<Map<String, MyGraph>, T> operation) {
+        this.operation = operation;
+      }
+
+      @Override
+      public void run() {
+        try {
+          future.complete(operation.apply(sessions));
+        } catch (Throwable e) {
+          future.completeExceptionally(e); // whatever fails, the shard serves the next request
+        }
+      }
+
+      private void reject() {
+        future.completeExceptionally(new RejectedExecutionException("executor is closed"));
+      }
+    }
+
+    private Shard(int index, int queueCapacity) {
+      this.queue = new ArrayBlockingQueue<>(queueCapacity);
+      this.thread = new Thread(this, "dag-shard-" + index);
+      this.thread.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable task;
+        if (closedByRequest) {
+          task = queue.poll(); // closed by a request of this shard, which queued no STOP
+          if (task == null) {
+            break;
+          }
+        } else {
+          try {
+            task = queue.take();
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+        if (task == STOP) {
+          break;
+        }
+        task.run();
+      }
+      for (Runnable task = queue.poll(); task != null; task = queue.poll()) {
+        if (task instanceof Task<?> pending) {
+          pending.reject(); // queued after STOP, by a submitter that had not yet seen the shard closed
+        }
+      }
+    }
+
+    private <T> CompletableFuture<T> submit(Function<Map<String, MyGraph>, T> operation) {
+      if (closed.get()) {
+        return CompletableFuture.failedFuture(new RejectedExecutionException("executor is closed"));
+      }
+      Task<T> task = new Task<>(operation);
+      try {
+        queue.put(task);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return CompletableFuture.failedFuture(new RejectedExecutionException("interrupted while waiting for shard", e));
+      }
+      if (closed.get() && queue.remove(task)) {
+        task.reject(); // closed meanwhile, and the shard may have stopped before reaching the task
+      }
+      return task.future;
+    }
+  }
+
+  private ShardedExecutor(int shardCount, int queueCapacity, MetricsSink metricsSink) {
+    if (shardCount <= 0 || queueCapacity <= 0) {
+      throw new IllegalArgumentException("shardCount and queueCapacity must be positive");
+    }
+    this.shards = new Shard[shardCount];
+    for (int index = 0; index < shardCount; index++) {
+      shards[index] = new Shard(index, queueCapacity);
+    }
+    this.metricsSink = metricsSink;
+  }
+
+  /**
+   * Creates an executor with one shard per available processor and queues of 1024 requests.
+   *
+   * @return a new, started executor
+   */
+  public static ShardedExecutor of() {
+    return of(Runtime.getRuntime().availableProcessors(), 1024, MetricsSink.noop());
+  }
+
+  /**
+   * Creates an executor with the given number of shards that reports to the given {@code MetricsSink}.
+   *
+   * @param shardCount the number of shards, each with its own thread
+   * @param queueCapacity the number of pending requests per shard beyond which submitting blocks
+   * @param metricsSink the sink receiving the latency, outcome and search visits of every request
+   * @return a new, started executor
+   * @throws IllegalArgumentException if {@code shardCount} or {@code queueCapacity} is not positive
+   */
+  public static ShardedExecutor of(int shardCount, int queueCapacity, MetricsSink metricsSink) {
+    ShardedExecutor executor = new ShardedExecutor(shardCount, queueCapacity, metricsSink);
+    for (Shard shard : executor.shards) {
+      shard.thread.start();
+    }
+    return executor;
+  }
+
+  /**
+   * Creates a session, like {@link API#of(SessionStore, String, Template, User)}, on its shard.
+   *
+   * @param sessionId the identifier of the session
+   * @param template the compiled challenge graph
+   * @param user the User object containing the set of challenges available to this user
+   * @return the first step of the challenge flow, or {@code invalid} if the session already exists
+   */
+  public CompletableFuture<Outcome> create(String sessionId, Template template, User user) {
+    return shard(sessionId).submit(sessions -> {
+      if (sessions.containsKey(sessionId)) {
+        return Outcome.invalid();
+      }
+      MyGraph myGraph = MyGraph.of(template, user);
+      sessions.put(sessionId, myGraph);
+      return myGraph.next();
+    });
+  }
+
+  /**
+   * Determines the next step of the challenge flow of a session, like {@link API#next()}.
+   *
+   * @param sessionId the identifier of the session
+   * @return the next step, or {@code invalid} if the session does not exist
+   */
+  public CompletableFuture<Outcome> next(String sessionId) {
+    return shard(sessionId).submit(sessions -> {
+      long start = startClock();
+      MyGraph myGraph = sessions.get(sessionId);
+      if (myGraph == null) {
+        return stopClock(MetricsSink.OPERATION.NEXT, start, Outcome.invalid(), 0);
+      }
+      int visits = myGraph.getSearchVisits();
+      Outcome outcome = myGraph.next();
+      return stopClock(MetricsSink.OPERATION.NEXT, start, outcome, myGraph.getSearchVisits() - visits);
+    });
+  }
+
+  /**
+   * Updates the status of the current challenge of a session, like {@link API#report(String)}.
+   *
+   * @param sessionId the identifier of the session
+   * @param status the new status, either "success" or "failure"
+   * @return the outcome of the update, or {@code invalid} if the status is invalid or the session does not exist
+   */
+  public CompletableFuture<Outcome> report(String sessionId, String status) {
+    return shard(sessionId).submit(sessions -> {
+      long start = startClock();
+      MyGraph myGraph = sessions.get(sessionId);
+      if (myGraph == null || !"success".equals(status) && !"failure".equals(status)) {
+        return stopClock(MetricsSink.OPERATION.REPORT, start, Outcome.invalid(), 0);
+      }
+      int visits = myGraph.getSearchVisits();
+      Outcome outcome = myGraph.report(status);
+      return stopClock(MetricsSink.OPERATION.REPORT, start, outcome, myGraph.getSearchVisits() - visits);
+    });
+  }
+
+  /**
+   * Removes a session.
+   *
+   * @param sessionId the identifier of the session
+   * @return whether the session existed
+   */
+  public CompletableFuture<Boolean> remove(String sessionId) {
+    return shard(sessionId).submit(sessions -> sessions.remove(sessionId) != null);
+  }
+
+  /**
+   * Returns the number of sessions held, counted on every shard.
+   */
+  public CompletableFuture<Integer> size() {
+    CompletableFuture<Integer> size = CompletableFuture.completedFuture(0);
+    for (Shard shard : shards) {
+      size = size.thenCombine(shard.submit(Map::size), Integer::sum);
+    }
+    return size;
+  }
+
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  /**
+   * Stops every shard once the requests already submitted have run; later submissions fail with a
+   * {@link RejectedExecutionException}. Called on a shard's thread, for example by a stage attached to
+   * one of its futures, it does not wait for that shard, which stops once its current request returns
+   * and its queue is drained.
+   */
+  @Override
+  public void close() {
+    for (Shard shard : shards) {
+      if (!shard.closed.compareAndSet(false, true)) {
+        continue;
+      }
+      if (shard.thread == Thread.currentThread()) {
+        shard.closedByRequest = true; // the caller must not wait for room in its own queue
+        continue;
+      }
+      try {
+        shard.queue.put(Shard.STOP);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        shard.thread.interrupt();
+      }
+    }
+    for (Shard shard : shards) {
+      if (shard.thread == Thread.currentThread()) {
+        continue;
+      }
+      try {
+        shard.thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private Shard shard(String sessionId) {
+    int hash = sessionId.hashCode();
+    return shards[Math.floorMod(hash ^ hash >>> 16, shards.length)];
+  }
+
+  private long startClock() {
+    return metricsSink.isEnabled() ? System.nanoTime() : 0L;
+  }
+
+  private Outcome stopClock(MetricsSink.OPERATION operation, long start, Outcome outcome, int visits) {
+    if (metricsSink.isEnabled()) {
+      metricsSink.recordLatency(operation, System.nanoTime() - start);
+      metricsSink.recordOutcome(outcome.getKind());
+      metricsSink.recordSearchVisits(visits);
+    }
+    return outcome;
+  }
+}
@@ -0,0 +1,221 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Compact, versioned binary encoding of a {@link MyGraph} session.
+ * <p>
+ * Only the session's own state is encoded: the identifier of its {@link Template} and the status of
+ * every node, packed two bits per node. Topology and weights are recovered from the template on
+ * decode. The layout of version 1 is:
+ * <pre>
+ *   magic    1 byte   'D'
+ *   version  1 byte   1
+ *   idLength varint   length of the UTF-8 encoded template identifier
+ *   id       bytes    UTF-8 encoded template identifier
+ *   size     varint   number of nodes
+ *   statuses bytes    ceil(size / 4) bytes, node i in bits 2*(i%4)..2*(i%4)+1 of byte i/4
+ * </pre>
+ * The updates made to a session may also be encoded on their own, as a sequence of
+ * {@code challengeCode << 2 | status} varints, for stores that record updates rather than states.
+ */
+public final class StateCodec {
+  private static final byte MAGIC = 'D';
+  private static final byte VERSION = 1;
+  private static final int STATUS_COUNT = Node.STATUS.values().length;
+
+  private StateCodec() { /* hide constructor */ }
+
+  /**
+   * Encodes the given session.
+   *
+   * @param myGraph the session to encode
+   * @return the binary encoding of the session
+   */
+  public static byte[] encode(MyGraph myGraph) {
+    byte[] id = myGraph.getTemplate().getId().getBytes(StandardCharsets.UTF_8);
+    byte[] statuses = myGraph.getStatuses();
+    int size = statuses.length;
+    byte[] bytes = new byte[2 + varintLength(id.length) + id.length + varintLength(size) + (size + 3) / 4];
+    int offset = 0;
+    bytes[offset++] = MAGIC;
+    bytes[offset++] = VERSION;
+    offset = writeVarint(bytes, offset, id.length);
+    System.arraycopy(id, 0, bytes, offset, id.length);
+    offset += id.length;
+    offset = writeVarint(bytes, offset, size);
+    for (int node = 0; node < size; node++) {
+      bytes[offset + (node >>> 2)] |= (byte) (statuses[node] << ((node & 3) << 1));
+    }
+    return bytes;
+  }
+
+  /**
+   * Decodes a session previously encoded by {@link #encode(MyGraph)}.
+   *
+   * @param bytes the binary encoding of the session
+   * @param templates resolves a template identifier to its compiled template, for example {@code TemplateRegistry::get}
+   * @return the decoded session
+   * @throws IllegalArgumentException if the encoding is malformed, of an unsupported version, or does not match the template
+   */
+  public static MyGraph decode(byte[] bytes, Function<String, Template> templates) {
+    try {
+      int offset = 0;
+      if (bytes[offset++] != MAGIC) {
+        throw new IllegalArgumentException("not an encoded session");
+      }
+      if (bytes[offset++] != VERSION) {
+        throw new IllegalArgumentException("unsupported version " + bytes[offset - 1]);
+      }
+      int idLength = readVarint(bytes, offset);
+      offset += varintLength(idLength);
+      checkLength(bytes, offset, idLength);
+      Template template = templates.apply(new String(bytes, offset, idLength, StandardCharsets.UTF_8));
+      offset += idLength;
+      int size = readVarint(bytes, offset);
+      offset += varintLength(size);
+      checkLength(bytes, offset, size < 0 ? size : (size + 3L) / 4); // a negative size is malformed too
+      if (size != template.size() || bytes.length != offset + (size + 3) / 4) {
+        throw new IllegalArgumentException("encoded session does not match template " + template.getId());
+      }
+      byte[] statuses = new byte[size];
+      for (int node = 0; node < size; node++) {
+        int status = (bytes[offset + (node >>> 2)] >>> ((node & 3) << 1)) & 3;
+        if (status >= STATUS_COUNT) {
+          throw new IllegalArgumentException("invalid status " + status);
+        }
+        statuses[node] = (byte) status;
+      }
+      return MyGraph.of(template, statuses);
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("truncated session", e);
+    }
+  }
+
+  /**
+   * Returns the offset of the packed statuses of an encoded session, that is, the length of the header
+   * identifying its template and size, for stores that keep the two apart.
+   *
+   * @param bytes the binary encoding of a session
+   * @return the offset of the statuses
+   * @throws IllegalArgumentException if the encoding is malformed or of an unsupported version
+   */
+  static int getStatusesOffset(byte[] bytes) {
+    try {
+      if (bytes[0] != MAGIC || bytes[1] != VERSION) {
+        throw new IllegalArgumentException("not an encoded session of version " + VERSION);
+      }
+      int idLength = readVarint(bytes, 2);
+      int offset = 2 + varintLength(idLength);
+      checkLength(bytes, offset, idLength);
+      offset += idLength;
+      int size = readVarint(bytes, offset);
+      offset += varintLength(size);
+      checkLength(bytes, offset, size < 0 ? size : (size + 3L) / 4); // a negative size is malformed too
+      if (bytes.length != offset + (size + 3) / 4) {
+        throw new IllegalArgumentException("truncated session");
+      }
+      return offset;
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("truncated session", e);
+    }
+  }
+
+  /**
+   * Returns the identifier of the template of an encoded session, without decoding the session.
+   *
+   * @param bytes the binary encoding of a session
+   * @return the identifier of its template
+   * @throws IllegalArgumentException if the encoding is malformed or of an unsupported version
+   */
+  static String getTemplateId(byte[] bytes) {
+    getStatusesOffset(bytes); // checks the header
+    int idLength = readVarint(bytes, 2);
+    return new String(bytes, 2 + varintLength(idLength), idLength, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Encodes the updates made to the given session since it was created or decoded, in order.
+   *
+   * @param myGraph the updated session
+   * @return the binary encoding of the updates, empty if there were none
+   */
+  public static byte[] encodeChanges(MyGraph myGraph) {
+    int length = 0;
+    for (int index = 0; index < myGraph.getChangeCount(); index++) {
+      length += varintLength(myGraph.getChange(index));
+    }
+    byte[] bytes = new byte[length];
+    int offset = 0;
+    for (int index = 0; index < myGraph.getChangeCount(); index++) {
+      offset = writeVarint(bytes, offset, myGraph.getChange(index));
+    }
+    return bytes;
+  }
+
+  /**
+   * Replays updates encoded by {@link #encodeChanges(MyGraph)} onto the given session.
+   *
+   * @param myGraph the session, in the state the updates were made from
+   * @param changes the binary encoding of the updates
+   * @throws IllegalArgumentException if the encoding is malformed or does not match the session's template
+   */
+  public static void applyChanges(MyGraph myGraph, byte[] changes) {
+    try {
+      for (int offset = 0; offset < changes.length; ) {
+        int change = readVarint(changes, offset);
+        offset += varintLength(change);
+        int code = change >>> 2;
+        int status = change & 3;
+        if (code >= myGraph.getTemplate().getChallengeCount() || status >= STATUS_COUNT) {
+          throw new IllegalArgumentException("encoded update does not match template " + myGraph.getTemplate().getId());
+        }
+        myGraph.applyStatus(code, (byte) status);
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("truncated updates", e);
+    }
+  }
+
+  /**
+   * Checks that a field of the given length, read from the encoding, fits in the bytes that remain.
+   *
+   * @throws IllegalArgumentException if the length is negative or exceeds the remaining bytes
+   */
+  private static void checkLength(byte[] bytes, int offset, long length) {
+    if (length < 0 || length > bytes.length - offset) {
+      throw new IllegalArgumentException("malformed length " + length);
+    }
+  }
+
+  private static int varintLength(int value) {
+    int length = 1;
+    while ((value >>>= 7) != 0) {
+      length++;
+    }
+    return length;
+  }
+
+  private static int writeVarint(byte[] bytes, int offset, int value) {
+    while ((value & ~0x7F) != 0) {
+      bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    bytes[offset++] = (byte) value;
+    return offset;
+  }
+
+  private static int readVarint(byte[] bytes, int offset) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = bytes[offset++];
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("malformed varint");
+  }
+}
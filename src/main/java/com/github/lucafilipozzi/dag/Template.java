@@ -0,0 +1,511 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+public final class Template {
+  /**
+   * The path searches that determine the next challenge of a session, see {@link #withSearch(SEARCH)}.
+   */
+  public enum SEARCH {
+    TOPOLOGICAL,  // relaxes every node in topological order, incrementally across updates of a session
+    ASTAR,        // A*, guided by the distances to END of the unmasked graph
+    BIDIRECTIONAL // meets in the middle of searches from START and from END
+  }
+
+  private static final String START_NODE_ID = "START";
+  private static final String END_NODE_ID = "END";
+  private final String id;
+  private final String[] nodeIds;
+  private final String[] challenges;
+  private final int[] challengeCodes;
+  private final int[] challengeNodeOffsets;
+  private final int[] challengeNodes;
+  private final Map<String, Integer> challengeCodesByName;
+  private final int start;
+  private final int end;
+  private final int[] edgeOffsets;
+  private final int[] edgeSources;
+  private final int[] edgeTargets;
+  private final double[] edgeWeights;
+  private final int[] edgeOrder;
+  private final int[] topologicalOrder;
+  private final int[] topologicalPositions;
+  private final int[] reverseEdgeOffsets;
+  private final int[] reverseEdges;
+  private final ReachabilityIndex reachabilityIndex;
+  private final SEARCH search;
+  private final double[] distancesToEnd; // the A* heuristic, computed for the ASTAR search only
+
+  /**
+   * Creates a template from its nodes and its edges, the latter in the order in which the graph defines them.
+   */
+  private Template(String id, String[] nodeIds, int edgeCount, int[] sources, int[] targets, double[] weights) {
+    this.id = id;
+    this.nodeIds = nodeIds;
+    this.challengeCodes = new int[nodeIds.length];
+    this.challengeCodesByName = new HashMap<>();
+    for (int node = 0; node < nodeIds.length; node++) {
+      String challenge = Node.challengeOf(nodeIds[node]);
+      this.challengeCodes[node] = challengeCodesByName.computeIfAbsent(challenge, key -> challengeCodesByName.size());
+    }
+    this.challenges = new String[challengeCodesByName.size()];
+    challengeCodesByName.forEach((challenge, code) -> this.challenges[code] = challenge);
+    this.challengeNodeOffsets = new int[this.challenges.length + 1];
+    this.challengeNodes = new int[nodeIds.length];
+    groupBy(this.challengeCodes, nodeIds.length, this.challengeNodeOffsets, this.challengeNodes);
+    this.start = indexOf(START_NODE_ID);
+    this.end = indexOf(END_NODE_ID);
+    this.edgeOffsets = new int[nodeIds.length + 1];
+    this.edgeOrder = new int[edgeCount];
+    int[] edges = new int[edgeCount];
+    groupBy(sources, edgeCount, this.edgeOffsets, edges);
+    this.edgeSources = new int[edgeCount];
+    this.edgeTargets = new int[edgeCount];
+    this.edgeWeights = new double[edgeCount];
+    for (int edge = 0; edge < edgeCount; edge++) {
+      this.edgeSources[edge] = sources[edges[edge]];
+      this.edgeTargets[edge] = targets[edges[edge]];
+      this.edgeWeights[edge] = weights[edges[edge]];
+      this.edgeOrder[edges[edge]] = edge;
+    }
+    this.topologicalOrder = sortTopologically(this.edgeOffsets, this.edgeTargets);
+    this.topologicalPositions = invert(this.topologicalOrder);
+    this.reverseEdgeOffsets = new int[nodeIds.length + 1];
+    this.reverseEdges = new int[edgeCount];
+    groupBy(this.edgeTargets, edgeCount, this.reverseEdgeOffsets, this.reverseEdges);
+    this.reachabilityIndex = ReachabilityIndex.of(this.start, this.end, this.edgeOffsets, this.edgeTargets, this.topologicalOrder, this.topologicalPositions);
+    this.search = SEARCH.TOPOLOGICAL;
+    this.distancesToEnd = null;
+  }
+
+  /**
+   * Creates a template from its compiled form, as read back from a {@link TemplateSnapshot}.
+   */
+  Template(String id, String[] nodeIds, String[] challenges, int[] challengeCodes, int[] challengeNodeOffsets,
+      int[] challengeNodes, int start, int end, int[] edgeOffsets, int[] edgeSources, int[] edgeTargets,
+      double[] edgeWeights, int[] edgeOrder, int[] topologicalOrder) {
+    this.id = id;
+    this.nodeIds = nodeIds;
+    this.challenges = challenges;
+    this.challengeCodes = challengeCodes;
+    this.challengeNodeOffsets = challengeNodeOffsets;
+    this.challengeNodes = challengeNodes;
+    this.challengeCodesByName = new HashMap<>();
+    for (int code = 0; code < challenges.length; code++) {
+      this.challengeCodesByName.put(challenges[code], code);
+    }
+    this.start = start;
+    this.end = end;
+    this.edgeOffsets = edgeOffsets;
+    this.edgeSources = edgeSources;
+    this.edgeTargets = edgeTargets;
+    this.edgeWeights = edgeWeights;
+    this.edgeOrder = edgeOrder;
+    this.topologicalOrder = topologicalOrder;
+    this.topologicalPositions = invert(topologicalOrder);
+    this.reverseEdgeOffsets = new int[nodeIds.length + 1];
+    this.reverseEdges = new int[edgeTargets.length];
+    groupBy(edgeTargets, edgeTargets.length, this.reverseEdgeOffsets, this.reverseEdges);
+    this.reachabilityIndex = ReachabilityIndex.of(start, end, edgeOffsets, edgeTargets, topologicalOrder, this.topologicalPositions);
+    this.search = SEARCH.TOPOLOGICAL;
+    this.distancesToEnd = null;
+  }
+
+  /**
+   * Creates a template sharing the compiled form of the given one, with the given identifier and path search.
+   */
+  private Template(Template template, String id, SEARCH search) {
+    this.id = id;
+    this.nodeIds = template.nodeIds;
+    this.challenges = template.challenges;
+    this.challengeCodes = template.challengeCodes;
+    this.challengeNodeOffsets = template.challengeNodeOffsets;
+    this.challengeNodes = template.challengeNodes;
+    this.challengeCodesByName = template.challengeCodesByName;
+    this.start = template.start;
+    this.end = template.end;
+    this.edgeOffsets = template.edgeOffsets;
+    this.edgeSources = template.edgeSources;
+    this.edgeTargets = template.edgeTargets;
+    this.edgeWeights = template.edgeWeights;
+    this.edgeOrder = template.edgeOrder;
+    this.topologicalOrder = template.topologicalOrder;
+    this.topologicalPositions = template.topologicalPositions;
+    this.reverseEdgeOffsets = template.reverseEdgeOffsets;
+    this.reverseEdges = template.reverseEdges;
+    this.reachabilityIndex = template.reachabilityIndex;
+    this.search = search;
+    this.distancesToEnd = search != SEARCH.ASTAR ? null
+      : template.distancesToEnd != null ? template.distancesToEnd : computeDistancesToEnd(template);
+  }
+
+  /**
+   * Compiles an anonymous template from a GraphML document.
+   *
+   * @param reader the Reader containing GraphML data representing the challenge graph
+   * @return a new immutable Template with a randomly generated identifier
+   * @throws java.util.NoSuchElementException if START or END nodes are not found in the graph
+   * @throws IllegalArgumentException if the document is malformed or the graph is not acyclic
+   */
+  public static Template of(Reader reader) {
+    return of(UUID.randomUUID().toString(), reader);
+  }
+
+  /**
+   * Compiles a template from a GraphML document.
+   * <p>
+   * The GraphML document is streamed exactly once; the resulting topology, edge weights, challenge
+   * identifiers and START/END nodes are held in an immutable form that may be shared by any
+   * number of {@link MyGraph} sessions.
+   *
+   * @param id the identifier of the template
+   * @param reader the Reader containing GraphML data representing the challenge graph
+   * @return a new immutable Template
+   * @throws java.util.NoSuchElementException if START or END nodes are not found in the graph
+   * @throws IllegalArgumentException if the document is malformed or the graph is not acyclic
+   */
+  public static Template of(String id, Reader reader) {
+    return GraphMLLoader.load(reader, (nodeIds, edgeCount, sources, targets, weights) ->
+      new Template(id, nodeIds, edgeCount, sources, targets, weights));
+  }
+
+  /**
+   * Compiles a template from a GraphML document, like {@link #of(String, Reader)}, letting the XML
+   * parser decode the document's declared encoding from raw bytes.
+   *
+   * @param id the identifier of the template
+   * @param inputStream the InputStream containing GraphML data representing the challenge graph
+   * @return a new immutable Template
+   * @throws java.util.NoSuchElementException if START or END nodes are not found in the graph
+   * @throws IllegalArgumentException if the document is malformed or the graph is not acyclic
+   */
+  public static Template of(String id, InputStream inputStream) {
+    return GraphMLLoader.load(inputStream, (nodeIds, edgeCount, sources, targets, weights) ->
+      new Template(id, nodeIds, edgeCount, sources, targets, weights));
+  }
+
+  /**
+   * Compiles a template from a GraphML file, like {@link #of(String, InputStream)}. The file is memory-mapped
+   * rather than copied onto the heap.
+   *
+   * @param id the identifier of the template
+   * @param path the GraphML file representing the challenge graph
+   * @return a new immutable Template
+   * @throws UncheckedIOException if the file cannot be read
+   * @throws java.util.NoSuchElementException if START or END nodes are not found in the graph
+   * @throws IllegalArgumentException if the document is malformed or the graph is not acyclic
+   */
+  public static Template of(String id, Path path) {
+    try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+      return of(id, GraphMLLoader.asInputStream(buffer));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Compiles a template from its nodes and its edges, the latter in the order in which the graph defines them.
+   * Only the first {@code edgeCount} entries of the edge arrays are used.
+   *
+   * @param id the identifier of the template
+   * @param nodeIds the node identifiers, indexed by node
+   * @param edgeCount the number of edges
+   * @param sources the source node of every edge
+   * @param targets the target node of every edge
+   * @param weights the weight of every edge
+   * @return a new immutable Template
+   * @throws java.util.NoSuchElementException if START or END nodes are not found in the graph
+   * @throws IllegalArgumentException if the graph is not acyclic
+   */
+  static Template of(String id, String[] nodeIds, int edgeCount, int[] sources, int[] targets, double[] weights) {
+    return new Template(id, nodeIds, edgeCount, sources, targets, weights);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  int size() {
+    return nodeIds.length;
+  }
+
+  String getNodeId(int node) {
+    return nodeIds[node];
+  }
+
+  String getChallenge(int node) {
+    return challenges[challengeCodes[node]];
+  }
+
+  /**
+   * Returns the code of the challenge of the given node. Challenge codes are dense, starting at
+   * zero, and assigned in order of first appearance of each challenge identifier.
+   */
+  int getChallengeCode(int node) {
+    return challengeCodes[node];
+  }
+
+  /**
+   * Returns the code of the given challenge identifier, or -1 if no node of this template has it.
+   */
+  int getChallengeCode(String challenge) {
+    return challengeCodesByName.getOrDefault(challenge, -1);
+  }
+
+  int getChallengeCount() {
+    return challenges.length;
+  }
+
+  String getChallengeName(int challengeCode) {
+    return challenges[challengeCode];
+  }
+
+  /**
+   * Returns the offsets of each challenge's nodes: the nodes of challenge {@code code} are the entries
+   * of {@link #getChallengeNodes()} from {@code challengeNodeOffsets[code]} (inclusive) to
+   * {@code challengeNodeOffsets[code + 1]} (exclusive), in ascending order.
+   */
+  int[] getChallengeNodeOffsets() {
+    return challengeNodeOffsets;
+  }
+
+  int[] getChallengeNodes() {
+    return challengeNodes;
+  }
+
+  int getStart() {
+    return start;
+  }
+
+  int getEnd() {
+    return end;
+  }
+
+  /**
+   * Returns the offsets of each node's outgoing edges: the outgoing edges of {@code node} are
+   * {@code edgeOffsets[node]} (inclusive) to {@code edgeOffsets[node + 1]} (exclusive), in the
+   * order in which the graph defines them.
+   */
+  int[] getEdgeOffsets() {
+    return edgeOffsets;
+  }
+
+  int[] getEdgeSources() {
+    return edgeSources;
+  }
+
+  int[] getEdgeTargets() {
+    return edgeTargets;
+  }
+
+  double[] getEdgeWeights() {
+    return edgeWeights;
+  }
+
+  /**
+   * Returns, for each edge in the order in which the graph defines them, its index in the arrays above.
+   */
+  int[] getEdgeOrder() {
+    return edgeOrder;
+  }
+
+  /**
+   * Returns every node exactly once, each node preceding all nodes reachable from it. Nodes whose
+   * relative order is not constrained by the graph appear in the order in which they were defined.
+   */
+  int[] getTopologicalOrder() {
+    return topologicalOrder;
+  }
+
+  /**
+   * Returns the position of every node in {@link #getTopologicalOrder()}.
+   */
+  int[] getTopologicalPositions() {
+    return topologicalPositions;
+  }
+
+  /**
+   * Returns the offsets of each node's incoming edges: the incoming edges of {@code node} are the entries
+   * of {@link #getReverseEdges()} from {@code reverseEdgeOffsets[node]} (inclusive) to
+   * {@code reverseEdgeOffsets[node + 1]} (exclusive).
+   */
+  int[] getReverseEdgeOffsets() {
+    return reverseEdgeOffsets;
+  }
+
+  /**
+   * Returns the incoming edges of every node, as indices into the edge arrays above, grouped by target.
+   */
+  int[] getReverseEdges() {
+    return reverseEdges;
+  }
+
+  /**
+   * Returns a template with the same identifier and graph as this one, whose sessions determine their
+   * next challenge with the given path search. Every search yields exactly the same challenges; they
+   * differ only in the work they do, so that they can be compared on a given graph. TOPOLOGICAL, the
+   * default, visits every node that may lie on a path to END once, then only the part of the graph
+   * affected by each update; ASTAR and BIDIRECTIONAL visit only the nodes that may lie on a shortest
+   * path, at the cost of a priority queue, and start afresh on every update. The search is recorded by
+   * a {@link TemplateSnapshot}, and may be chosen when registering a template with a
+   * {@link TemplateRegistry}, so that sessions decoded through the registry keep it.
+   *
+   * @param search the path search
+   * @return a template sharing the compiled form of this one
+   */
+  public Template withSearch(SEARCH search) {
+    return search == this.search ? this : new Template(this, id, search);
+  }
+
+  /**
+   * Returns a template with the given identifier, sharing the compiled form of this one.
+   */
+  Template withId(String id) {
+    return id.equals(this.id) ? this : new Template(this, id, search);
+  }
+
+  public SEARCH getSearch() {
+    return search;
+  }
+
+  /**
+   * Returns the distance from every node to END in the unmasked graph, infinite if END is unreachable
+   * from the node, for the ASTAR search only.
+   */
+  double[] getDistancesToEnd() {
+    return distancesToEnd;
+  }
+
+  /**
+   * Returns the reachability facts of the graph that hold whatever the statuses of its nodes.
+   */
+  ReachabilityIndex getReachabilityIndex() {
+    return reachabilityIndex;
+  }
+
+  /**
+   * Removes the repeated edges between the same nodes from the first {@code edgeCount} entries of the
+   * given edge arrays, as a simple graph does, keeping the first of each and the order of the others.
+   * Repeats are found among the edges of each source, with no per-edge allocation.
+   *
+   * @return the number of edges kept
+   */
+  static int removeRepeatedEdges(int nodeCount, int edgeCount, int[] sources, int[] targets, double[] weights) {
+    int[] offsets = new int[nodeCount + 1];
+    int[] edges = new int[edgeCount];
+    groupBy(sources, edgeCount, offsets, edges);
+    int[] lastSources = new int[nodeCount]; // source + 1 of the latest edge kept to each target
+    boolean[] repeated = new boolean[edgeCount];
+    boolean anyRepeated = false;
+    for (int source = 0; source < nodeCount; source++) {
+      for (int index = offsets[source]; index < offsets[source + 1]; index++) {
+        int edge = edges[index];
+        if (lastSources[targets[edge]] == source + 1) {
+          repeated[edge] = anyRepeated = true;
+        } else {
+          lastSources[targets[edge]] = source + 1;
+        }
+      }
+    }
+    if (!anyRepeated) {
+      return edgeCount;
+    }
+    int kept = 0;
+    for (int edge = 0; edge < edgeCount; edge++) {
+      if (!repeated[edge]) {
+        sources[kept] = sources[edge];
+        targets[kept] = targets[edge];
+        weights[kept++] = weights[edge];
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Groups the indices {@code 0..count-1} by key with a stable counting sort: the indices having key
+   * {@code k} are {@code grouped[offsets[k]]} to {@code grouped[offsets[k + 1] - 1]}, in ascending order.
+   */
+  private static void groupBy(int[] keys, int count, int[] offsets, int[] grouped) {
+    for (int index = 0; index < count; index++) {
+      offsets[keys[index] + 1]++;
+    }
+    for (int key = 0; key + 1 < offsets.length; key++) {
+      offsets[key + 1] += offsets[key];
+    }
+    int[] fill = Arrays.copyOf(offsets, offsets.length - 1);
+    for (int index = 0; index < count; index++) {
+      grouped[fill[keys[index]]++] = index;
+    }
+  }
+
+  private static double[] computeDistancesToEnd(Template template) {
+    double[] distances = new double[template.nodeIds.length];
+    Arrays.fill(distances, Double.POSITIVE_INFINITY);
+    distances[template.end] = 0.0;
+    for (int position = template.topologicalOrder.length - 1; position >= 0; position--) {
+      int node = template.topologicalOrder[position];
+      for (int edge = template.edgeOffsets[node]; edge < template.edgeOffsets[node + 1]; edge++) {
+        distances[node] = Math.min(distances[node], template.edgeWeights[edge] + distances[template.edgeTargets[edge]]);
+      }
+    }
+    return distances;
+  }
+
+  private static int[] invert(int[] order) {
+    int[] positions = new int[order.length];
+    for (int position = 0; position < order.length; position++) {
+      positions[order[position]] = position;
+    }
+    return positions;
+  }
+
+  private static int[] sortTopologically(int[] edgeOffsets, int[] edgeTargets) {
+    int size = edgeOffsets.length - 1;
+    int[] inDegrees = new int[size];
+    for (int edgeTarget : edgeTargets) {
+      inDegrees[edgeTarget]++;
+    }
+    int[] order = new int[size];
+    int tail = 0;
+    for (int node = 0; node < size; node++) {
+      if (inDegrees[node] == 0) {
+        order[tail++] = node;
+      }
+    }
+    for (int head = 0; head < tail; head++) {
+      int node = order[head];
+      for (int edge = edgeOffsets[node]; edge < edgeOffsets[node + 1]; edge++) {
+        if (--inDegrees[edgeTargets[edge]] == 0) {
+          order[tail++] = edgeTargets[edge];
+        }
+      }
+    }
+    if (tail != size) {
+      throw new IllegalArgumentException("challenge graph is not acyclic");
+    }
+    return order;
+  }
+
+  private int indexOf(String nodeId) {
+    for (int i = 0; i < nodeIds.length; i++) {
+      if (nodeIds[i].equals(nodeId)) {
+        return i;
+      }
+    }
+    throw new NoSuchElementException(nodeId);
+  }
+}
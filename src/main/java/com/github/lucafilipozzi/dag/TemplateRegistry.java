@@ -0,0 +1,575 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Holds the compiled templates of a process, by name, and their successive versions.
+ * <p>
+ * Registering a template under a name that is already registered adds a new version rather than
+ * replacing the template in place: sessions keep the version they were created on, while new sessions
+ * pick up the latest one. Each version is identified by its {@link Template#getId()}, which is what
+ * encoded sessions refer to: a version registered under a name is identified as {@code name@} followed
+ * by the first 16 hexadecimal digits of the SHA-256 hash of its GraphML document (of the bytes of a file,
+ * or of the characters, two bytes each, supplied by a {@code Reader}). A version identifier thus never
+ * resolves to any other content, not even in another process reading sessions stored by this one, so
+ * that a session is never decoded with a graph it was not created on. Registering the same content
+ * again makes its version the latest one again, rather than adding another. Names may not contain
+ * {@code @}.
+ * <p>
+ * Templates are compiled outside of any lock and swapped in atomically: the registry is an immutable
+ * snapshot behind a volatile reference, replaced on every change, so that lookups never lock or wait,
+ * even while a large template is being reloaded. A superseded version is kept as long as sessions may
+ * refer to it. The registry counts the sessions of a version by its {@link Lease}s: a
+ * {@link SessionStore} wrapped by {@link #pin(SessionStore)} holds a lease of the version of each of
+ * its sessions, from their creation until they are removed, expire or are evicted, and a superseded
+ * version is dropped once the last lease of it is closed. Sessions of other stores hold no lease, so that a superseded version that
+ * was never leased is kept for the life of the registry, lest such a session be left undecodable.
+ */
+public class TemplateRegistry {
+  private static final int VERSION_HASH_LENGTH = 8; // bytes of the hash in a version identifier
+  private volatile Snapshot snapshot = new Snapshot(Map.of(), Map.of());
+  private long registrations; // guarded by this
+  private final Map<String, CompletableFuture<Template>> compilations = new HashMap<>(); // guarded by this
+
+  private static final class Version {
+    private final String name;
+    private volatile long number; // the order of the latest registration of the version
+    private volatile Template template; // replaced when the same content is registered with another search
+    private final AtomicInteger leases = new AtomicInteger(); // -1 once dropped
+    private volatile boolean leased; // once leased, its sessions are counted
+    private volatile boolean superseded;
+
+    private Version(String name, long number, Template template) {
+      this.name = name;
+      this.number = number;
+      this.template = template;
+    }
+  }
+
+  private static final class Snapshot {
+    private final Map<String, Version> versionsById;
+    private final Map<String, Version> latestByName;
+
+    private Snapshot(Map<String, Version> versionsById, Map<String, Version> latestByName) {
+      this.versionsById = versionsById;
+      this.latestByName = latestByName;
+    }
+  }
+
+  /**
+   * A claim on a version of a template, which keeps it registered until closed.
+   */
+  public final class Lease implements AutoCloseable {
+    private final Version version;
+    private boolean closed;
+
+    private Lease(Version version) {
+      this.version = version;
+    }
+
+    public Template getTemplate() {
+      return version.template;
+    }
+
+    /**
+     * Releases the version, dropping it if it has been superseded and this was its last lease. Closing
+     * a lease more than once has no further effect.
+     */
+    @Override
+    public void close() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+      }
+      if (version.leases.decrementAndGet() == 0 && version.superseded) {
+        drop(version);
+      }
+    }
+  }
+
+  /**
+   * A {@link SessionStore} that holds a lease of the template version of each of its sessions, from
+   * before the session is created until the wrapped store reports that it left, whether removed, expired
+   * or evicted. A session identifier may briefly hold the leases of two sessions, one leaving while the
+   * next is created; leases of the same version are interchangeable, so that a removal releases any
+   * lease of the version of the removed state.
+   */
+  private final class PinningSessionStore implements SessionStore {
+    private static final int STRIPE_COUNT = 64;
+    private final SessionStore sessionStore;
+    private final ConcurrentMap<String, List<Lease>> leases = new ConcurrentHashMap<>(); // lists guarded by the stripe of their session
+    private final Object[] stripes = new Object[STRIPE_COUNT];
+
+    private PinningSessionStore(SessionStore sessionStore) {
+      this.sessionStore = sessionStore;
+      for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+        stripes[stripe] = new Object();
+      }
+    }
+
+    @Override
+    public Optional<Versioned> get(String sessionId) {
+      return sessionStore.get(sessionId);
+    }
+
+    @Override
+    public boolean create(String sessionId, byte[] state) {
+      Lease lease = acquire(StateCodec.getTemplateId(state));
+      synchronized (stripe(sessionId)) {
+        leases.computeIfAbsent(sessionId, key -> new ArrayList<>(1)).add(lease); // before the session may leave
+      }
+      if (!sessionStore.create(sessionId, state)) {
+        release(sessionId, lease.getTemplate().getId());
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public boolean replace(String sessionId, long expectedVersion, byte[] state) {
+      return sessionStore.replace(sessionId, expectedVersion, state);
+    }
+
+    @Override
+    public boolean replace(String sessionId, long expectedVersion, byte[] state, byte[] changes) {
+      return sessionStore.replace(sessionId, expectedVersion, state, changes);
+    }
+
+    @Override
+    public void remove(String sessionId) {
+      sessionStore.remove(sessionId); // released by the removal listener
+    }
+
+    @Override
+    public void addRemovalListener(RemovalListener listener) {
+      sessionStore.addRemovalListener(listener);
+    }
+
+    /**
+     * Closes a lease of the given version held for the given session, if any: sessions the wrapped store
+     * held before it was wrapped hold none.
+     */
+    private void release(String sessionId, String templateId) {
+      Lease released = null;
+      synchronized (stripe(sessionId)) {
+        List<Lease> sessionLeases = leases.get(sessionId);
+        if (sessionLeases == null) {
+          return;
+        }
+        for (int index = 0; index < sessionLeases.size(); index++) {
+          if (sessionLeases.get(index).getTemplate().getId().equals(templateId)) {
+            released = sessionLeases.remove(index);
+            break;
+          }
+        }
+        if (sessionLeases.isEmpty()) {
+          leases.remove(sessionId);
+        }
+      }
+      if (released != null) {
+        released.close();
+      }
+    }
+
+    private Object stripe(String sessionId) {
+      int hash = sessionId.hashCode();
+      return stripes[(hash ^ hash >>> 16) & (STRIPE_COUNT - 1)];
+    }
+  }
+
+  /**
+   * A {@code Reader} that hashes the characters read through it.
+   */
+  private static final class DigestingReader extends FilterReader {
+    private final MessageDigest messageDigest = TemplateSnapshot.newMessageDigest();
+    private byte[] bytes = new byte[0];
+    private boolean drained;
+
+    private DigestingReader(Reader reader) {
+      super(reader);
+    }
+
+    @Override
+    public int read() throws IOException {
+      char[] buffer = new char[1];
+      return read(buffer, 0, 1) < 0 ? -1 : buffer[0];
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count > 0) {
+        if (bytes.length < 2 * count) {
+          bytes = new byte[2 * count];
+        }
+        for (int index = 0; index < count; index++) {
+          bytes[2 * index] = (byte) (buffer[offset + index] >>> 8);
+          bytes[2 * index + 1] = (byte) buffer[offset + index];
+        }
+        messageDigest.update(bytes, 0, 2 * count);
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+      char[] buffer = new char[(int) Math.min(count, 8192)];
+      long skipped = 0;
+      while (skipped < count) {
+        int read = read(buffer, 0, (int) Math.min(count - skipped, buffer.length));
+        if (read < 0) {
+          break;
+        }
+        skipped += read;
+      }
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    /**
+     * Reads the rest of the document, which the parser may have left unread, before closing it.
+     */
+    @Override
+    public void close() throws IOException {
+      if (!drained) {
+        char[] buffer = new char[8192];
+        while (read(buffer, 0, buffer.length) >= 0) {
+          // hash the remainder
+        }
+        drained = true;
+      }
+      super.close();
+    }
+
+    /**
+     * Closes the document, if the parser has not, and returns its hash.
+     */
+    private byte[] digest() {
+      try {
+        close();
+        return messageDigest.digest();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private TemplateRegistry() { /* hide constructor */ }
+
+  public static TemplateRegistry of() {
+    return new TemplateRegistry();
+  }
+
+  /**
+   * Compiles the GraphML document supplied by the given {@code Reader} and registers the resulting
+   * template as the latest version of the given name.
+   *
+   * @param id the name of the template
+   * @param reader the Reader containing GraphML data representing the challenge graph
+   * @return the registered template
+   * @throws IllegalArgumentException if the name contains {@code @}
+   */
+  public Template register(String id, Reader reader) {
+    return register(id, reader, Template.SEARCH.TOPOLOGICAL);
+  }
+
+  /**
+   * Registers a template like {@link #register(String, Reader)}, whose sessions determine their next
+   * challenge with the given path search, see {@link Template#withSearch(Template.SEARCH)}.
+   *
+   * @param id the name of the template
+   * @param reader the Reader containing GraphML data representing the challenge graph
+   * @param search the path search of the template
+   * @return the registered template
+   * @throws IllegalArgumentException if the name contains {@code @}
+   */
+  public Template register(String id, Reader reader, Template.SEARCH search) {
+    return register(id, () -> compile(id, reader, search));
+  }
+
+  /**
+   * Registers the template compiled from the given GraphML file as the latest version of the given
+   * name, like {@link #register(String, Reader)}, but reads it from the given snapshot when the
+   * snapshot is up to date, and otherwise compiles the file and rewrites the snapshot.
+   *
+   * @param id the name of the template
+   * @param source the GraphML file representing the challenge graph
+   * @param snapshot the snapshot file, see {@link TemplateSnapshot}
+   * @return the registered template
+   * @throws IllegalArgumentException if the name contains {@code @}
+   */
+  public Template register(String id, Path source, Path snapshot) {
+    return register(id, source, snapshot, Template.SEARCH.TOPOLOGICAL);
+  }
+
+  /**
+   * Registers a template like {@link #register(String, Path, Path)}, whose sessions determine their
+   * next challenge with the given path search, see {@link Template#withSearch(Template.SEARCH)}.
+   *
+   * @param id the name of the template
+   * @param source the GraphML file representing the challenge graph
+   * @param snapshot the snapshot file, see {@link TemplateSnapshot}
+   * @param search the path search of the template
+   * @return the registered template
+   * @throws IllegalArgumentException if the name contains {@code @}
+   */
+  public Template register(String id, Path source, Path snapshot, Template.SEARCH search) {
+    return register(id, () -> {
+      byte[] sourceHash = TemplateSnapshot.hash(source);
+      return TemplateSnapshot.load(versionId(id, sourceHash), source, sourceHash, snapshot, search);
+    });
+  }
+
+  /**
+   * Returns the latest version of the template registered under the given name, compiling it from the
+   * GraphML document supplied by {@code readerSupplier} if, and only if, no version has been registered
+   * yet. Concurrent callers for the same name parse the document at most once, outside of any lock:
+   * the others wait for that compilation, while callers for other names proceed.
+   *
+   * @param id the name of the template
+   * @param readerSupplier supplies the GraphML document when the template must be compiled
+   * @return the shared, compiled template
+   * @throws IllegalArgumentException if the name contains {@code @}
+   */
+  public Template computeIfAbsent(String id, Supplier<Reader> readerSupplier) {
+    return computeIfAbsent(id, readerSupplier, Template.SEARCH.TOPOLOGICAL);
+  }
+
+  /**
+   * Returns the latest version of the template registered under the given name, like
+   * {@link #computeIfAbsent(String, Supplier)}, compiling it with the given path search if no version
+   * has been registered yet. A version already registered keeps its own search.
+   *
+   * @param id the name of the template
+   * @param readerSupplier supplies the GraphML document when the template must be compiled
+   * @param search the path search of the template, if it must be compiled
+   * @return the shared, compiled template
+   * @throws IllegalArgumentException if the name contains {@code @}
+   */
+  public Template computeIfAbsent(String id, Supplier<Reader> readerSupplier, Template.SEARCH search) {
+    Version latest = snapshot.latestByName.get(id);
+    if (latest != null) {
+      return latest.template;
+    }
+    checkName(id);
+    CompletableFuture<Template> compilation;
+    long number = 0;
+    synchronized (this) {
+      latest = snapshot.latestByName.get(id);
+      if (latest != null) {
+        return latest.template;
+      }
+      compilation = compilations.get(id);
+      if (compilation == null) {
+        compilation = new CompletableFuture<>();
+        compilations.put(id, compilation);
+        number = ++registrations;
+      }
+    }
+    if (number == 0) {
+      try {
+        return compilation.join(); // compiled by another caller
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException cause ? cause : e;
+      }
+    }
+    try {
+      Template compiled = compile(id, readerSupplier.get(), search); // outside of the lock
+      Template template;
+      synchronized (this) {
+        template = install(new Version(id, number, compiled));
+        compilations.remove(id);
+      }
+      compilation.complete(template);
+      return template;
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        compilations.remove(id);
+      }
+      compilation.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the version of a template identified by the given identifier, as long as it is registered,
+   * or the latest version of the template registered under the given name. Never locks.
+   *
+   * @param id the identifier of a version, or the name of a template
+   * @return the shared, compiled template
+   * @throws NoSuchElementException if no version is registered under the identifier or name
+   */
+  public Template get(String id) {
+    return resolve(snapshot, id).template;
+  }
+
+  /**
+   * Acquires a lease of the version of a template identified by the given identifier or, given the name
+   * of a template, of its latest version, for a new session. Never locks.
+   *
+   * @param id the identifier of a version, or the name of a template
+   * @return the lease, which must be closed once the session has ended
+   * @throws NoSuchElementException if no version is registered under the identifier or name
+   */
+  public Lease acquire(String id) {
+    while (true) {
+      Version version = resolve(snapshot, id);
+      int leases = version.leases.get();
+      if (leases >= 0 && version.leases.compareAndSet(leases, leases + 1)) {
+        version.leased = true;
+        return new Lease(version);
+      }
+      if (leases < 0 && isVersionId(id)) {
+        throw new NoSuchElementException(id); // dropped concurrently
+      }
+      Thread.onSpinWait(); // dropped concurrently, so superseded: the next snapshot has a newer version
+    }
+  }
+
+  /**
+   * Wraps the given store so that it holds a lease of the template version of each session it
+   * creates, until the session leaves the given store, whether removed, through the wrapper or not,
+   * expired or evicted: the version of an ongoing session is thus never dropped. Sessions the store
+   * already held are not leased.
+   *
+   * @param sessionStore the store to wrap
+   * @return a store holding the sessions of the given one
+   */
+  public SessionStore pin(SessionStore sessionStore) {
+    PinningSessionStore pinningSessionStore = new PinningSessionStore(sessionStore);
+    sessionStore.addRemovalListener((sessionId, state) -> pinningSessionStore.release(sessionId, StateCodec.getTemplateId(state)));
+    return pinningSessionStore;
+  }
+
+  /**
+   * Returns the identifiers of the registered versions of the template registered under the given name,
+   * oldest first: the latest version, and the superseded versions that are still leased or were never
+   * leased.
+   *
+   * @param id the name of the template
+   * @return the identifiers of the versions, empty if no template is registered under the name
+   */
+  public List<String> getVersionIds(String id) {
+    List<Version> versions = new ArrayList<>();
+    for (Version version : snapshot.versionsById.values()) {
+      if (version.name.equals(id)) {
+        versions.add(version);
+      }
+    }
+    versions.sort((first, second) -> Long.compare(first.number, second.number));
+    return versions.stream().map(version -> version.template.getId()).toList();
+  }
+
+  private Template register(String id, Supplier<Template> compiler) {
+    checkName(id);
+    long number;
+    synchronized (this) {
+      number = ++registrations;
+    }
+    Template template = compiler.get(); // outside of the lock, however long it takes
+    return install(new Version(id, number, template));
+  }
+
+  /**
+   * Compiles the GraphML document supplied by the given {@code Reader} into a version of the given name,
+   * identified by the hash of the document's characters.
+   */
+  private static Template compile(String id, Reader reader, Template.SEARCH search) {
+    DigestingReader digestingReader = new DigestingReader(reader);
+    Template template = Template.of(id, digestingReader);
+    return template.withId(versionId(id, digestingReader.digest())).withSearch(search);
+  }
+
+  private static void checkName(String id) {
+    if (isVersionId(id)) {
+      throw new IllegalArgumentException("template name " + id + " contains @");
+    }
+  }
+
+  private static boolean isVersionId(String id) {
+    return id.indexOf('@') >= 0;
+  }
+
+  private static String versionId(String id, byte[] sourceHash) {
+    return id + "@" + HexFormat.of().formatHex(sourceHash, 0, VERSION_HASH_LENGTH);
+  }
+
+  private static Version resolve(Snapshot snapshot, String id) {
+    Version version = isVersionId(id) ? snapshot.versionsById.get(id) : snapshot.latestByName.get(id);
+    if (version == null) {
+      throw new NoSuchElementException(id);
+    }
+    return version;
+  }
+
+  /**
+   * Installs a new version, superseding the latest one unless the new version is itself older, which
+   * happens when concurrent registrations complete out of order. A version of the same content as one
+   * still registered is not added: the registered one, and its template unless the search changed, is
+   * reused so that its leases carry over.
+   *
+   * @return the template of the installed version
+   */
+  private synchronized Template install(Version version) {
+    Version latest = snapshot.latestByName.get(version.name);
+    Version installed = snapshot.versionsById.get(version.template.getId());
+    if (installed == null) {
+      installed = version;
+    } else if (installed.number < version.number) {
+      installed.number = version.number;
+      if (installed.template.getSearch() != version.template.getSearch()) {
+        installed.template = version.template; // same graph, searched differently from now on
+      }
+    }
+    if (latest != null && latest.number >= installed.number) {
+      return installed.template; // already the latest, or superseded by a later registration
+    }
+    Map<String, Version> versionsById = new HashMap<>(snapshot.versionsById);
+    Map<String, Version> latestByName = new HashMap<>(snapshot.latestByName);
+    versionsById.put(installed.template.getId(), installed);
+    latestByName.put(installed.name, installed);
+    installed.superseded = false;
+    snapshot = new Snapshot(versionsById, latestByName);
+    if (latest != null) {
+      latest.superseded = true;
+      if (latest.leased && latest.leases.get() == 0) {
+        drop(latest);
+      }
+    }
+    return installed.template;
+  }
+
+  private synchronized void drop(Version version) {
+    if (!version.superseded || !version.leases.compareAndSet(0, -1)) {
+      return; // leased again, latest again, or already dropped
+    }
+    Map<String, Version> versionsById = new HashMap<>(snapshot.versionsById);
+    versionsById.remove(version.template.getId(), version);
+    snapshot = new Snapshot(versionsById, snapshot.latestByName);
+  }
+}
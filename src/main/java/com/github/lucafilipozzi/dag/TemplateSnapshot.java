@@ -0,0 +1,316 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary on-disk snapshot of a compiled {@link Template}.
+ * <p>
+ * A snapshot holds the template exactly as compiled: node and challenge identifiers, challenge
+ * codes, START/END, the CSR adjacency, the topological order and the path search. Reading one back maps the file and
+ * bulk-copies each section into place, so neither the GraphML parse nor any of the derivations that
+ * follow it are repeated. Each snapshot records the SHA-256 hash of the GraphML document it was
+ * compiled from, so that a snapshot left behind by an earlier version of that document is detected,
+ * and ends with a CRC32C checksum of everything before it. All integers are big-endian. The layout
+ * of version 2 is:
+ * <pre>
+ *   magic          4 bytes  'D' 'A' 'G' 'T'
+ *   version        int      2
+ *   sourceHash     32 bytes SHA-256 of the GraphML document
+ *   id             string   template identifier
+ *   search         int      ordinal of the {@link Template.SEARCH}
+ *   nodeCount      int      n
+ *   edgeCount      int      e
+ *   challengeCount int      c
+ *   start, end     int      START and END nodes
+ *   nodeIds        n strings
+ *   challenges     c strings
+ *   challengeCodes n ints, challengeNodeOffsets c+1 ints, challengeNodes n ints
+ *   edgeOffsets    n+1 ints, edgeSources e ints, edgeTargets e ints, edgeOrder e ints
+ *   topological    n ints
+ *   edgeWeights    e doubles
+ *   checksum       int      CRC32C of all preceding bytes
+ * </pre>
+ * where a string is an int length followed by that many UTF-8 encoded bytes.
+ */
+public final class TemplateSnapshot {
+  private static final int MAGIC = 'D' << 24 | 'A' << 16 | 'G' << 8 | 'T';
+  private static final int VERSION = 2; // version 1 did not record the search
+  private static final int SOURCE_HASH_LENGTH = 32;
+  private static final Template.SEARCH[] SEARCHES = Template.SEARCH.values();
+
+  private TemplateSnapshot() { /* hide constructor */ }
+
+  /**
+   * Returns the template compiled from the given GraphML file, reading it from the given snapshot if the
+   * snapshot was written for the same content of that file, and otherwise compiling the file and replacing
+   * the snapshot. The template has the given identifier, whichever identifier the snapshot was written for.
+   *
+   * @param id the identifier of the template
+   * @param source the GraphML file representing the challenge graph
+   * @param snapshot the snapshot file, which need not exist
+   * @return the compiled template
+   * @throws UncheckedIOException if either file cannot be read or the snapshot cannot be written
+   * @throws IllegalArgumentException if the GraphML document is malformed or the graph is not acyclic
+   */
+  public static Template load(String id, Path source, Path snapshot) {
+    return load(id, source, snapshot, Template.SEARCH.TOPOLOGICAL);
+  }
+
+  /**
+   * Returns the template compiled from the given GraphML file, like {@link #load(String, Path, Path)},
+   * with the given path search. A snapshot recording another search is still up to date: the search
+   * shares the compiled form, see {@link Template#withSearch(Template.SEARCH)}.
+   *
+   * @param id the identifier of the template
+   * @param source the GraphML file representing the challenge graph
+   * @param snapshot the snapshot file, which need not exist
+   * @param search the path search of the template
+   * @return the compiled template
+   * @throws UncheckedIOException if either file cannot be read or the snapshot cannot be written
+   * @throws IllegalArgumentException if the GraphML document is malformed or the graph is not acyclic
+   */
+  public static Template load(String id, Path source, Path snapshot, Template.SEARCH search) {
+    return load(id, source, hash(source), snapshot, search);
+  }
+
+  /**
+   * Returns the template compiled from the given GraphML file, whose hash is given. Whether the snapshot
+   * is up to date depends on that hash alone: a snapshot written under another identifier is reused, and
+   * the template read from it given the requested identifier.
+   */
+  static Template load(String id, Path source, byte[] sourceHash, Path snapshot, Template.SEARCH search) {
+    if (Files.isRegularFile(snapshot)) {
+      try {
+        return read(snapshot, sourceHash).withId(id).withSearch(search);
+      } catch (IllegalArgumentException stale) {
+        // fall through and recompile
+      }
+    }
+    Template template = Template.of(id, source).withSearch(search);
+    write(template, sourceHash, snapshot);
+    return template;
+  }
+
+  /**
+   * Computes the source hash of a GraphML file, as recorded by {@link #write(Template, byte[], Path)}.
+   *
+   * @param source the GraphML file
+   * @return the SHA-256 hash of the file's content
+   * @throws UncheckedIOException if the file cannot be read
+   */
+  public static byte[] hash(Path source) {
+    try (InputStream inputStream = Files.newInputStream(source)) {
+      MessageDigest messageDigest = newMessageDigest();
+      byte[] buffer = new byte[8192];
+      for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+        messageDigest.update(buffer, 0, count);
+      }
+      return messageDigest.digest();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns a new SHA-256 digest, the hash of source hashes.
+   */
+  static MessageDigest newMessageDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every Java platform supports SHA-256
+    }
+  }
+
+  /**
+   * Writes a snapshot of the given template. The snapshot is written to a temporary file that then
+   * replaces {@code snapshot} atomically, so that readers never observe a partial snapshot.
+   *
+   * @param template the compiled template
+   * @param sourceHash the hash of the GraphML document the template was compiled from, see {@link #hash(Path)}
+   * @param snapshot the snapshot file
+   * @throws UncheckedIOException if the snapshot cannot be written
+   */
+  public static void write(Template template, byte[] sourceHash, Path snapshot) {
+    if (sourceHash.length != SOURCE_HASH_LENGTH) {
+      throw new IllegalArgumentException("source hash is not a SHA-256 hash");
+    }
+    int nodeCount = template.size();
+    int edgeCount = template.getEdgeTargets().length;
+    int challengeCount = template.getChallengeCount();
+    byte[] id = template.getId().getBytes(StandardCharsets.UTF_8);
+    byte[][] nodeIds = new byte[nodeCount][];
+    byte[][] challenges = new byte[challengeCount][];
+    int[] challengeCodes = new int[nodeCount];
+    int length = 4 + 4 + SOURCE_HASH_LENGTH + 4 + id.length + 6 * 4;
+    for (int node = 0; node < nodeCount; node++) {
+      nodeIds[node] = template.getNodeId(node).getBytes(StandardCharsets.UTF_8);
+      challengeCodes[node] = template.getChallengeCode(node);
+      length += 4 + nodeIds[node].length;
+    }
+    for (int code = 0; code < challengeCount; code++) {
+      challenges[code] = template.getChallengeName(code).getBytes(StandardCharsets.UTF_8);
+      length += 4 + challenges[code].length;
+    }
+    length += 4 * (4 * nodeCount + challengeCount + 2 + 3 * edgeCount) + 8 * edgeCount + 4;
+
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    buffer.putInt(MAGIC).putInt(VERSION).put(sourceHash);
+    putBytes(buffer, id);
+    buffer.putInt(template.getSearch().ordinal());
+    buffer.putInt(nodeCount).putInt(edgeCount).putInt(challengeCount).putInt(template.getStart()).putInt(template.getEnd());
+    for (byte[] nodeId : nodeIds) {
+      putBytes(buffer, nodeId);
+    }
+    for (byte[] challenge : challenges) {
+      putBytes(buffer, challenge);
+    }
+    buffer.asIntBuffer()
+      .put(challengeCodes)
+      .put(template.getChallengeNodeOffsets())
+      .put(template.getChallengeNodes())
+      .put(template.getEdgeOffsets())
+      .put(template.getEdgeSources())
+      .put(template.getEdgeTargets())
+      .put(template.getEdgeOrder())
+      .put(template.getTopologicalOrder());
+    buffer.position(buffer.position() + 4 * (4 * nodeCount + challengeCount + 2 + 3 * edgeCount));
+    buffer.asDoubleBuffer().put(template.getEdgeWeights());
+    buffer.position(buffer.position() + 8 * edgeCount);
+    CRC32C crc32c = new CRC32C();
+    crc32c.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) crc32c.getValue());
+    buffer.flip();
+
+    try {
+      Path directory = snapshot.toAbsolutePath().getParent();
+      Path temporary = Files.createTempFile(directory, snapshot.getFileName().toString(), ".tmp");
+      try {
+        try (FileChannel fileChannel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+          while (buffer.hasRemaining()) {
+            fileChannel.write(buffer);
+          }
+          fileChannel.force(false);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads a snapshot written by {@link #write(Template, byte[], Path)}.
+   *
+   * @param snapshot the snapshot file
+   * @param sourceHash the expected hash of the GraphML document, see {@link #hash(Path)}
+   * @return the compiled template
+   * @throws UncheckedIOException if the snapshot cannot be read
+   * @throws IllegalArgumentException if the snapshot is corrupt, of an unsupported version, or was
+   *         compiled from a different GraphML document
+   */
+  public static Template read(Path snapshot, byte[] sourceHash) {
+    ByteBuffer buffer;
+    try (FileChannel fileChannel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    try {
+      if (buffer.getInt() != MAGIC) {
+        throw new IllegalArgumentException("not a template snapshot");
+      }
+      if (buffer.getInt() != VERSION) {
+        throw new IllegalArgumentException("unsupported version " + buffer.getInt(4));
+      }
+      int checksumOffset = buffer.limit() - 4;
+      CRC32C crc32c = new CRC32C();
+      crc32c.update(buffer.duplicate().position(0).limit(checksumOffset));
+      if ((int) crc32c.getValue() != buffer.getInt(checksumOffset)) {
+        throw new IllegalArgumentException("corrupt template snapshot");
+      }
+      byte[] recordedSourceHash = new byte[SOURCE_HASH_LENGTH];
+      buffer.get(recordedSourceHash);
+      if (!Arrays.equals(recordedSourceHash, sourceHash)) {
+        throw new IllegalArgumentException("stale template snapshot");
+      }
+      String id = getString(buffer);
+      int search = buffer.getInt();
+      if (search < 0 || search >= SEARCHES.length) {
+        throw new IllegalArgumentException("corrupt template snapshot");
+      }
+      int nodeCount = buffer.getInt();
+      int edgeCount = buffer.getInt();
+      int challengeCount = buffer.getInt();
+      int start = buffer.getInt();
+      int end = buffer.getInt();
+      String[] nodeIds = new String[nodeCount];
+      for (int node = 0; node < nodeCount; node++) {
+        nodeIds[node] = getString(buffer);
+      }
+      String[] challenges = new String[challengeCount];
+      for (int code = 0; code < challengeCount; code++) {
+        challenges[code] = getString(buffer);
+      }
+      int[] challengeCodes = new int[nodeCount];
+      int[] challengeNodeOffsets = new int[challengeCount + 1];
+      int[] challengeNodes = new int[nodeCount];
+      int[] edgeOffsets = new int[nodeCount + 1];
+      int[] edgeSources = new int[edgeCount];
+      int[] edgeTargets = new int[edgeCount];
+      int[] edgeOrder = new int[edgeCount];
+      int[] topologicalOrder = new int[nodeCount];
+      double[] edgeWeights = new double[edgeCount];
+      buffer.asIntBuffer()
+        .get(challengeCodes)
+        .get(challengeNodeOffsets)
+        .get(challengeNodes)
+        .get(edgeOffsets)
+        .get(edgeSources)
+        .get(edgeTargets)
+        .get(edgeOrder)
+        .get(topologicalOrder);
+      buffer.position(buffer.position() + 4 * (4 * nodeCount + challengeCount + 2 + 3 * edgeCount));
+      buffer.asDoubleBuffer().get(edgeWeights);
+      if (buffer.position() + 8 * edgeCount != checksumOffset) {
+        throw new IllegalArgumentException("corrupt template snapshot");
+      }
+      return new Template(id, nodeIds, challenges, challengeCodes, challengeNodeOffsets, challengeNodes,
+        start, end, edgeOffsets, edgeSources, edgeTargets, edgeWeights, edgeOrder, topologicalOrder)
+        .withSearch(SEARCHES[search]);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+      throw new IllegalArgumentException("truncated template snapshot", e);
+    }
+  }
+
+  private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+    buffer.putInt(bytes.length).put(bytes);
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IllegalArgumentException("truncated template snapshot");
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
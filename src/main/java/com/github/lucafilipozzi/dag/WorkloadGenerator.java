@@ -0,0 +1,228 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random layered challenge graphs, as GraphML, for load testing.
+ * <p>
+ * The nodes other than START and END are laid out in layers of at most the configured width. START
+ * leads to every node of the first layer and every node of the last layer leads to END; every other
+ * node leads to {@code fanOut} random nodes of the next layer, and every node that would otherwise
+ * have no predecessor is given one, so that every node lies on some START to END path. Each node is
+ * given a challenge drawn from names over the configured alphabet: with the configured duplicate
+ * density, a challenge already given to another node is reused, so that one update covers several
+ * nodes, as in production templates.
+ * <p>
+ * Generators are immutable; each {@code with} method returns a new generator. The same seed and
+ * settings always produce the same graph.
+ */
+public final class WorkloadGenerator {
+  /**
+   * The distributions of edge weights.
+   */
+  public enum WEIGHTS {
+    CONSTANT, // every edge weighs the maximum weight
+    UNIFORM,  // uniform between 1 and the maximum weight
+    SKEWED    // geometric: mostly light edges, with a few heavy ones up to the maximum weight
+  }
+
+  private final long seed;
+  private int nodeCount = 100;
+  private int layerWidth = 10;
+  private int fanOut = 2;
+  private WEIGHTS weights = WEIGHTS.UNIFORM;
+  private long maximumWeight = 10;
+  private String alphabet = "ABCDEFGH";
+  private double duplicateDensity = 0.5;
+
+  private WorkloadGenerator(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Creates a generator of graphs of 100 nodes, in layers of 10, with a fan-out of 2, weights uniform
+   * between 1 and 10, challenges over the alphabet {@code ABCDEFGH} and a duplicate density of 0.5.
+   *
+   * @param seed the seed of the random graph
+   * @return a new generator
+   */
+  public static WorkloadGenerator of(long seed) {
+    return new WorkloadGenerator(seed);
+  }
+
+  private WorkloadGenerator copy() {
+    WorkloadGenerator copy = new WorkloadGenerator(seed);
+    copy.nodeCount = nodeCount;
+    copy.layerWidth = layerWidth;
+    copy.fanOut = fanOut;
+    copy.weights = weights;
+    copy.maximumWeight = maximumWeight;
+    copy.alphabet = alphabet;
+    copy.duplicateDensity = duplicateDensity;
+    return copy;
+  }
+
+  /**
+   * @param nodeCount the number of nodes other than START and END; at least one
+   * @param layerWidth the maximum number of nodes of a layer; at least one
+   */
+  public WorkloadGenerator withNodes(int nodeCount, int layerWidth) {
+    if (nodeCount < 1 || layerWidth < 1) {
+      throw new IllegalArgumentException("nodeCount and layerWidth must be positive");
+    }
+    WorkloadGenerator copy = copy();
+    copy.nodeCount = nodeCount;
+    copy.layerWidth = layerWidth;
+    return copy;
+  }
+
+  /**
+   * @param fanOut the number of edges leaving each node towards the next layer; at least one
+   */
+  public WorkloadGenerator withFanOut(int fanOut) {
+    if (fanOut < 1) {
+      throw new IllegalArgumentException("fanOut must be positive");
+    }
+    WorkloadGenerator copy = copy();
+    copy.fanOut = fanOut;
+    return copy;
+  }
+
+  /**
+   * @param weights the distribution of edge weights
+   * @param maximumWeight the maximum edge weight; at least one
+   */
+  public WorkloadGenerator withWeights(WEIGHTS weights, long maximumWeight) {
+    if (maximumWeight < 1) {
+      throw new IllegalArgumentException("maximumWeight must be positive");
+    }
+    WorkloadGenerator copy = copy();
+    copy.weights = weights;
+    copy.maximumWeight = maximumWeight;
+    return copy;
+  }
+
+  /**
+   * @param alphabet the letters of challenge names, whose first letter is the prefix that
+   *                 {@link MyGraph#getChallenges()} groups challenges by; at least two, letters or digits only
+   * @param duplicateDensity the probability, between 0 and 1, that a node reuses the challenge of another node
+   */
+  public WorkloadGenerator withChallenges(String alphabet, double duplicateDensity) {
+    if (alphabet.length() < 2 || !alphabet.chars().allMatch(Character::isLetterOrDigit) || !(duplicateDensity >= 0 && duplicateDensity <= 1)) {
+      throw new IllegalArgumentException("alphabet must be at least two letters or digits and duplicateDensity between 0 and 1");
+    }
+    WorkloadGenerator copy = copy();
+    copy.alphabet = alphabet;
+    copy.duplicateDensity = duplicateDensity;
+    return copy;
+  }
+
+  /**
+   * Writes the graph as GraphML.
+   *
+   * @param writer the Writer to which the graph is output
+   * @throws UncheckedIOException if the Writer fails
+   */
+  public void write(Writer writer) {
+    Random random = new Random(seed);
+    String[] nodeIds = new String[nodeCount];
+    List<String> challenges = new ArrayList<>();
+    for (int node = 0; node < nodeCount; node++) {
+      String challenge;
+      if (!challenges.isEmpty() && random.nextDouble() < duplicateDensity) {
+        challenge = challenges.get(random.nextInt(challenges.size()));
+      } else {
+        challenge = newChallenge(random, challenges.size());
+        challenges.add(challenge);
+      }
+      nodeIds[node] = challenge + "-" + node;
+    }
+    try {
+      writer.write("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n");
+      writer.write("  <key id=\"d0\" for=\"edge\" attr.name=\"weight\" attr.type=\"long\" />\n");
+      writer.write("  <graph edgedefault=\"directed\">\n");
+      writer.write("    <node id=\"START\" />\n");
+      for (String nodeId : nodeIds) {
+        writer.write("    <node id=\"" + nodeId + "\" />\n");
+      }
+      writer.write("    <node id=\"END\" />\n");
+      int layerCount = (nodeCount + layerWidth - 1) / layerWidth;
+      for (int node = 0; node < Math.min(layerWidth, nodeCount); node++) {
+        writeEdge(writer, "START", nodeIds[node], random);
+      }
+      for (int layer = 0; layer + 1 < layerCount; layer++) {
+        int first = layer * layerWidth;
+        int next = first + layerWidth;
+        int nextWidth = Math.min(layerWidth, nodeCount - next);
+        boolean[] targeted = new boolean[nextWidth];
+        for (int node = first; node < next; node++) {
+          boolean[] chosen = new boolean[nextWidth];
+          for (int edge = 0; edge < Math.min(fanOut, nextWidth); edge++) {
+            int target = random.nextInt(nextWidth);
+            while (chosen[target]) {
+              target = (target + 1) % nextWidth;
+            }
+            chosen[target] = targeted[target] = true;
+            writeEdge(writer, nodeIds[node], nodeIds[next + target], random);
+          }
+        }
+        for (int target = 0; target < nextWidth; target++) {
+          if (!targeted[target]) {
+            writeEdge(writer, nodeIds[first + random.nextInt(layerWidth)], nodeIds[next + target], random);
+          }
+        }
+      }
+      for (int node = (layerCount - 1) * layerWidth; node < nodeCount; node++) {
+        writeEdge(writer, nodeIds[node], "END", random);
+      }
+      writer.write("  </graph>\n");
+      writer.write("</graphml>\n");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Generates the graph and compiles it.
+   *
+   * @param id the identifier of the template
+   * @return the compiled template
+   */
+  public Template generate(String id) {
+    StringWriter writer = new StringWriter();
+    write(writer);
+    return Template.of(id, new StringReader(writer.toString()));
+  }
+
+  /**
+   * Returns a challenge name over the alphabet, distinct from the {@code index} names returned before: a
+   * random prefix, then the digits of {@code index} in the base of the alphabet, at least two of them.
+   */
+  private String newChallenge(Random random, int index) {
+    StringBuilder challenge = new StringBuilder();
+    challenge.append(alphabet.charAt(random.nextInt(alphabet.length()))); // the prefix
+    for (int rest = index; rest > 0 || challenge.length() < 3; rest /= alphabet.length()) {
+      challenge.append(alphabet.charAt(rest % alphabet.length()));
+    }
+    return challenge.toString();
+  }
+
+  private void writeEdge(Writer writer, String source, String target, Random random) throws IOException {
+    long weight = switch (weights) {
+      case CONSTANT -> maximumWeight;
+      case UNIFORM -> 1 + (long) (random.nextDouble() * maximumWeight);
+      case SKEWED -> Math.min(maximumWeight, 1 + (long) (-Math.log(1 - random.nextDouble()) * Math.sqrt(maximumWeight)));
+    };
+    writer.write("    <edge source=\"" + source + "\" target=\"" + target + "\">\n");
+    writer.write("      <data key=\"d0\">" + weight + "</data>\n");
+    writer.write("    </edge>\n");
+  }
+}
@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
 import java.io.InputStreamReader;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
@@ -102,4 +103,32 @@ class APITest {
     assertEquals("invalid", api.post("failure"));
     assertEquals("invalid", api.post("garbage"));
   }
+
+  @Test
+  void test_next_and_report() {
+    assertEquals(Outcome.continueWith("DVP"), api.next());
+    assertEquals(Outcome.continueWith("DSC"), api.report("failure"));
+    assertEquals(Outcome.invalid(), api.report("garbage"));
+    assertEquals(Outcome.failure(), api.report("failure"));
+    assertEquals(Outcome.failure(), api.next());
+    assertEquals(Outcome.invalid(), api.report("success"));
+  }
+
+  @Test
+  void test_next_and_report_undecodableStates() {
+    TemplateRegistry registry = TemplateRegistry.of();
+    TemplateRegistry otherRegistry = TemplateRegistry.of();
+    Template otherTemplate = otherRegistry.computeIfAbsent("prototype", () -> new InputStreamReader(
+      Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+    SessionStore sessionStore = InMemorySessionStore.of();
+    sessionStore.create("alice", new byte[] {1, 2, 3}); // malformed
+    API.of(sessionStore, "bob", otherTemplate, User.of(Set.of("DVP", "DSC", "TSC"))); // unknown template
+    for (String sessionId : List.of("alice", "bob")) {
+      API sessionApi = API.of(sessionStore, sessionId, registry);
+      assertEquals(Outcome.invalid(), sessionApi.next());
+      assertNull(sessionApi.get());
+      assertEquals(Outcome.invalid(), sessionApi.report("success"));
+      assertEquals(List.of(Outcome.invalid(), Outcome.invalid()), sessionApi.report(List.of("success", "failure")));
+    }
+  }
 }
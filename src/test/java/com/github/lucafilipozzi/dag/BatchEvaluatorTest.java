@@ -0,0 +1,130 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchEvaluatorTest {
+  private static final List<String> STATUSES = List.of("success", "failure", "garbage");
+  private TemplateRegistry registry;
+  private Template template;
+
+  @BeforeEach
+  void setUp() {
+    registry = TemplateRegistry.of();
+    template = registry.computeIfAbsent("prototype", () ->
+      new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+  }
+
+  private SessionStore newSessionStore(int sessions) {
+    SessionStore sessionStore = InMemorySessionStore.of();
+    for (int session = 0; session < sessions; session++) {
+      API.of(sessionStore, "session-" + session, template, User.of(Set.of("DVP", "DSC", "TSC")));
+    }
+    return sessionStore;
+  }
+
+  private static List<BatchEvaluator.Report> randomReports(Random random, int sessions, int size) {
+    List<BatchEvaluator.Report> reports = new ArrayList<>();
+    for (int index = 0; index < size; index++) {
+      reports.add(BatchEvaluator.Report.of("session-" + random.nextInt(sessions + 1), STATUSES.get(random.nextInt(STATUSES.size()))));
+    }
+    return reports; // session-<sessions> does not exist
+  }
+
+  private void assertMatchesSequential(BatchEvaluator batchEvaluator, SessionStore batchStore, int sessions, List<BatchEvaluator.Report> reports) {
+    SessionStore sequentialStore = newSessionStore(sessions);
+    List<String> expected = new ArrayList<>();
+    for (BatchEvaluator.Report report : reports) {
+      expected.add(API.of(sequentialStore, report.getSessionId(), registry).report(report.getStatus()).toString());
+    }
+    assertEquals(expected, batchEvaluator.report(reports).stream().map(Outcome::toString).toList());
+    for (int session = 0; session < sessions; session++) {
+      assertEquals(
+        API.of(sequentialStore, "session-" + session, registry).next().toString(),
+        API.of(batchStore, "session-" + session, registry).next().toString());
+    }
+  }
+
+  @Test
+  void test_report_forkJoinPool() {
+    Random random = new Random(16);
+    SessionStore sessionStore = newSessionStore(100);
+    BatchEvaluator batchEvaluator = BatchEvaluator.of(sessionStore, registry, ForkJoinPool.commonPool());
+    assertMatchesSequential(batchEvaluator, sessionStore, 100, randomReports(random, 100, 1_000));
+  }
+
+  @Test
+  void test_report_threadPool() {
+    Random random = new Random(17);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      SessionStore sessionStore = newSessionStore(10);
+      BatchEvaluator batchEvaluator = BatchEvaluator.of(sessionStore, registry, executor);
+      assertMatchesSequential(batchEvaluator, sessionStore, 10, randomReports(random, 10, 200));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void test_report_empty() {
+    BatchEvaluator batchEvaluator = BatchEvaluator.of(newSessionStore(1), registry, Runnable::run);
+    assertEquals(List.of(), batchEvaluator.report(List.of()));
+  }
+
+  @Test
+  void test_report_failingSessions() {
+    SessionStore sessionStore = newSessionStore(2);
+    sessionStore.create("malformed", new byte[] {1, 2, 3});
+    SessionStore failingStore = new SessionStore() {
+      @Override
+      public Optional<Versioned> get(String sessionId) {
+        if (sessionId.equals("session-1")) {
+          throw new IllegalStateException("store unavailable");
+        }
+        return sessionStore.get(sessionId);
+      }
+
+      @Override
+      public boolean create(String sessionId, byte[] state) {
+        return sessionStore.create(sessionId, state);
+      }
+
+      @Override
+      public boolean replace(String sessionId, long expectedVersion, byte[] state) {
+        return sessionStore.replace(sessionId, expectedVersion, state);
+      }
+
+      @Override
+      public void remove(String sessionId) {
+        sessionStore.remove(sessionId);
+      }
+
+      @Override
+      public void addRemovalListener(RemovalListener listener) {
+        sessionStore.addRemovalListener(listener);
+      }
+    };
+    BatchEvaluator batchEvaluator = BatchEvaluator.of(failingStore, registry, ForkJoinPool.commonPool());
+    List<Outcome> outcomes = batchEvaluator.report(List.of(
+      BatchEvaluator.Report.of("session-0", "failure"),
+      BatchEvaluator.Report.of("session-1", "failure"),
+      BatchEvaluator.Report.of("malformed", "success"),
+      BatchEvaluator.Report.of("session-1", "success"),
+      BatchEvaluator.Report.of("session-0", "failure")));
+    assertEquals(List.of(Outcome.continueWith("DSC"), Outcome.invalid(), Outcome.invalid(), Outcome.invalid(), Outcome.failure()), outcomes);
+  }
+}
@@ -0,0 +1,37 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.jgrapht.Graph;
+import org.jgrapht.alg.shortestpath.AllDirectedPaths;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.MaskSubgraph;
+import org.junit.jupiter.api.Test;
+
+class DagFrontierTest {
+  @Test
+  void test_getNodes_matchesAllDirectedPaths() {
+    Random random = new Random(42);
+    for (int round = 0; round < 500; round++) {
+      Template template = IncrementalShortestPathTest.randomTemplate(random, 2 + random.nextInt(20), 1 + random.nextInt(3));
+      byte[] statuses = IncrementalShortestPathTest.randomStatuses(random, template);
+      Graph<Integer, DefaultWeightedEdge> graph = IncrementalShortestPathTest.toGraph(template);
+      Graph<Integer, DefaultWeightedEdge> maskSubgraph = new MaskSubgraph<>(graph, node -> statuses[node] == Node.FAILURE, edge -> false);
+      Set<Integer> expected = new TreeSet<>();
+      new AllDirectedPaths<>(maskSubgraph)
+        .getAllPaths(template.getStart(), template.getEnd(), false, graph.edgeSet().size())
+        .forEach(graphPath -> graphPath.getVertexList().stream()
+          .filter(node -> statuses[node] == Node.UNTRIED)
+          .findFirst()
+          .ifPresent(expected::add));
+      Set<Integer> actual = new TreeSet<>();
+      Arrays.stream(DagFrontier.getNodes(template, statuses)).forEach(actual::add);
+      assertEquals(expected, actual);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DecisionTreeTest {
+  private Template template;
+  private User user;
+
+  @BeforeEach
+  void setUp() {
+    template = Template.of(new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+    user = User.of(Set.of("DVP", "DSC", "TSC"));
+  }
+
+  @Test
+  void test_compile_matchesMyGraph() {
+    DecisionTree tree = DecisionTree.compile(template, user, 100).orElseThrow();
+    Random random = new Random(42);
+    for (int round = 0; round < 100; round++) {
+      MyGraph myGraph = MyGraph.of(template, user);
+      int state = tree.getInitialState();
+      assertEquals(myGraph.next(), tree.getOutcome(state));
+      while (tree.getOutcome(state).getKind() == Outcome.KIND.CONTINUE) {
+        String status = List.of("success", "failure").get(random.nextInt(2));
+        Outcome outcome = myGraph.report(status);
+        state = tree.report(state, status);
+        assertEquals(outcome, tree.getOutcome(state));
+      }
+      assertEquals(DecisionTree.INVALID_STATE, tree.report(state, "success"));
+    }
+    assertEquals(DecisionTree.INVALID_STATE, tree.report(tree.getInitialState(), "garbage"));
+  }
+
+  @Test
+  void test_compile_maximumStates() {
+    int size = DecisionTree.compile(template, user, 100).orElseThrow().size();
+    assertTrue(DecisionTree.compile(template, user, size).isPresent());
+    assertTrue(DecisionTree.compile(template, user, size - 1).isEmpty());
+  }
+}
@@ -0,0 +1,222 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EventSourcedSessionStoreTest {
+  private TemplateRegistry registry;
+  private Template template;
+
+  @BeforeEach
+  void setUp() {
+    registry = TemplateRegistry.of();
+    template = registry.computeIfAbsent("prototype", () ->
+      new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+  }
+
+  private static List<EventLog.Record> records(EventLog eventLog) {
+    List<EventLog.Record> records = new ArrayList<>();
+    eventLog.replay(records::add);
+    return records;
+  }
+
+  private static List<EventLog.TYPE> types(EventLog eventLog) {
+    return records(eventLog).stream().map(EventLog.Record::getType).toList();
+  }
+
+  /**
+   * Runs random flows on the given store and returns the outcome of next() of every session.
+   */
+  private List<String> runFlows(SessionStore sessionStore, Random random, int sessions) {
+    for (int session = 0; session < sessions; session++) {
+      API.of(sessionStore, "session-" + session, template, User.of(Set.of("DVP", "DSC", "TSC")));
+    }
+    for (int step = 0; step < 4 * sessions; step++) {
+      API.of(sessionStore, "session-" + random.nextInt(sessions), registry).report(random.nextBoolean() ? "success" : "failure");
+    }
+    return outcomes(sessionStore, sessions);
+  }
+
+  private List<String> outcomes(SessionStore sessionStore, int sessions) {
+    List<String> outcomes = new ArrayList<>();
+    for (int session = 0; session < sessions; session++) {
+      outcomes.add(API.of(sessionStore, "session-" + session, registry).next().toString());
+    }
+    return outcomes;
+  }
+
+  @Test
+  void test_report_appendsStatusRecords() {
+    InMemoryEventLog eventLog = InMemoryEventLog.of();
+    SessionStore sessionStore = EventSourcedSessionStore.of(eventLog, registry::get, 100);
+    API api = API.of(sessionStore, "alice", template, User.of(Set.of("DVP", "DSC", "TSC")));
+    assertEquals("continue", api.post("success"));
+    assertEquals("continue", api.post("failure"));
+    assertEquals("invalid", api.post("garbage"));
+    assertEquals(List.of(EventLog.TYPE.SNAPSHOT, EventLog.TYPE.STATUS, EventLog.TYPE.STATUS), types(eventLog));
+    for (EventLog.Record record : records(eventLog).subList(1, 3)) {
+      assertEquals(1, record.getPayload().length); // one varint, whatever the size of the graph
+    }
+    assertEquals("TSC", api.get());
+  }
+
+  @Test
+  void test_snapshotInterval() {
+    InMemoryEventLog eventLog = InMemoryEventLog.of();
+    SessionStore sessionStore = EventSourcedSessionStore.of(eventLog, registry::get, 2);
+    API api = API.of(sessionStore, "alice", template, User.of(Set.of("DVP", "DSC", "TSC")));
+    api.post("success");
+    api.post("failure");
+    api.post("success");
+    assertEquals(List.of(EventLog.TYPE.SNAPSHOT, EventLog.TYPE.STATUS, EventLog.TYPE.SNAPSHOT, EventLog.TYPE.STATUS), types(eventLog));
+    eventLog.compact();
+    assertEquals(List.of(EventLog.TYPE.SNAPSHOT, EventLog.TYPE.STATUS), types(eventLog));
+    sessionStore.remove("alice");
+    eventLog.compact();
+    assertEquals(0, eventLog.size());
+  }
+
+  @Test
+  void test_recover_inMemory() {
+    InMemoryEventLog eventLog = InMemoryEventLog.of();
+    SessionStore sessionStore = EventSourcedSessionStore.of(eventLog, registry::get, 3);
+    List<String> expected = runFlows(sessionStore, new Random(17), 20);
+    EventSourcedSessionStore recovered = EventSourcedSessionStore.of(eventLog, registry::get, 3);
+    assertEquals(20, recovered.size());
+    assertEquals(expected, outcomes(recovered, 20));
+    for (int session = 0; session < 20; session++) {
+      String sessionId = "session-" + session;
+      assertEquals(sessionStore.get(sessionId).orElseThrow().getVersion(), recovered.get(sessionId).orElseThrow().getVersion());
+    }
+  }
+
+  @Test
+  void test_recover_segmentFile(@TempDir Path directory) throws IOException {
+    List<String> expected;
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory, 256, false)) {
+      expected = runFlows(EventSourcedSessionStore.of(eventLog, registry::get, 4), new Random(18), 20);
+      assertTrue(eventLog.getSegmentCount() > 1);
+    }
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory, 256, false)) {
+      assertEquals(expected, outcomes(EventSourcedSessionStore.of(eventLog, registry::get, 4), 20));
+      eventLog.compact();
+    }
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory, 1 << 20, true)) {
+      assertEquals(1, eventLog.getSegmentCount());
+      assertEquals(expected, outcomes(EventSourcedSessionStore.of(eventLog, registry::get, 4), 20));
+    }
+  }
+
+  @Test
+  void test_recover_tornTail(@TempDir Path directory) throws IOException {
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory)) {
+      API api = API.of(EventSourcedSessionStore.of(eventLog, registry::get, 100), "alice", template, User.of(Set.of("DVP", "DSC", "TSC")));
+      api.post("success");
+    }
+    Path segment;
+    try (Stream<Path> paths = Files.list(directory)) {
+      segment = paths.findFirst().orElseThrow();
+    }
+    long size = Files.size(segment);
+    Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND); // a record torn by a crash
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory)) {
+      assertEquals(size, Files.size(segment));
+      API api = API.of(EventSourcedSessionStore.of(eventLog, registry::get, 100), "alice", registry);
+      assertEquals("DSC", api.get());
+      assertEquals("continue", api.post("failure"));
+    }
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory)) {
+      assertEquals("TSC", API.of(EventSourcedSessionStore.of(eventLog, registry::get, 100), "alice", registry).get());
+    }
+  }
+
+  private static List<Path> files(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.list(directory)) {
+      return paths.sorted().toList();
+    }
+  }
+
+  /**
+   * Runs random flows on a log of many segments, removing some sessions, then compacts it, and returns
+   * the outcomes of the sessions, the segments before compaction, and the compacted segment.
+   */
+  private List<String> runAndCompact(Path directory, Path before, Path after) throws IOException {
+    List<String> expected;
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory, 256, false)) {
+      SessionStore sessionStore = EventSourcedSessionStore.of(eventLog, registry::get, 4);
+      runFlows(sessionStore, new Random(19), 20);
+      sessionStore.remove("session-0");
+      sessionStore.remove("session-1");
+      expected = outcomes(sessionStore, 20);
+      Files.createDirectories(before);
+      for (Path segment : files(directory)) {
+        Files.copy(segment, before.resolve(segment.getFileName()));
+      }
+      eventLog.compact();
+      Files.createDirectories(after);
+      for (Path segment : files(directory)) {
+        Files.copy(segment, after.resolve(segment.getFileName()));
+      }
+    }
+    return expected;
+  }
+
+  @Test
+  void test_recover_crashDuringCompaction(@TempDir Path directory, @TempDir Path copies) throws IOException {
+    List<String> expected = runAndCompact(directory, copies.resolve("before"), copies.resolve("after"));
+    Path compacted = files(copies.resolve("after")).get(0);
+    byte[] bytes = Files.readAllBytes(compacted);
+    for (Path file : files(directory)) {
+      Files.delete(file);
+    }
+    for (Path segment : files(copies.resolve("before"))) {
+      Files.copy(segment, directory.resolve(segment.getFileName()));
+    }
+    String name = compacted.getFileName().toString();
+    Path temporary = directory.resolve(name.substring(0, name.indexOf('.')) + ".compacting");
+    Files.write(temporary, Arrays.copyOf(bytes, bytes.length / 2)); // the compaction was interrupted halfway
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory, 256, false)) {
+      assertFalse(Files.exists(temporary));
+      assertEquals(expected, outcomes(EventSourcedSessionStore.of(eventLog, registry::get, 4), 20));
+    }
+  }
+
+  @Test
+  void test_recover_crashAfterCompaction(@TempDir Path directory, @TempDir Path copies) throws IOException {
+    List<String> expected = runAndCompact(directory, copies.resolve("before"), copies.resolve("after"));
+    for (Path segment : files(copies.resolve("before"))) {
+      Files.copy(segment, directory.resolve(segment.getFileName())); // the superseded segments were not yet deleted
+    }
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory, 256, false)) {
+      assertEquals(1, eventLog.getSegmentCount());
+      SessionStore sessionStore = EventSourcedSessionStore.of(eventLog, registry::get, 4);
+      assertEquals(expected, outcomes(sessionStore, 20));
+      assertEquals("invalid", expected.get(0));
+      for (int session = 2; session < 20; session++) {
+        API.of(sessionStore, "session-" + session, registry).report("failure"); // appended to the compacted segment
+      }
+      expected = outcomes(sessionStore, 20);
+    }
+    try (SegmentFileEventLog eventLog = SegmentFileEventLog.of(directory, 256, false)) {
+      assertEquals(expected, outcomes(EventSourcedSessionStore.of(eventLog, registry::get, 4), 20));
+    }
+  }
+}
@@ -0,0 +1,83 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GraphMLLoaderTest {
+  private static final String GRAPHML = """
+    <?xml version="1.0" encoding="UTF-8"?>
+    <graphml xmlns="http://graphml.graphdrawing.org/xmlns">
+      <key id="label" for="node" attr.name="label" attr.type="string"/>
+      <key id="w" for="edge" attr.name="weight" attr.type="double"><default>2.0</default></key>
+      <graph edgedefault="directed">
+        <node id="START"><data key="label">start</data></node>
+        <node id="END"/>
+        <edge source="START" target="AAA-1"><data key="w">0.5</data></edge>
+        <edge source="AAA-1" target="END"/>
+        <edge source="AAA-1" target="END"><data key="w">9.0</data></edge>
+        <edge source="START" target="END"><data key="w">7.0</data></edge>
+      </graph>
+    </graphml>
+    """;
+
+  private InputStream prototypeGraphInputStream() {
+    return Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"));
+  }
+
+  @Test
+  void test_load() {
+    Template template = Template.of("t", new StringReader(GRAPHML));
+    assertEquals(3, template.size());
+    assertEquals("AAA-1", template.getNodeId(2)); // created on demand by its first edge
+    assertArrayEquals(new int[] {0, 2, 1}, IncrementalShortestPathTest.shortestPath(template, new byte[3]));
+    double[] weights = new double[template.getEdgeWeights().length];
+    int[] edgeOrder = template.getEdgeOrder();
+    for (int edge = 0; edge < edgeOrder.length; edge++) {
+      weights[edge] = template.getEdgeWeights()[edgeOrder[edge]];
+    }
+    assertArrayEquals(new double[] {0.5, 2.0, 7.0}, weights); // default weight, repeated edge ignored
+  }
+
+  @Test
+  void test_load_sources_agree() throws IOException {
+    Template fromReader = Template.of("r", new InputStreamReader(prototypeGraphInputStream()));
+    Template fromInputStream = Template.of("i", prototypeGraphInputStream());
+    assertEquals(fromReader.size(), fromInputStream.size());
+    assertArrayEquals(fromReader.getEdgeOffsets(), fromInputStream.getEdgeOffsets());
+    assertArrayEquals(fromReader.getEdgeTargets(), fromInputStream.getEdgeTargets());
+    assertArrayEquals(fromReader.getEdgeWeights(), fromInputStream.getEdgeWeights());
+    User user = User.of(Set.of("DVP", "DSC", "TSC"));
+    assertEquals(MyGraph.of(fromReader, user).getChallenge(), MyGraph.of(fromInputStream, user).getChallenge());
+  }
+
+  @Test
+  void test_load_path(@TempDir Path directory) throws IOException {
+    Path path = directory.resolve("graph.xml");
+    try (InputStream inputStream = prototypeGraphInputStream()) {
+      Files.copy(inputStream, path);
+    }
+    Template fromPath = Template.of("p", path);
+    Template fromInputStream = Template.of("i", prototypeGraphInputStream());
+    assertArrayEquals(fromInputStream.getEdgeTargets(), fromPath.getEdgeTargets());
+    assertArrayEquals(fromInputStream.getEdgeWeights(), fromPath.getEdgeWeights());
+  }
+
+  @Test
+  void test_load_malformed() {
+    assertThrows(IllegalArgumentException.class, () -> Template.of("t", new StringReader("<graphml><graph>")));
+    assertThrows(IllegalArgumentException.class, () -> Template.of("t", new StringReader(GRAPHML.replace("0.5", "x"))));
+  }
+}
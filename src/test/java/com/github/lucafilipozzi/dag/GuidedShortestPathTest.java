@@ -0,0 +1,81 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class GuidedShortestPathTest {
+  private static final Template.SEARCH[] GUIDED = {Template.SEARCH.ASTAR, Template.SEARCH.BIDIRECTIONAL};
+
+  @Test
+  void test_getPath_matchesFullSearch() {
+    Random random = new Random(24);
+    for (int round = 0; round < 500; round++) {
+      int size = 2 + random.nextInt(60);
+      int fanOut = 1 + random.nextInt(4);
+      Template template = random.nextBoolean()
+        ? IncrementalShortestPathTest.tiedTemplate(random, size, fanOut)
+        : IncrementalShortestPathTest.randomTemplate(random, size, fanOut);
+      for (int step = 0; step < 10; step++) {
+        byte[] statuses = IncrementalShortestPathTest.randomStatuses(random, template);
+        int[] expected = IncrementalShortestPathTest.shortestPath(template, statuses);
+        for (Template.SEARCH search : GUIDED) {
+          assertArrayEquals(expected, GuidedShortestPath.getPath(template.withSearch(search), statuses, null), search.toString());
+        }
+      }
+    }
+  }
+
+  @Test
+  void test_flows_matchTopologicalSearch() {
+    Random random = new Random(25);
+    for (int round = 0; round < 200; round++) {
+      Template template = IncrementalShortestPathTest.tiedTemplate(random, 2 + random.nextInt(60), 1 + random.nextInt(4));
+      byte[] statuses = IncrementalShortestPathTest.randomStatuses(random, template);
+      long seed = random.nextLong();
+      String expected = flow(MyGraph.of(template, statuses.clone()), new Random(seed));
+      for (Template.SEARCH search : GUIDED) {
+        assertEquals(expected, flow(MyGraph.of(template.withSearch(search), statuses.clone()), new Random(seed)), search.toString());
+      }
+    }
+  }
+
+  @Test
+  void test_aStar_expandsFewerNodes() {
+    Template template = WorkloadGenerator.of(24).withNodes(2_000, 20).generate("generated");
+    MyGraph topological = MyGraph.of(template, new byte[template.size()]);
+    MyGraph aStar = MyGraph.of(template.withSearch(Template.SEARCH.ASTAR), new byte[template.size()]);
+    assertEquals(topological.next().getChallenge(), aStar.next().getChallenge());
+    assertTrue(aStar.getSearchVisits() < topological.getSearchVisits() / 10);
+  }
+
+  @Test
+  void test_withSearch() {
+    Template template = IncrementalShortestPathTest.tiedTemplate(new Random(26), 10, 2);
+    assertEquals(Template.SEARCH.TOPOLOGICAL, template.getSearch());
+    assertSame(template, template.withSearch(Template.SEARCH.TOPOLOGICAL));
+    Template aStar = template.withSearch(Template.SEARCH.ASTAR);
+    assertEquals(Template.SEARCH.ASTAR, aStar.getSearch());
+    assertEquals(template.getId(), aStar.getId());
+    assertSame(template.getEdgeTargets(), aStar.getEdgeTargets());
+    assertThrows(IllegalArgumentException.class, () -> GuidedShortestPath.getPath(template, new byte[template.size()], null));
+  }
+
+  /**
+   * Reports random results until the flow ends, returning the challenges presented and the final outcome.
+   */
+  private static String flow(MyGraph myGraph, Random random) {
+    StringBuilder outcomes = new StringBuilder();
+    while (myGraph.next().getKind() == Outcome.KIND.CONTINUE) {
+      outcomes.append(myGraph.next().getChallenge()).append(' ');
+      myGraph.report(random.nextBoolean() ? "success" : "failure");
+    }
+    return outcomes.append(myGraph.next()).toString();
+  }
+}
@@ -0,0 +1,113 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistogramMetricsSinkTest {
+  private API api;
+  private HistogramMetricsSink metricsSink;
+
+  @BeforeEach
+  void setUp() {
+    Template template = Template.of(new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+    metricsSink = HistogramMetricsSink.of();
+    api = API.of(template, User.of(Set.of("DVP", "DSC", "TSC"))).withMetricsSink(metricsSink);
+  }
+
+  @Test
+  void test_histogram_percentiles() {
+    HistogramMetricsSink.Histogram histogram = metricsSink.getStateSizes();
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    Random random = new Random(15);
+    long[] values = new long[10_000];
+    for (int index = 0; index < values.length; index++) {
+      values[index] = random.nextInt(1 << random.nextInt(30));
+      metricsSink.recordStateSize((int) values[index]);
+    }
+    Arrays.sort(values);
+    assertEquals(values.length, histogram.getCount());
+    for (double percentile : new double[] {1, 50, 90, 99, 99.9, 100}) {
+      long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+      long actual = histogram.getValueAtPercentile(percentile);
+      assertTrue(actual >= expected && actual <= expected + expected / 8 + 1, percentile + ": " + expected + " vs " + actual);
+    }
+  }
+
+  @Test
+  void test_api_metrics() {
+    assertEquals("DVP", api.next().getChallenge());
+    assertEquals("continue", api.report("success").toString());
+    assertEquals("continue", api.report("failure").toString());
+    assertEquals("failure", api.report("failure").toString());
+    assertEquals("invalid", api.report("success").toString());
+    assertEquals("invalid", api.report("garbage").toString());
+
+    assertEquals(1, metricsSink.getLatencies(MetricsSink.OPERATION.NEXT).getCount());
+    assertEquals(5, metricsSink.getLatencies(MetricsSink.OPERATION.REPORT).getCount());
+    assertEquals(5, metricsSink.getLatencies(MetricsSink.OPERATION.LOAD).getCount());
+    assertEquals(4, metricsSink.getLatencies(MetricsSink.OPERATION.UPDATE).getCount());
+    assertEquals(3, metricsSink.getLatencies(MetricsSink.OPERATION.SAVE).getCount());
+    assertEquals(3, metricsSink.getStateSizes().getCount());
+    assertEquals(1, metricsSink.getOutcomeCount(Outcome.KIND.FAILURE));
+    assertEquals(3, metricsSink.getOutcomeCount(Outcome.KIND.CONTINUE)); // including next()
+    assertEquals(2, metricsSink.getOutcomeCount(Outcome.KIND.INVALID));
+    assertEquals(0, metricsSink.getConflictCount());
+    assertTrue(metricsSink.getSearchVisits().getMean() > 0);
+  }
+
+  @Test
+  void test_noop() {
+    MetricsSink failing = new MetricsSink() {
+      @Override
+      public boolean isEnabled() {
+        return false;
+      }
+
+      @Override
+      public void recordLatency(OPERATION operation, long nanos) {
+        throw new AssertionError();
+      }
+    };
+    API quiet = api.withMetricsSink(failing);
+    assertEquals("DVP", quiet.next().getChallenge());
+    assertEquals("continue", quiet.report("success").toString());
+    assertFalse(MetricsSink.noop().isEnabled());
+  }
+
+  @Test
+  void test_jfr_events(@TempDir Path directory) throws Exception {
+    Path path = directory.resolve("recording.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(OperationEvent.class).withThreshold(Duration.ZERO);
+      recording.start();
+      api.withMetricsSink(MetricsSink.noop()).report("success");
+      recording.stop();
+      recording.dump(path);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(path);
+    assertTrue(Files.size(path) > 0);
+    List<String> operations = events.stream()
+      .filter(event -> event.getEventType().getName().equals("com.github.lucafilipozzi.dag.Operation"))
+      .map(event -> event.getString("operation"))
+      .toList();
+    assertEquals(List.of("LOAD", "SEARCH", "UPDATE", "SEARCH", "SAVE", "REPORT"), operations);
+  }
+}
@@ -0,0 +1,134 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStreamReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class InMemorySessionStoreTest {
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  void test_replace_checksVersion() {
+    SessionStore store = InMemorySessionStore.of();
+    assertTrue(store.create("alice", new byte[] {1}));
+    assertFalse(store.create("alice", new byte[] {2}));
+    assertTrue(store.replace("alice", 0L, new byte[] {3}));
+    assertFalse(store.replace("alice", 0L, new byte[] {4}));
+    assertEquals(1L, store.get("alice").orElseThrow().getVersion());
+    assertArrayEquals(new byte[] {3}, store.get("alice").orElseThrow().getState());
+    store.remove("alice");
+    assertTrue(store.get("alice").isEmpty());
+    assertFalse(store.replace("alice", 1L, new byte[] {5}));
+  }
+
+  @Test
+  void test_expireAfterAccess() {
+    SessionStore store = InMemorySessionStore.of(10, Duration.ofNanos(100), now::get);
+    store.create("alice", new byte[] {1});
+    now.addAndGet(100);
+    assertTrue(store.get("alice").isPresent());
+    now.addAndGet(101);
+    assertTrue(store.get("alice").isEmpty());
+    assertTrue(store.create("alice", new byte[] {2}));
+  }
+
+  @Test
+  void test_maximumSize_evictsLeastRecentlyAccessed() {
+    InMemorySessionStore store = InMemorySessionStore.of(4, Duration.ofDays(1), now::get);
+    for (int session = 0; session < 4; session++) {
+      now.incrementAndGet();
+      store.create("session-" + session, new byte[] {(byte) session});
+    }
+    now.incrementAndGet();
+    store.get("session-0");
+    now.incrementAndGet();
+    store.create("session-4", new byte[] {4});
+    assertTrue(store.size() <= 4);
+    assertTrue(store.get("session-0").isPresent());
+    assertTrue(store.get("session-1").isEmpty());
+    assertTrue(store.get("session-4").isPresent());
+  }
+
+  @Test
+  void test_maximumSize_evictsExpiredBeforeLive() {
+    InMemorySessionStore store = InMemorySessionStore.of(32, Duration.ofNanos(100), now::get);
+    for (int session = 0; session < 3; session++) {
+      store.create("expired-" + session, new byte[] {(byte) session});
+    }
+    now.addAndGet(50);
+    for (int session = 0; session < 29; session++) {
+      now.incrementAndGet();
+      store.create("live-" + session, new byte[] {(byte) session});
+    }
+    now.set(150);
+    store.create("new", new byte[] {0}); // the expired sessions make all the room a batch needs
+    assertEquals(30, store.size());
+    for (int session = 0; session < 29; session++) {
+      assertTrue(store.get("live-" + session).isPresent(), "live-" + session);
+    }
+  }
+
+  @Test
+  void test_removalListener_notifiedOfRemovalExpiryAndEviction() {
+    InMemorySessionStore store = InMemorySessionStore.of(2, Duration.ofNanos(100), now::get);
+    List<String> removed = new ArrayList<>();
+    store.addRemovalListener((sessionId, state) -> removed.add(sessionId + "=" + state[0]));
+    store.create("alice", new byte[] {1});
+    store.replace("alice", 0L, new byte[] {2});
+    store.remove("alice");
+    store.remove("alice");
+    assertEquals(List.of("alice=2"), removed);
+
+    store.create("bob", new byte[] {3});
+    now.addAndGet(101);
+    assertTrue(store.get("bob").isEmpty()); // expired
+    store.create("carol", new byte[] {4});
+    now.addAndGet(101);
+    assertTrue(store.create("carol", new byte[] {5})); // replaces the expired session
+    now.incrementAndGet();
+    store.create("dave", new byte[] {6});
+    now.incrementAndGet();
+    store.create("erin", new byte[] {7}); // evicts the least recently accessed session
+    assertEquals(List.of("alice=2", "bob=3", "carol=4", "carol=5"), removed);
+  }
+
+  @Test
+  void test_concurrentPosts_loseNoUpdates() throws Exception {
+    TemplateRegistry registry = TemplateRegistry.of();
+    Template template = registry.computeIfAbsent("prototype", () -> new InputStreamReader(
+      Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+    SessionStore store = InMemorySessionStore.of();
+    API.of(store, "alice", template, User.of(Set.of("DVP", "DSC", "TSC")));
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    Set<String> results = new HashSet<>();
+    try {
+      List<Future<String>> futures = new ArrayList<>();
+      for (int post = 0; post < 2; post++) {
+        futures.add(executor.submit(() -> API.of(store, "alice", registry).post("failure")));
+      }
+      for (Future<String> future : futures) {
+        results.add(future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    // DVP then DSC failed, whichever post was applied first
+    assertEquals(Set.of("continue", "failure"), results);
+    assertEquals(2L, store.get("alice").orElseThrow().getVersion());
+  }
+}
@@ -0,0 +1,184 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import org.jgrapht.Graph;
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.MaskSubgraph;
+import org.jgrapht.graph.SimpleDirectedWeightedGraph;
+import org.junit.jupiter.api.Test;
+
+class IncrementalShortestPathTest {
+  /**
+   * Returns the shortest path of a session of the given template that has not searched before.
+   */
+  static int[] shortestPath(Template template, byte[] statuses) {
+    return IncrementalShortestPath.of(template).getPath(statuses, null);
+  }
+
+  static Template randomTemplate(Random random, int size, int fanOut) {
+    List<String> nodeIds = new ArrayList<>();
+    Graph<Integer, DefaultWeightedEdge> graph = new SimpleDirectedWeightedGraph<>(DefaultWeightedEdge.class);
+    for (int node = 0; node < size; node++) {
+      nodeIds.add(node == 0 ? "START" : node == size - 1 ? "END" : "C" + random.nextInt(size / 2 + 1) + "-" + node);
+      graph.addVertex(node);
+    }
+    for (int source = 0; source < size - 1; source++) {
+      for (int i = 0; i < fanOut; i++) {
+        int target = source + 1 + random.nextInt(Math.min(size - source - 1, 2 * fanOut));
+        if (!graph.containsEdge(source, target)) {
+          graph.setEdgeWeight(graph.addEdge(source, target), 1 + random.nextInt(1_000_000));
+        }
+      }
+    }
+    return templateOf("random", nodeIds, graph);
+  }
+
+  static byte[] randomStatuses(Random random, Template template) {
+    byte[] statuses = new byte[template.size()];
+    for (int node = 0; node < statuses.length; node++) {
+      statuses[node] = (byte) random.nextInt(3);
+    }
+    statuses[template.getStart()] = Node.SUCCESS;
+    statuses[template.getEnd()] = Node.SUCCESS;
+    return statuses;
+  }
+
+  @Test
+  void test_getPath_matchesDijkstra() {
+    Random random = new Random(42);
+    for (int round = 0; round < 500; round++) {
+      Template template = randomTemplate(random, 2 + random.nextInt(60), 1 + random.nextInt(4));
+      byte[] statuses = randomStatuses(random, template);
+      Graph<Integer, DefaultWeightedEdge> maskSubgraph = new MaskSubgraph<>(toGraph(template), node -> statuses[node] == Node.FAILURE, edge -> false);
+      GraphPath<Integer, DefaultWeightedEdge> expected = new DijkstraShortestPath<>(maskSubgraph).getPath(template.getStart(), template.getEnd());
+      int[] actual = shortestPath(template, statuses);
+      if (expected == null) {
+        assertNull(actual);
+      } else {
+        assertArrayEquals(expected.getVertexList().stream().mapToInt(Integer::intValue).toArray(), actual);
+      }
+    }
+  }
+
+  @Test
+  void test_cycle_rejected() {
+    assertThrows(IllegalArgumentException.class, () ->
+      Template.of("cycle", new String[] {"START", "END"}, 2, new int[] {0, 1}, new int[] {1, 0}, new double[] {1.0, 1.0}));
+  }
+
+  /**
+   * Compiles a template from a JGraphT graph whose vertices are dense indices into the given list of
+   * node identifiers.
+   */
+  static Template templateOf(String id, List<String> nodeIds, Graph<Integer, DefaultWeightedEdge> graph) {
+    int edgeCount = graph.edgeSet().size();
+    int[] sources = new int[edgeCount];
+    int[] targets = new int[edgeCount];
+    double[] weights = new double[edgeCount];
+    int edge = 0;
+    for (DefaultWeightedEdge graphEdge : graph.edgeSet()) {
+      sources[edge] = graph.getEdgeSource(graphEdge);
+      targets[edge] = graph.getEdgeTarget(graphEdge);
+      weights[edge++] = graph.getEdgeWeight(graphEdge);
+    }
+    return Template.of(id, nodeIds.toArray(new String[0]), edgeCount, sources, targets, weights);
+  }
+
+  /**
+   * Returns the given template as a JGraphT graph whose vertices are node indices and whose edges are in
+   * the order in which the template's graph defines them.
+   */
+  static Graph<Integer, DefaultWeightedEdge> toGraph(Template template) {
+    Graph<Integer, DefaultWeightedEdge> graph = new SimpleDirectedWeightedGraph<>(DefaultWeightedEdge.class);
+    for (int node = 0; node < template.size(); node++) {
+      graph.addVertex(node);
+    }
+    for (int edge : template.getEdgeOrder()) {
+      graph.setEdgeWeight(graph.addEdge(template.getEdgeSources()[edge], template.getEdgeTargets()[edge]), template.getEdgeWeights()[edge]);
+    }
+    return graph;
+  }
+
+  /**
+   * Returns a random template whose weights are small, so that many paths tie.
+   */
+  static Template tiedTemplate(Random random, int size, int fanOut) {
+    String[] nodeIds = new String[size];
+    for (int node = 0; node < size; node++) {
+      nodeIds[node] = node == 0 ? "START" : node == size - 1 ? "END" : "C" + random.nextInt(size / 2 + 1) + "-" + node;
+    }
+    int[] sources = new int[size * fanOut];
+    int[] targets = new int[size * fanOut];
+    double[] weights = new double[size * fanOut];
+    int edgeCount = 0;
+    for (int source = 0; source < size - 1; source++) {
+      for (int i = 0; i < fanOut; i++) {
+        sources[edgeCount] = source;
+        targets[edgeCount] = source + 1 + random.nextInt(Math.min(size - source - 1, 2 * fanOut));
+        weights[edgeCount] = 1 + random.nextInt(2);
+        edgeCount++;
+      }
+    }
+    return Template.of("tied", nodeIds, edgeCount, sources, targets, weights);
+  }
+
+  @Test
+  void test_getPath_matchesFullSearch() {
+    Random random = new Random(18);
+    for (int round = 0; round < 500; round++) {
+      int size = 2 + random.nextInt(60);
+      int fanOut = 1 + random.nextInt(4);
+      Template template = random.nextBoolean() ? tiedTemplate(random, size, fanOut) : randomTemplate(random, size, fanOut);
+      byte[] statuses = randomStatuses(random, template);
+      IncrementalShortestPath shortestPath = IncrementalShortestPath.of(template);
+      for (int step = 0; step < 20; step++) {
+        assertArrayEquals(shortestPath(template, statuses), shortestPath.getPath(statuses, null));
+        for (int change = random.nextInt(3); change >= 0; change--) {
+          int node = random.nextInt(statuses.length);
+          byte status = (byte) random.nextInt(3);
+          shortestPath.statusChanged(node, statuses[node], status);
+          statuses[node] = status;
+        }
+      }
+    }
+  }
+
+  @Test
+  void test_flows_matchFullSearch() {
+    Random random = new Random(19);
+    for (int round = 0; round < 200; round++) {
+      Template template = tiedTemplate(random, 2 + random.nextInt(60), 1 + random.nextInt(4));
+      MyGraph myGraph = MyGraph.of(template, randomStatuses(random, template));
+      while (myGraph.next().getKind() == Outcome.KIND.CONTINUE) {
+        myGraph.report(random.nextBoolean() ? "success" : "failure");
+        MyGraph fresh = MyGraph.of(template, myGraph.getStatuses().clone());
+        assertEquals(fresh.next().toString(), myGraph.next().toString());
+      }
+    }
+  }
+
+  @Test
+  void test_success_doesNotSearch() {
+    Template template = Template.of(new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+    MyGraph myGraph = MyGraph.of(template, User.of(Set.of("DVP", "DSC", "TSC")));
+    assertEquals("DVP", myGraph.getChallenge());
+    int visits = myGraph.getSearchVisits();
+    assertTrue(visits > 0);
+    assertEquals("continue", myGraph.report("success").toString());
+    assertEquals(visits, myGraph.getSearchVisits());
+  }
+}
@@ -0,0 +1,55 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.InputStreamReader;
+import java.util.Objects;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InitialStateCacheTest {
+  private Template template;
+  private InitialStateCache cache;
+
+  @BeforeEach
+  void setUp() {
+    template = Template.of(new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+    cache = InitialStateCache.of(2);
+  }
+
+  @Test
+  void test_newSession_matchesMyGraphOf() {
+    User user = User.of(Set.of("DVP", "DSC", "TSC"));
+    for (int session = 0; session < 3; session++) {
+      MyGraph myGraph = cache.newSession(template, user);
+      assertArrayEquals(MyGraph.of(template, user).getStatuses(), myGraph.getStatuses());
+      assertEquals("DVP", myGraph.getChallenge());
+      assertDoesNotThrow(() -> myGraph.setStatus("failure"));
+      assertEquals("DSC", myGraph.getChallenge());
+    }
+    assertEquals(1, cache.getMissCount());
+    assertEquals(2, cache.getHitCount());
+  }
+
+  @Test
+  void test_newSession_canonicalizesUsers() {
+    cache.newSession(template, User.of(Set.of("DVP", "DSC")));
+    cache.newSession(template, User.of(Set.of("DSC", "DVP", "XYZ")));
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  void test_maximumSize() {
+    cache.newSession(template, User.of(Set.of("DVP")));
+    cache.newSession(template, User.of(Set.of("DSC")));
+    cache.newSession(template, User.of(Set.of("TSC")));
+    assertEquals(2, cache.size());
+    cache.newSession(template, User.of(Set.of("DVP")));
+    assertEquals(4, cache.getMissCount());
+  }
+}
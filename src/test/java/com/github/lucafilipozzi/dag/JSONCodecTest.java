@@ -0,0 +1,141 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleDirectedWeightedGraph;
+import org.jgrapht.nio.Attribute;
+import org.jgrapht.nio.DefaultAttribute;
+import org.jgrapht.nio.json.JSONExporter;
+import org.junit.jupiter.api.Test;
+
+class JSONCodecTest {
+  private static String export(Template template, byte[] statuses) {
+    Graph<Integer, DefaultWeightedEdge> graph = IncrementalShortestPathTest.toGraph(template);
+    JSONExporter<Integer, DefaultWeightedEdge> exporter = new JSONExporter<>();
+    exporter.setVertexIdProvider(template::getNodeId);
+    exporter.setVertexAttributeProvider(node ->
+      Map.of("status", DefaultAttribute.createAttribute(Node.statusOf(statuses[node]).name())));
+    exporter.setEdgeAttributeProvider(edge ->
+      Map.<String, Attribute>of("weight", DefaultAttribute.createAttribute(graph.getEdgeWeight(edge))));
+    StringWriter stringWriter = new StringWriter();
+    exporter.exportGraph(graph, stringWriter);
+    return stringWriter.toString();
+  }
+
+  private static String write(Template template, byte[] statuses) {
+    StringWriter stringWriter = new StringWriter();
+    JSONCodec.write(template, statuses, stringWriter);
+    return stringWriter.toString();
+  }
+
+  @Test
+  void test_write_matchesJSONExporter() {
+    Random random = new Random(14);
+    for (int round = 0; round < 50; round++) {
+      Template template = IncrementalShortestPathTest.randomTemplate(random, 2 + random.nextInt(40), 3);
+      byte[] statuses = IncrementalShortestPathTest.randomStatuses(random, template);
+      assertEquals(export(template, statuses), write(template, statuses));
+    }
+  }
+
+  @Test
+  void test_write_escapes() {
+    List<String> nodeIds = List.of("START", "A\"B-1", "a/b\\c-2", "tab\tnl\n-3", "\u0001\u007f-4", "é€😀-5", "END");
+    Graph<Integer, DefaultWeightedEdge> graph = new SimpleDirectedWeightedGraph<>(DefaultWeightedEdge.class);
+    for (int node = 0; node < nodeIds.size(); node++) {
+      graph.addVertex(node);
+    }
+    for (int node = 0; node + 1 < nodeIds.size(); node++) {
+      graph.setEdgeWeight(graph.addEdge(node, node + 1), node == 0 ? 1e-7 : 1.0 / node);
+    }
+    Template template = IncrementalShortestPathTest.templateOf("escapes", nodeIds, graph);
+    byte[] statuses = new byte[nodeIds.size()];
+    String json = write(template, statuses);
+    assertEquals(export(template, statuses), json);
+
+    MyGraph loaded = MyGraph.load(new StringReader(json));
+    for (int node = 0; node < nodeIds.size(); node++) {
+      assertEquals(nodeIds.get(node), loaded.getTemplate().getNodeId(node));
+    }
+    assertArrayEquals(template.getEdgeWeights(), loaded.getTemplate().getEdgeWeights());
+  }
+
+  @Test
+  void test_read_roundTrip() {
+    Random random = new Random(15);
+    for (int round = 0; round < 50; round++) {
+      Template template = IncrementalShortestPathTest.randomTemplate(random, 2 + random.nextInt(40), 3);
+      byte[] statuses = IncrementalShortestPathTest.randomStatuses(random, template);
+      MyGraph loaded = JSONCodec.read("loaded", new StringReader(write(template, statuses)));
+      assertArrayEquals(statuses, loaded.getStatuses());
+      assertArrayEquals(template.getEdgeOffsets(), loaded.getTemplate().getEdgeOffsets());
+      assertArrayEquals(template.getEdgeTargets(), loaded.getTemplate().getEdgeTargets());
+      assertArrayEquals(template.getEdgeWeights(), loaded.getTemplate().getEdgeWeights());
+      assertEquals(write(template, statuses), write(loaded.getTemplate(), loaded.getStatuses()));
+    }
+  }
+
+  @Test
+  void test_read_numbers() {
+    Random random = new Random(16);
+    for (int round = 0; round < 10_000; round++) {
+      double weight = switch (round % 4) {
+        case 0 -> random.nextInt(1_000_000);
+        case 1 -> random.nextDouble() * 1000;
+        case 2 -> random.nextInt(100_000) / 1000.0;
+        default -> Double.longBitsToDouble(random.nextLong() & 0x7FEFFFFFFFFFFFFFL);
+      };
+      String json = "{\"nodes\":[{\"id\":\"START\"},{\"id\":\"END\"}],\"edges\":[{\"source\":\"START\",\"target\":\"END\",\"weight\":" + weight + "}]}";
+      assertEquals(weight, JSONCodec.read("numbers", new StringReader(json)).getTemplate().getEdgeWeights()[0]);
+    }
+  }
+
+  @Test
+  void test_read_lenient() {
+    String json = """
+      { "version" : "1", "extra" : [ { "a" : [ true, false, null, -1.5e3 ] } ],
+        "edges" : [ { "target" : "END", "source" : "START" } ],
+        "nodes" : [ { "status" : "FAILURE", "id" : "START", "label" : "s" } ] }
+      """;
+    MyGraph loaded = MyGraph.load(new StringReader(json));
+    assertEquals(2, loaded.getTemplate().size());
+    assertEquals(Node.FAILURE, loaded.getStatuses()[loaded.getTemplate().getStart()]);
+    assertEquals(Node.UNTRIED, loaded.getStatuses()[loaded.getTemplate().getEnd()]);
+    assertEquals(1.0, loaded.getTemplate().getEdgeWeights()[0]);
+  }
+
+  @Test
+  void test_read_repeatedEdges() {
+    String json = """
+      {"edges":[{"source":"START","target":"A-1","weight":2.0},{"source":"A-1","target":"END","weight":3.0},
+                {"source":"START","target":"A-1","weight":5.0},{"source":"START","target":"END","weight":7.0},
+                {"source":"A-1","target":"END","weight":11.0}]}
+      """;
+    Template template = MyGraph.load(new StringReader(json)).getTemplate();
+    assertArrayEquals(new double[] {2.0, 3.0, 7.0}, Arrays.stream(template.getEdgeOrder()).mapToDouble(edge -> template.getEdgeWeights()[edge]).toArray());
+  }
+
+  @Test
+  void test_read_malformed() {
+    for (String json : List.of(
+        "",
+        "{\"nodes\":[{\"id\":\"START\"}",
+        "{\"nodes\":[{\"id\":\"START\",\"status\":\"BOGUS\"}]}",
+        "{\"edges\":[{\"source\":\"START\",\"target\":\"END\",\"weight\":1..0}]}",
+        "{\"edges\":[{\"source\":\"START\"}]}",
+        "{\"nodes\":[]} trailing")) {
+      assertThrows(IllegalArgumentException.class, () -> MyGraph.load(new StringReader(json)), json);
+    }
+  }
+}
@@ -43,6 +43,29 @@ class MyGraphTest {
     assertTrue(challenges.contains("DSC"));
   }
 
+  @Test
+  void test_getChallenges_emptyChallenge() {
+    String graphML = """
+      <graphml xmlns="http://graphml.graphdrawing.org/xmlns">
+        <key id="w" for="edge" attr.name="weight" attr.type="double"/>
+        <graph edgedefault="directed">
+          <edge source="START" target="-1"><data key="w">%s</data></edge>
+          <edge source="START" target="DVP-2"><data key="w">2.0</data></edge>
+          <edge source="START" target="DSC-3"><data key="w">3.0</data></edge>
+          <edge source="-1" target="END"/>
+          <edge source="DVP-2" target="END"/>
+          <edge source="DSC-3" target="END"/>
+        </graph>
+      </graphml>
+      """;
+    User user = User.of(Set.of("", "DVP", "DSC"));
+    MyGraph last = MyGraph.of(new StringReader(graphML.formatted("9.0")), user);
+    assertEquals(List.of("DVP", "DSC"), last.getChallenges()); // the empty challenge does not start with D
+    MyGraph first = MyGraph.of(new StringReader(graphML.formatted("1.0")), user);
+    assertEquals("", first.getChallenge());
+    assertEquals(Set.of("", "DVP", "DSC"), Set.copyOf(first.getChallenges())); // every challenge starts with ""
+  }
+
   @Test
   void test_dump_and_load() {
     assertEquals("DVP", myGraph.getChallenge());
@@ -133,4 +156,16 @@ class MyGraphTest {
     assertThrows(MyGraph.SetStatusException.class, () -> myGraph.setStatus("failure"));
     assertThrows(MyGraph.SetStatusException.class, () -> myGraph.setStatus("garbage"));
   }
+
+  @Test
+  void test_next_and_report() {
+    assertEquals(Outcome.continueWith("DVP"), myGraph.next());
+    assertEquals(Outcome.continueWith("DSC"), myGraph.report("failure"));
+    assertEquals(Outcome.invalid(), myGraph.report("garbage"));
+    assertEquals(Outcome.continueWith("DSC"), myGraph.next());
+    assertEquals(Outcome.continueWith("TSC"), myGraph.report("success"));
+    assertEquals(Outcome.success(), myGraph.report("success"));
+    assertEquals(Outcome.success(), myGraph.next());
+    assertEquals(Outcome.invalid(), myGraph.report("success"));
+  }
 }
@@ -0,0 +1,78 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class ReachabilityIndexTest {
+  @Test
+  void test_index_matchesSearch() {
+    Random random = new Random(19);
+    for (int round = 0; round < 300; round++) {
+      Template template = IncrementalShortestPathTest.randomTemplate(random, 2 + random.nextInt(60), 1 + random.nextInt(3));
+      ReachabilityIndex reachabilityIndex = template.getReachabilityIndex();
+      byte[] unmasked = new byte[template.size()];
+      Arrays.fill(unmasked, Node.UNTRIED);
+      boolean connected = IncrementalShortestPathTest.shortestPath(template, unmasked) != null;
+      for (int node = 0; node < template.size(); node++) {
+        byte[] statuses = unmasked.clone();
+        statuses[node] = Node.FAILURE;
+        boolean cut = connected && IncrementalShortestPathTest.shortestPath(template, statuses) == null;
+        assertEquals(cut, reachabilityIndex.isCut(node), "cut " + node);
+        assertEquals(cut, reachabilityIndex.isDisconnected(statuses) && connected, "disconnected " + node);
+        assertEquals(connected && isOnSomePath(template, node), reachabilityIndex.isRelevant(node), "relevant " + node);
+      }
+      byte[] statuses = IncrementalShortestPathTest.randomStatuses(random, template);
+      if (reachabilityIndex.isDisconnected(statuses)) {
+        assertNull(IncrementalShortestPathTest.shortestPath(template, statuses));
+      }
+    }
+  }
+
+  /**
+   * Returns whether some START to END path of the unmasked graph goes through the given node, by search.
+   */
+  private static boolean isOnSomePath(Template template, int node) {
+    boolean[] reached = new boolean[template.size()];
+    reached[template.getStart()] = true;
+    for (int source : template.getTopologicalOrder()) {
+      for (int edge = template.getEdgeOffsets()[source]; reached[source] && edge < template.getEdgeOffsets()[source + 1]; edge++) {
+        reached[template.getEdgeTargets()[edge]] = true;
+      }
+    }
+    boolean[] reachesEnd = new boolean[template.size()];
+    reachesEnd[template.getEnd()] = true;
+    int[] order = template.getTopologicalOrder();
+    for (int index = order.length - 1; index >= 0; index--) {
+      for (int edge = template.getEdgeOffsets()[order[index]]; edge < template.getEdgeOffsets()[order[index] + 1]; edge++) {
+        reachesEnd[order[index]] |= reachesEnd[template.getEdgeTargets()[edge]];
+      }
+    }
+    return reached[node] && reachesEnd[node];
+  }
+
+  @Test
+  void test_failedCutNode_doesNotSearch() {
+    // START -> A -> B -> END and START -> C -> B: B is on every path
+    String[] nodeIds = {"START", "A-1", "B-1", "C-1", "END"};
+    Template template = Template.of("cut", nodeIds, 5, new int[] {0, 1, 2, 0, 3}, new int[] {1, 2, 4, 3, 2}, new double[] {1, 1, 1, 2, 2});
+    ReachabilityIndex reachabilityIndex = template.getReachabilityIndex();
+    assertTrue(reachabilityIndex.isCut(2));
+    assertTrue(!reachabilityIndex.isCut(1) && !reachabilityIndex.isCut(3));
+    MyGraph myGraph = MyGraph.of(template, User.of(Set.of("A", "C")));
+    assertEquals("failure", myGraph.next().toString());
+    assertEquals(0, myGraph.getSearchVisits());
+    myGraph = MyGraph.of(template, User.of(Set.of("A", "B")));
+    assertEquals("A", myGraph.getChallenge());
+    assertEquals("continue", myGraph.report("success").toString());
+    int visits = myGraph.getSearchVisits();
+    assertEquals("failure", myGraph.report("failure").toString());
+    assertEquals(visits, myGraph.getSearchVisits());
+  }
+}
@@ -0,0 +1,99 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SessionArenaTest {
+  private static final User USER = User.of(Set.of("DVP", "DSC", "TSC"));
+  private TemplateRegistry registry;
+  private Template template;
+
+  @BeforeEach
+  void setUp() {
+    registry = TemplateRegistry.of();
+    template = registry.computeIfAbsent("prototype", () ->
+      new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+  }
+
+  @Test
+  void test_storesStates() {
+    SessionArena sessionArena = SessionArena.of(template.size(), 4);
+    byte[] state = StateCodec.encode(MyGraph.of(template, USER));
+    assertTrue(sessionArena.create("alice", state));
+    assertFalse(sessionArena.create("alice", state));
+    SessionStore.Versioned versioned = sessionArena.get("alice").orElseThrow();
+    assertArrayEquals(state, versioned.getState());
+    assertEquals(0, versioned.getVersion());
+
+    MyGraph myGraph = StateCodec.decode(versioned.getState(), registry::get);
+    myGraph.setStatus("failure");
+    byte[] updated = StateCodec.encode(myGraph);
+    assertTrue(sessionArena.replace("alice", 0, updated));
+    assertFalse(sessionArena.replace("alice", 0, state));
+    assertArrayEquals(updated, sessionArena.get("alice").orElseThrow().getState());
+    assertEquals(1, sessionArena.get("alice").orElseThrow().getVersion());
+    assertFalse(sessionArena.replace("bob", 0, state));
+    assertThrows(IllegalArgumentException.class, () -> sessionArena.create("bob", new byte[] {'D', 1, 42}));
+  }
+
+  @Test
+  void test_recyclesSlots() {
+    SessionArena sessionArena = SessionArena.of(template.size(), 4);
+    byte[] state = StateCodec.encode(MyGraph.of(template, USER));
+    for (int round = 0; round < 10; round++) {
+      for (int session = 0; session < 6; session++) {
+        assertTrue(sessionArena.create("session-" + round + "-" + session, state));
+      }
+      for (int session = 0; session < 6; session++) {
+        sessionArena.remove("session-" + round + "-" + session);
+      }
+    }
+    assertEquals(0, sessionArena.size());
+    assertEquals(8, sessionArena.getSlotCount()); // two chunks of four slots, reused every round
+    assertEquals(8L * (12 + (template.size() + 3) / 4), sessionArena.getCapacity());
+  }
+
+  @Test
+  void test_rejectsLargerTemplates() {
+    SessionArena sessionArena = SessionArena.of(4);
+    assertThrows(IllegalArgumentException.class, () -> sessionArena.create("alice", StateCodec.encode(MyGraph.of(template, USER))));
+    assertEquals(0, sessionArena.size());
+  }
+
+  @Test
+  void test_flows_matchInMemorySessionStore() {
+    Random random = new Random(22);
+    SessionArena sessionArena = SessionArena.of(template.size(), 16);
+    SessionStore sessionStore = InMemorySessionStore.of();
+    List<BatchEvaluator.Report> reports = new ArrayList<>();
+    for (int session = 0; session < 100; session++) {
+      API.of(sessionArena, "session-" + session, template, USER);
+      API.of(sessionStore, "session-" + session, template, USER);
+    }
+    for (int index = 0; index < 1_000; index++) {
+      reports.add(BatchEvaluator.Report.of("session-" + random.nextInt(100), random.nextBoolean() ? "success" : "failure"));
+    }
+    assertEquals(
+      BatchEvaluator.of(sessionStore, registry, Runnable::run).report(reports),
+      BatchEvaluator.of(sessionArena, registry, ForkJoinPool.commonPool()).report(reports));
+    for (int session = 0; session < 100; session++) {
+      assertArrayEquals(
+        sessionStore.get("session-" + session).orElseThrow().getState(),
+        sessionArena.get("session-" + session).orElseThrow().getState());
+    }
+  }
+}
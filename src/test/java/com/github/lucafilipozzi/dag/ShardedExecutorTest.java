@@ -0,0 +1,153 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ShardedExecutorTest {
+  private static final List<String> STATUSES = List.of("success", "failure", "garbage");
+  private static final User USER = User.of(Set.of("DVP", "DSC", "TSC"));
+  private Template template;
+
+  @BeforeEach
+  void setUp() {
+    template = Template.of(new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+  }
+
+  @Test
+  void test_report_matchesSequential() throws InterruptedException {
+    int sessions = 50;
+    int producers = 4;
+    List<List<String>> statusesBySession = new ArrayList<>();
+    Random random = new Random(20);
+    for (int session = 0; session < sessions; session++) {
+      List<String> statuses = new ArrayList<>();
+      for (int step = random.nextInt(6); step >= 0; step--) {
+        statuses.add(STATUSES.get(random.nextInt(STATUSES.size())));
+      }
+      statusesBySession.add(statuses);
+    }
+    HistogramMetricsSink metricsSink = HistogramMetricsSink.of();
+    List<List<String>> actual = new ArrayList<>();
+    try (ShardedExecutor executor = ShardedExecutor.of(3, 2, metricsSink)) {
+      List<List<CompletableFuture<Outcome>>> futures = new ArrayList<>();
+      for (int session = 0; session < sessions; session++) {
+        futures.add(new ArrayList<>());
+        executor.create("session-" + session, template, USER).join();
+      }
+      List<Thread> threads = new ArrayList<>();
+      for (int producer = 0; producer < producers; producer++) {
+        int first = producer;
+        threads.add(new Thread(() -> {
+          for (int session = first; session < sessions; session += producers) {
+            for (String status : statusesBySession.get(session)) {
+              futures.get(session).add(executor.report("session-" + session, status));
+            }
+          }
+        }));
+      }
+      threads.forEach(Thread::start);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      for (List<CompletableFuture<Outcome>> sessionFutures : futures) {
+        actual.add(sessionFutures.stream().map(future -> future.join().toString()).toList());
+      }
+      assertEquals(sessions, executor.size().join());
+      assertTrue(executor.remove("session-0").join());
+      assertFalse(executor.remove("session-0").join());
+      assertEquals("invalid", executor.next("session-0").join().toString());
+      assertEquals("invalid", executor.create("session-1", template, USER).join().toString());
+    }
+    for (int session = 0; session < sessions; session++) {
+      MyGraph myGraph = MyGraph.of(template, USER);
+      List<String> expected = new ArrayList<>();
+      for (String status : statusesBySession.get(session)) {
+        expected.add(("garbage".equals(status) ? Outcome.invalid() : myGraph.report(status)).toString());
+      }
+      assertEquals(expected, actual.get(session), "session-" + session);
+    }
+    assertEquals(statusesBySession.stream().mapToInt(List::size).sum(), metricsSink.getLatencies(MetricsSink.OPERATION.REPORT).getCount());
+  }
+
+  @Test
+  void test_close_rejects() {
+    ShardedExecutor executor = ShardedExecutor.of(2, 16, MetricsSink.noop());
+    CompletableFuture<Outcome> created = executor.create("alice", template, USER);
+    executor.close();
+    assertEquals("DVP", created.join().getChallenge()); // submitted before closing
+    ExecutionException e = assertThrows(ExecutionException.class, () -> executor.next("alice").get());
+    assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    executor.close();
+  }
+
+  @Test
+  void test_close_fromShardThread() throws Exception {
+    AtomicReference<ShardedExecutor> executor = new AtomicReference<>();
+    MetricsSink closingSink = new MetricsSink() {
+      @Override
+      public void recordOutcome(Outcome.KIND kind) {
+        executor.get().close(); // on the shard's thread, while it serves the request
+      }
+    };
+    executor.set(ShardedExecutor.of(2, 16, closingSink));
+    executor.get().create("alice", template, USER);
+    assertEquals("DVP", executor.get().next("alice").get(10, TimeUnit.SECONDS).getChallenge());
+    ExecutionException e = assertThrows(ExecutionException.class, () -> executor.get().next("alice").get());
+    assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    executor.get().close(); // waits for the shard that closed the executor, which has stopped
+  }
+
+  @Test
+  void test_close_whileSubmitting_completesEveryFuture() throws InterruptedException {
+    int producers = 4;
+    ShardedExecutor executor = ShardedExecutor.of(2, 1, MetricsSink.noop());
+    List<List<CompletableFuture<Outcome>>> futures = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int producer = 0; producer < producers; producer++) {
+      List<CompletableFuture<Outcome>> producerFutures = new ArrayList<>();
+      futures.add(producerFutures);
+      int first = producer;
+      threads.add(new Thread(() -> {
+        for (int session = first; session < 2000; session += producers) {
+          producerFutures.add(executor.create("session-" + session, template, USER));
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    executor.close(); // while the producers are blocked on full queues
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (List<CompletableFuture<Outcome>> producerFutures : futures) {
+      for (CompletableFuture<Outcome> future : producerFutures) {
+        try {
+          assertEquals("DVP", future.get(10, TimeUnit.SECONDS).getChallenge());
+        } catch (ExecutionException e) {
+          assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        } catch (TimeoutException e) {
+          fail("future never completed");
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,63 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StateCodecTest {
+  private TemplateRegistry registry;
+  private MyGraph myGraph;
+
+  @BeforeEach
+  void setUp() {
+    registry = TemplateRegistry.of();
+    Template template = registry.computeIfAbsent("prototype", () -> new InputStreamReader(
+      Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))));
+    myGraph = MyGraph.of(template, User.of(Set.of("DVP", "DSC", "TSC")));
+  }
+
+  @Test
+  void test_encode_and_decode() {
+    assertDoesNotThrow(() -> myGraph.setStatus("success"));
+    byte[] bytes = StateCodec.encode(myGraph);
+    assertEquals(2 + 1 + "prototype@".length() + 16 + 1 + 2, bytes.length);
+    MyGraph newGraph = StateCodec.decode(bytes, registry::get);
+    assertEquals("DSC", newGraph.getChallenge());
+    StringWriter expected = new StringWriter();
+    myGraph.dump(expected);
+    StringWriter actual = new StringWriter();
+    newGraph.dump(actual);
+    assertEquals(expected.toString(), actual.toString());
+  }
+
+  @Test
+  void test_decode_malformed() {
+    byte[] bytes = StateCodec.encode(myGraph);
+    assertThrows(IllegalArgumentException.class, () -> StateCodec.decode(Arrays.copyOf(bytes, bytes.length - 1), registry::get));
+    bytes[1] = 2;
+    assertThrows(IllegalArgumentException.class, () -> StateCodec.decode(bytes, registry::get));
+    bytes[0] = 0;
+    assertThrows(IllegalArgumentException.class, () -> StateCodec.decode(bytes, registry::get));
+  }
+
+  @Test
+  void test_decode_malformedLengths() {
+    byte[] negative = {'D', 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 'x'};
+    assertThrows(IllegalArgumentException.class, () -> StateCodec.decode(negative, registry::get));
+    assertThrows(IllegalArgumentException.class, () -> StateCodec.getStatusesOffset(negative));
+    byte[] oversized = {'D', 1, 0x7F, 'x'};
+    assertThrows(IllegalArgumentException.class, () -> StateCodec.decode(oversized, registry::get));
+    assertThrows(IllegalArgumentException.class, () -> StateCodec.getStatusesOffset(oversized));
+    byte[] negativeSize = {'D', 1, 1, 'x', (byte) 0xFD, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+    assertThrows(IllegalArgumentException.class, () -> StateCodec.getStatusesOffset(negativeSize));
+  }
+}
@@ -0,0 +1,282 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TemplateRegistryTest {
+  private TemplateRegistry registry;
+  private AtomicInteger parses;
+
+  @BeforeEach
+  void setUp() {
+    registry = TemplateRegistry.of();
+    parses = new AtomicInteger();
+  }
+
+  private Reader prototypeGraphReader() {
+    parses.incrementAndGet();
+    return new InputStreamReader(Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml")));
+  }
+
+  @Test
+  void test_computeIfAbsent_parsesOnce() {
+    Template first = registry.computeIfAbsent("prototype", this::prototypeGraphReader);
+    Template second = registry.computeIfAbsent("prototype", this::prototypeGraphReader);
+    assertSame(first, second);
+    assertSame(first, registry.get("prototype"));
+    assertEquals(1, parses.get());
+  }
+
+  @Test
+  void test_get_unknown() {
+    assertThrows(NoSuchElementException.class, () -> registry.get("unknown"));
+  }
+
+  @Test
+  void test_sessions_shareTemplate() {
+    Template template = registry.computeIfAbsent("prototype", this::prototypeGraphReader);
+    MyGraph alice = MyGraph.of(template, User.of(Set.of("DVP", "DSC", "TSC")));
+    MyGraph bob = MyGraph.of(template, User.of(Set.of("DSC", "DVP")));
+    assertEquals("DVP", alice.getChallenge());
+    assertDoesNotThrow(() -> alice.setStatus("failure"));
+    assertEquals("DSC", alice.getChallenge());
+    assertEquals("DVP", bob.getChallenge());
+    assertSame(alice.getTemplate(), bob.getTemplate());
+  }
+
+  /**
+   * Returns the prototype graph without its ERC challenge, as a new version of it would be.
+   */
+  private static Reader revisedGraphReader() {
+    return new StringReader("""
+      <graphml xmlns="http://graphml.graphdrawing.org/xmlns">
+        <key id="d0" for="edge" attr.name="weight" attr.type="long" />
+        <graph edgedefault="directed">
+          <node id="START" /><node id="TSC-1" /><node id="DVP-1" /><node id="END" />
+          <edge source="START" target="TSC-1"><data key="d0">1</data></edge>
+          <edge source="START" target="DVP-1"><data key="d0">2</data></edge>
+          <edge source="TSC-1" target="END"><data key="d0">1</data></edge>
+          <edge source="DVP-1" target="END"><data key="d0">1</data></edge>
+        </graph>
+      </graphml>
+      """);
+  }
+
+  /**
+   * Returns the prototype graph with a heavier edge from START to DVP-1, as a new version of it of the
+   * same size would be.
+   */
+  private Reader reweightedGraphReader() {
+    try (Reader reader = prototypeGraphReader()) {
+      StringWriter writer = new StringWriter();
+      reader.transferTo(writer);
+      return new StringReader(writer.toString().replaceFirst(
+        "(<edge source=\"START\" target=\"DVP-1\">\\s*<data key=\"d0\">)1<", "$15<"));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Test
+  void test_register_pinsSessionsToTheirVersion() {
+    SessionStore sessionStore = registry.pin(InMemorySessionStore.of());
+    User user = User.of(Set.of("DVP", "DSC", "TSC"));
+    Template first = registry.computeIfAbsent("prototype", this::prototypeGraphReader);
+    assertTrue(first.getId().startsWith("prototype@"));
+    API.of(sessionStore, "alice", registry.get("prototype"), user);
+    Template second = registry.register("prototype", reweightedGraphReader());
+    assertNotEquals(first.getId(), second.getId());
+    assertEquals(first.size(), second.size());
+    assertEquals(List.of(first.getId(), second.getId()), registry.getVersionIds("prototype"));
+    API.of(sessionStore, "bob", registry.get("prototype"), user);
+
+    assertEquals("DVP", API.of(sessionStore, "alice", registry).get()); // on the first version
+    assertEquals("DSC", API.of(sessionStore, "bob", registry).get()); // on the second version
+    assertSame(first, registry.get(first.getId()));
+    assertSame(second, registry.get("prototype"));
+
+    byte[] state = sessionStore.get("alice").orElseThrow().getState();
+    sessionStore.remove("alice");
+    assertEquals(List.of(second.getId()), registry.getVersionIds("prototype")); // dropped once its last session was removed
+    assertThrows(NoSuchElementException.class, () -> registry.get(first.getId()));
+    assertThrows(NoSuchElementException.class, () -> StateCodec.decode(state, registry::get)); // never decoded with the second version
+    assertThrows(NoSuchElementException.class, () -> API.of(sessionStore, "carol", MyGraph.of(first, user)));
+    assertEquals("DSC", API.of(sessionStore, "bob", registry).get());
+  }
+
+  @Test
+  void test_pin_releasesExpiredAndEvictedSessions() {
+    AtomicLong now = new AtomicLong();
+    InMemorySessionStore inMemorySessionStore = InMemorySessionStore.of(2, Duration.ofNanos(100), now::get);
+    SessionStore sessionStore = registry.pin(inMemorySessionStore);
+    User user = User.of(Set.of("DVP", "DSC", "TSC"));
+    Template first = registry.register("prototype", prototypeGraphReader());
+    API.of(sessionStore, "alice", registry.get("prototype"), user);
+    API.of(sessionStore, "bob", registry.get("prototype"), user);
+    Template second = registry.register("prototype", reweightedGraphReader());
+    assertEquals(List.of(first.getId(), second.getId()), registry.getVersionIds("prototype"));
+
+    now.addAndGet(101);
+    assertTrue(sessionStore.get("alice").isEmpty()); // expired
+    assertEquals(List.of(first.getId(), second.getId()), registry.getVersionIds("prototype"));
+    now.incrementAndGet();
+    API.of(sessionStore, "carol", registry.get("prototype"), user);
+    API.of(sessionStore, "dave", registry.get("prototype"), user); // evicts bob
+    assertTrue(sessionStore.get("bob").isEmpty());
+    assertEquals(List.of(second.getId()), registry.getVersionIds("prototype"));
+
+    inMemorySessionStore.remove("carol"); // not through the wrapper
+    Template third = registry.register("prototype", revisedGraphReader());
+    assertEquals(List.of(second.getId(), third.getId()), registry.getVersionIds("prototype"));
+    sessionStore.remove("dave");
+    assertEquals(List.of(third.getId()), registry.getVersionIds("prototype"));
+  }
+
+  @Test
+  void test_register_keepsVersionsOfUnpinnedSessions() {
+    SessionStore sessionStore = InMemorySessionStore.of();
+    User user = User.of(Set.of("DVP", "DSC", "TSC"));
+    Template first = registry.computeIfAbsent("prototype", this::prototypeGraphReader);
+    MyGraph expected = MyGraph.of(first, user);
+    API.of(sessionStore, "alice", first, user);
+    assertEquals(expected.report("failure"), API.of(sessionStore, "alice", registry).report("failure")); // half finished
+
+    registry.register("prototype", reweightedGraphReader());
+    assertEquals(2, registry.getVersionIds("prototype").size());
+    assertEquals(expected.getChallenge(), API.of(sessionStore, "alice", registry).get()); // still on the first version
+    assertEquals(expected.report("success"), API.of(sessionStore, "alice", registry).report("success"));
+  }
+
+  @Test
+  void test_register_withSearch() {
+    SessionStore sessionStore = InMemorySessionStore.of();
+    User user = User.of(Set.of("DVP", "DSC", "TSC"));
+    Template template = registry.computeIfAbsent("prototype", this::prototypeGraphReader, Template.SEARCH.ASTAR);
+    assertEquals(Template.SEARCH.ASTAR, template.getSearch());
+    assertSame(template, registry.computeIfAbsent("prototype", this::prototypeGraphReader, Template.SEARCH.BIDIRECTIONAL));
+    API.of(sessionStore, "alice", registry.get("prototype"), user);
+    assertEquals(Template.SEARCH.ASTAR, StateCodec.decode(sessionStore.get("alice").orElseThrow().getState(), registry::get).getTemplate().getSearch());
+    assertEquals("DVP", API.of(sessionStore, "alice", registry).get());
+
+    Template second = registry.register("prototype", prototypeGraphReader(), Template.SEARCH.BIDIRECTIONAL);
+    assertEquals(template.getId(), second.getId()); // the same graph, searched differently
+    assertEquals(Template.SEARCH.BIDIRECTIONAL, registry.get("prototype").getSearch());
+    assertSame(second, registry.get(template.getId()));
+    assertEquals(List.of(template.getId()), registry.getVersionIds("prototype"));
+  }
+
+  @Test
+  void test_register_rejectsVersionIds() {
+    assertThrows(IllegalArgumentException.class, () -> registry.register("prototype@2", prototypeGraphReader()));
+    assertThrows(IllegalArgumentException.class, () -> registry.computeIfAbsent("prototype@2", this::prototypeGraphReader));
+  }
+
+  @Test
+  void test_computeIfAbsent_compilesOutsideOfTheLock() throws InterruptedException {
+    CountDownLatch registered = new CountDownLatch(1);
+    Thread other = new Thread(() -> {
+      registry.computeIfAbsent("revised", TemplateRegistryTest::revisedGraphReader);
+      registered.countDown();
+    });
+    Template template = registry.computeIfAbsent("prototype", () -> {
+      other.start();
+      try {
+        assertTrue(registered.await(10, TimeUnit.SECONDS)); // another name is registered meanwhile
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return prototypeGraphReader();
+    });
+    other.join();
+    assertSame(template, registry.get("prototype"));
+    assertEquals(List.of(registry.get("revised").getId()), registry.getVersionIds("revised"));
+  }
+
+  @Test
+  void test_register_dropsReleasedVersions() {
+    Template first = registry.register("prototype", prototypeGraphReader());
+    TemplateRegistry.Lease lease = registry.acquire("prototype");
+    assertSame(first, lease.getTemplate());
+    Template second = registry.register("prototype", reweightedGraphReader());
+    Template third = registry.register("prototype", revisedGraphReader());
+    assertEquals(List.of(first.getId(), second.getId(), third.getId()), registry.getVersionIds("prototype"));
+    lease.close();
+    lease.close();
+    assertEquals(List.of(second.getId(), third.getId()), registry.getVersionIds("prototype")); // the second was never leased
+    assertSame(third, registry.acquire("prototype").getTemplate());
+    assertSame(third, registry.computeIfAbsent("prototype", this::prototypeGraphReader));
+    assertEquals(2, parses.get());
+    assertThrows(NoSuchElementException.class, () -> registry.acquire("unknown"));
+  }
+
+  @Test
+  void test_register_reusesTheVersionOfTheSameContent() {
+    Template first = registry.register("prototype", prototypeGraphReader());
+    Template second = registry.register("prototype", reweightedGraphReader());
+    assertSame(first, registry.register("prototype", prototypeGraphReader()));
+    assertSame(first, registry.get("prototype"));
+    assertEquals(List.of(second.getId(), first.getId()), registry.getVersionIds("prototype"));
+  }
+
+  @Test
+  void test_register_identifiesVersionsByContent() {
+    SessionStore sessionStore = InMemorySessionStore.of();
+    User user = User.of(Set.of("DVP", "DSC", "TSC"));
+    Template first = registry.register("prototype", prototypeGraphReader());
+    API.of(sessionStore, "alice", first, user);
+    byte[] state = sessionStore.get("alice").orElseThrow().getState();
+
+    TemplateRegistry restarted = TemplateRegistry.of(); // another process, sharing the session store
+    assertEquals(first.getId(), restarted.register("prototype", prototypeGraphReader()).getId());
+    assertEquals(first.getId(), StateCodec.decode(state, restarted::get).getTemplate().getId());
+
+    TemplateRegistry reweighted = TemplateRegistry.of(); // another process, with a graph of the same size
+    Template second = reweighted.register("prototype", reweightedGraphReader());
+    assertEquals(first.size(), second.size());
+    assertNotEquals(first.getId(), second.getId());
+    assertThrows(NoSuchElementException.class, () -> StateCodec.decode(state, reweighted::get));
+  }
+
+  @Test
+  void test_get_duringReload() throws InterruptedException {
+    registry.computeIfAbsent("prototype", this::prototypeGraphReader);
+    Thread reloader = new Thread(() -> {
+      for (int round = 0; round < 200; round++) {
+        registry.register("prototype", round % 2 == 0 ? revisedGraphReader() : prototypeGraphReader());
+      }
+    });
+    reloader.start();
+    while (reloader.isAlive()) {
+      try (TemplateRegistry.Lease lease = registry.acquire("prototype")) {
+        assertSame(lease.getTemplate(), registry.get(lease.getTemplate().getId()));
+      }
+    }
+    reloader.join();
+    List<String> versionIds = registry.getVersionIds("prototype");
+    assertTrue(versionIds.size() <= 2); // at most one version of each content
+    assertEquals(registry.get("prototype").getId(), versionIds.get(versionIds.size() - 1));
+  }
+}
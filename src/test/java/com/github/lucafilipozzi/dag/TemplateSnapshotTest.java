@@ -0,0 +1,132 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateSnapshotTest {
+  @TempDir
+  Path directory;
+  private Path source;
+  private Path snapshot;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    source = directory.resolve("prototype-graph.xml");
+    snapshot = directory.resolve("prototype-graph.snapshot");
+    try (InputStream inputStream = Objects.requireNonNull(getClass().getResourceAsStream("/prototype-graph.xml"))) {
+      Files.copy(inputStream, source);
+    }
+  }
+
+  private static void assertSameTemplate(Template expected, Template actual) {
+    assertEquals(expected.getId(), actual.getId());
+    assertEquals(expected.size(), actual.size());
+    for (int node = 0; node < expected.size(); node++) {
+      assertEquals(expected.getNodeId(node), actual.getNodeId(node));
+      assertEquals(expected.getChallenge(node), actual.getChallenge(node));
+    }
+    assertEquals(expected.getStart(), actual.getStart());
+    assertEquals(expected.getEnd(), actual.getEnd());
+    assertArrayEquals(expected.getChallengeNodeOffsets(), actual.getChallengeNodeOffsets());
+    assertArrayEquals(expected.getChallengeNodes(), actual.getChallengeNodes());
+    assertArrayEquals(expected.getEdgeOffsets(), actual.getEdgeOffsets());
+    assertArrayEquals(expected.getEdgeSources(), actual.getEdgeSources());
+    assertArrayEquals(expected.getEdgeTargets(), actual.getEdgeTargets());
+    assertArrayEquals(expected.getEdgeWeights(), actual.getEdgeWeights());
+    assertArrayEquals(expected.getEdgeOrder(), actual.getEdgeOrder());
+    assertArrayEquals(expected.getTopologicalOrder(), actual.getTopologicalOrder());
+  }
+
+  @Test
+  void test_write_read() {
+    Template template = Template.of("prototype", source);
+    TemplateSnapshot.write(template, TemplateSnapshot.hash(source), snapshot);
+    Template restored = TemplateSnapshot.read(snapshot, TemplateSnapshot.hash(source));
+    assertSameTemplate(template, restored);
+
+    User user = User.of(Set.of("DVP", "DSC", "TSC"));
+    StringWriter expected = new StringWriter();
+    StringWriter actual = new StringWriter();
+    MyGraph.of(template, user).dump(expected);
+    MyGraph.of(restored, user).dump(actual);
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(MyGraph.of(template, user).next().toString(), MyGraph.of(restored, user).next().toString());
+  }
+
+  @Test
+  void test_write_read_random() {
+    Random random = new Random(13);
+    for (int round = 0; round < 20; round++) {
+      Template template = IncrementalShortestPathTest.randomTemplate(random, 2 + random.nextInt(60), 3);
+      TemplateSnapshot.write(template, new byte[32], snapshot);
+      assertSameTemplate(template, TemplateSnapshot.read(snapshot, new byte[32]));
+    }
+  }
+
+  @Test
+  void test_write_read_search() throws IOException {
+    Template template = Template.of("prototype", source);
+    for (Template.SEARCH search : Template.SEARCH.values()) {
+      TemplateSnapshot.write(template.withSearch(search), TemplateSnapshot.hash(source), snapshot);
+      assertEquals(search, TemplateSnapshot.read(snapshot, TemplateSnapshot.hash(source)).getSearch());
+    }
+    long modified = Files.getLastModifiedTime(snapshot).toMillis();
+    Template loaded = TemplateSnapshot.load("prototype", source, snapshot, Template.SEARCH.ASTAR);
+    assertEquals(Template.SEARCH.ASTAR, loaded.getSearch());
+    assertEquals(modified, Files.getLastModifiedTime(snapshot).toMillis()); // another search reuses the snapshot
+  }
+
+  @Test
+  void test_read_stale_or_corrupt() throws IOException {
+    Template template = Template.of("prototype", source);
+    TemplateSnapshot.write(template, TemplateSnapshot.hash(source), snapshot);
+    assertThrows(IllegalArgumentException.class, () -> TemplateSnapshot.read(snapshot, new byte[32]));
+
+    byte[] bytes = Files.readAllBytes(snapshot);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(snapshot, bytes);
+    assertThrows(IllegalArgumentException.class, () -> TemplateSnapshot.read(snapshot, TemplateSnapshot.hash(source)));
+
+    Files.write(snapshot, new byte[] {'D', 'A'});
+    assertThrows(IllegalArgumentException.class, () -> TemplateSnapshot.read(snapshot, TemplateSnapshot.hash(source)));
+  }
+
+  @Test
+  void test_load() throws IOException {
+    Template compiled = TemplateSnapshot.load("prototype", source, snapshot);
+    assertSameTemplate(compiled, TemplateSnapshot.read(snapshot, TemplateSnapshot.hash(source)));
+    long modified = Files.getLastModifiedTime(snapshot).toMillis();
+    assertSameTemplate(compiled, TemplateSnapshot.load("prototype", source, snapshot));
+    assertEquals(modified, Files.getLastModifiedTime(snapshot).toMillis());
+
+    // editing the source invalidates the snapshot
+    Files.writeString(source, "<!-- edited -->\n", StandardOpenOption.APPEND);
+    Template recompiled = TemplateSnapshot.load("prototype", source, snapshot);
+    assertSameTemplate(compiled, recompiled);
+    assertSameTemplate(recompiled, TemplateSnapshot.read(snapshot, TemplateSnapshot.hash(source)));
+  }
+
+  @Test
+  void test_load_anotherId() throws IOException {
+    TemplateSnapshot.load("prototype", source, snapshot);
+    long modified = Files.getLastModifiedTime(snapshot).toMillis();
+    Template loaded = TemplateSnapshot.load("prototype@revised", source, snapshot);
+    assertEquals("prototype@revised", loaded.getId());
+    assertEquals(modified, Files.getLastModifiedTime(snapshot).toMillis()); // only the source decides staleness
+  }
+}
@@ -0,0 +1,120 @@
+// © 2025 Luca Filipozzi. Some rights reserved. See LICENSE.
+package com.github.lucafilipozzi.dag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class WorkloadGeneratorTest {
+  private static String write(WorkloadGenerator workloadGenerator) {
+    StringWriter writer = new StringWriter();
+    workloadGenerator.write(writer);
+    return writer.toString();
+  }
+
+  @Test
+  void test_generate_layeredGraph() {
+    for (int nodeCount : new int[] {1, 7, 100, 1_000}) {
+      Template template = WorkloadGenerator.of(nodeCount).withNodes(nodeCount, 9).withFanOut(3).generate("generated");
+      assertEquals(nodeCount + 2, template.size());
+      for (int node = 0; node < template.size(); node++) {
+        assertTrue(template.getReachabilityIndex().isRelevant(node), template.getNodeId(node));
+      }
+    }
+  }
+
+  @Test
+  void test_generate_isDeterministic() {
+    WorkloadGenerator workloadGenerator = WorkloadGenerator.of(21).withWeights(WorkloadGenerator.WEIGHTS.SKEWED, 1_000);
+    assertEquals(write(workloadGenerator), write(workloadGenerator));
+    assertNotEquals(write(workloadGenerator), write(WorkloadGenerator.of(22).withWeights(WorkloadGenerator.WEIGHTS.SKEWED, 1_000)));
+  }
+
+  @Test
+  void test_generate_challenges() {
+    Template unique = WorkloadGenerator.of(21).withNodes(500, 10).withChallenges("XY", 0).generate("unique");
+    assertEquals(500 + 2, unique.getChallengeCount()); // START and END have challenges of their own
+    Set<Character> prefixes = new HashSet<>();
+    for (int code = 0; code < unique.getChallengeCount(); code++) {
+      String challenge = unique.getChallengeName(code);
+      if (!"START".equals(challenge) && !"END".equals(challenge)) {
+        prefixes.add(challenge.charAt(0));
+      }
+    }
+    assertEquals(Set.of('X', 'Y'), prefixes);
+    assertEquals(1 + 2, WorkloadGenerator.of(21).withNodes(500, 10).withChallenges("XY", 1).generate("same").getChallengeCount());
+    assertThrows(IllegalArgumentException.class, () -> WorkloadGenerator.of(21).withChallenges("A-B", 0.5));
+    assertThrows(IllegalArgumentException.class, () -> WorkloadGenerator.of(21).withChallenges("A", 0.5));
+  }
+
+  @Test
+  void test_weights() {
+    Template constant = WorkloadGenerator.of(21).withWeights(WorkloadGenerator.WEIGHTS.CONSTANT, 7).generate("constant");
+    for (double weight : constant.getEdgeWeights()) {
+      assertEquals(7.0, weight);
+    }
+    for (WorkloadGenerator.WEIGHTS weights : WorkloadGenerator.WEIGHTS.values()) {
+      for (double weight : WorkloadGenerator.of(21).withWeights(weights, 50).generate("weights").getEdgeWeights()) {
+        assertTrue(weight >= 1 && weight <= 50);
+      }
+    }
+  }
+
+  @Test
+  void test_loadDriver() {
+    Template template = WorkloadGenerator.of(21).withNodes(200, 10).generate("generated");
+    LoadDriver.Report report = LoadDriver.of(template, 3, 300, 0.9, 0.7, 21).run();
+    HistogramMetricsSink metricsSink = report.getMetricsSink();
+    assertEquals(300, report.getSessionCount());
+    assertEquals(report.getRequestCount(),
+      metricsSink.getLatencies(MetricsSink.OPERATION.NEXT).getCount() + metricsSink.getLatencies(MetricsSink.OPERATION.REPORT).getCount());
+    assertEquals(300, metricsSink.getOutcomeCount(Outcome.KIND.SUCCESS) + metricsSink.getOutcomeCount(Outcome.KIND.FAILURE));
+    assertTrue(report.getBytesPerSession() > 0);
+    assertTrue(report.getRequestsPerSecond() > 0);
+    assertTrue(report.toString().contains("p999"));
+  }
+
+  @Test
+  void test_loadDriver_failingThreads() {
+    Template template = WorkloadGenerator.of(21).withNodes(200, 10).generate("generated");
+    InMemorySessionStore inMemorySessionStore = InMemorySessionStore.of();
+    SessionStore failingStore = new SessionStore() {
+      @Override
+      public Optional<Versioned> get(String sessionId) {
+        return inMemorySessionStore.get(sessionId);
+      }
+
+      @Override
+      public boolean create(String sessionId, byte[] state) {
+        return inMemorySessionStore.create(sessionId, state);
+      }
+
+      @Override
+      public boolean replace(String sessionId, long expectedVersion, byte[] state) {
+        return inMemorySessionStore.replace(sessionId, expectedVersion, state);
+      }
+
+      @Override
+      public void remove(String sessionId) {
+        throw new UnsupportedOperationException("remove " + sessionId);
+      }
+
+      @Override
+      public void addRemovalListener(RemovalListener listener) {
+        inMemorySessionStore.addRemovalListener(listener);
+      }
+    };
+    IllegalStateException e = assertThrows(IllegalStateException.class, () -> LoadDriver.of(template, 3, 300, 0.9, 0.7, 21).run(failingStore));
+    assertInstanceOf(UnsupportedOperationException.class, e.getCause());
+    assertTrue(e.getCause().getSuppressed().length <= 2); // one failure per thread
+    assertTrue(inMemorySessionStore.size() < 300); // the run stopped early
+  }
+}